@@ -0,0 +1,221 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * OverlayFilenameBenchmark.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Paragraph;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfImportedPage;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+/**
+ * Compares enforcing even pages in {@link OverlayFilename} with the previous
+ * implementation, which wrote the stamped PDF and then imported all its pages
+ * into a new PDF with an additional empty page. Uses a generated PDF with an
+ * odd number of pages.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class OverlayFilenameBenchmark {
+
+  public static final String PAGES = "pages";
+
+  public static final String RUNS = "runs";
+
+  /**
+   * Generates a PDF with the specified number of pages.
+   *
+   * @param file	the file to write to
+   * @param numPages	the number of pages
+   * @throws Exception	if generating fails
+   */
+  public static void generate(File file, int numPages) throws Exception {
+    Document		document;
+    FileOutputStream	fos;
+    int			i;
+    int			n;
+
+    document = new Document();
+    fos      = new FileOutputStream(file);
+    try {
+      PdfWriter.getInstance(document, fos);
+      document.open();
+      for (i = 0; i < numPages; i++) {
+	if (i > 0)
+	  document.newPage();
+	for (n = 0; n < 20; n++)
+	  document.add(new Paragraph("Page " + (i + 1) + ", line " + (n + 1) + ": The quick brown fox jumps over the lazy dog."));
+      }
+      document.close();
+    }
+    finally {
+      fos.close();
+    }
+  }
+
+  /**
+   * The previous approach for enforcing even pages: writes the stamped PDF
+   * first and then imports all its pages into a new PDF, used as reference.
+   *
+   * @param input	the input PDF
+   * @param output	the output PDF
+   * @throws Exception	if processing fails
+   */
+  protected static void overlayReference(File input, File output) throws Exception {
+    File		tmpFile;
+    PdfReader		reader;
+    Document		document;
+    FileOutputStream	fos;
+    PdfWriter		writer;
+    PdfContentByte	cb;
+    PdfImportedPage 	page;
+    int			i;
+
+    tmpFile = new File(output.getAbsolutePath() + "tmp");
+    if (!new OverlayFilename().overlay(input, tmpFile, 10, 20, true, true, null, false))
+      throw new IllegalStateException("Failed to overlay: " + input);
+
+    reader   = new PdfReader(tmpFile.getAbsolutePath());
+    document = new Document(reader.getPageSize(1));
+    fos      = new FileOutputStream(output.getAbsoluteFile());
+    try {
+      writer = PdfWriter.getInstance(document, fos);
+      document.open();
+      document.addCreationDate();
+      document.addAuthor(System.getProperty("user.name"));
+      cb = writer.getDirectContent();
+      for (i = 0; i < reader.getNumberOfPages(); i++) {
+	page = writer.getImportedPage(reader, i + 1);
+	document.newPage();
+	cb.addTemplate(page, 0, 0);
+      }
+      document.newPage();
+      document.add(new Paragraph(" "));  // fake content
+      document.close();
+    }
+    finally {
+      fos.close();
+      reader.close();
+      tmpFile.delete();
+    }
+  }
+
+  /**
+   * Returns the number of pages of the PDF.
+   *
+   * @param file	the PDF
+   * @return		the number of pages
+   * @throws Exception	if reading fails
+   */
+  protected static int numPages(File file) throws Exception {
+    PdfReader	reader;
+
+    reader = new PdfReader(file.getAbsolutePath());
+    try {
+      return reader.getNumberOfPages();
+    }
+    finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Runs the benchmark from the commandline.
+   *
+   * @param args	the arguments, use -h for help
+   * @throws Exception	if benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    ArgumentParser 	parser;
+    Namespace 		ns;
+    File		input;
+    File		outputRef;
+    File		output;
+    int			numPages;
+    int			runs;
+    long		refTime;
+    long		curTime;
+    long		start;
+    int			i;
+
+    parser = ArgumentParsers.newArgumentParser(OverlayFilenameBenchmark.class.getName());
+    parser.description("Compares the time for enforcing even pages with the previous two-pass approach.");
+    parser.addArgument("--" + PAGES)
+      .metavar(PAGES)
+      .type(Integer.class)
+      .setDefault(2001)
+      .dest(PAGES)
+      .help("The number of pages of the generated PDF, should be odd.");
+    parser.addArgument("--" + RUNS)
+      .metavar(RUNS)
+      .type(Integer.class)
+      .setDefault(5)
+      .dest(RUNS)
+      .help("The number of runs per approach, the best one is reported.");
+
+    try {
+      ns = parser.parseArgs(args);
+    }
+    catch (Exception e) {
+      parser.printHelp();
+      return;
+    }
+
+    numPages  = ns.getInt(PAGES);
+    runs      = ns.getInt(RUNS);
+    input     = File.createTempFile("overlayfilename-", ".pdf");
+    outputRef = File.createTempFile("overlayfilename-ref-", ".pdf");
+    output    = File.createTempFile("overlayfilename-cur-", ".pdf");
+    try {
+      generate(input, numPages);
+
+      refTime = Long.MAX_VALUE;
+      curTime = Long.MAX_VALUE;
+      for (i = 0; i < runs; i++) {
+	start   = System.nanoTime();
+	overlayReference(input, outputRef);
+	refTime = Math.min(refTime, System.nanoTime() - start);
+
+	start = System.nanoTime();
+	if (!new OverlayFilename().overlay(input, output, 10, 20, true, true, null, true))
+	  throw new IllegalStateException("Failed to overlay: " + input);
+	curTime = Math.min(curTime, System.nanoTime() - start);
+      }
+
+      System.out.println("Pages: " + numPages + " (" + input.length() + " bytes), runs: " + runs);
+      System.out.println(String.format("Reference: %,d ms, %d pages, %,d bytes", refTime / 1000000, numPages(outputRef), outputRef.length()));
+      System.out.println(String.format("Current:   %,d ms, %d pages, %,d bytes", curTime / 1000000, numPages(output), output.length()));
+      System.out.println(String.format("Speedup:   %.2fx", (double) refTime / curTime));
+    }
+    finally {
+      input.delete();
+      outputRef.delete();
+      output.delete();
+    }
+  }
+}
@@ -0,0 +1,372 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * SimplePDFOverlayBenchmark.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Utilities;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+import nz.ac.waikato.cms.doc.OverlayProgram.LineOperation;
+import nz.ac.waikato.cms.doc.OverlayProgram.Operation;
+import nz.ac.waikato.cms.doc.OverlayProgram.PageOperation;
+import nz.ac.waikato.cms.doc.OverlayProgram.PageRange;
+import nz.ac.waikato.cms.doc.OverlayProgram.RangeOperation;
+import nz.ac.waikato.cms.doc.OverlayProgram.ShapeOperation;
+import nz.ac.waikato.cms.doc.OverlayProgram.TextOperation;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Compares the instruction parser of {@link OverlayProgram} with the previous,
+ * split-based implementation, using a generated set of instructions.
+ * Outputs the lines per second of both parsers and whether they produced
+ * the same operations.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class SimplePDFOverlayBenchmark {
+
+  public static final String LINES = "lines";
+
+  public static final String RUNS = "runs";
+
+  public static final String SEED = "seed";
+
+  /** for logging. */
+  protected static final Logger LOGGER = Logger.getLogger(SimplePDFOverlayBenchmark.class.getName());
+
+  /**
+   * Generates the instructions.
+   *
+   * @param numLines	the number of lines to generate
+   * @param seed	the seed for the random number generator
+   * @return		the instructions
+   */
+  public static String generate(int numLines, long seed) {
+    StringBuilder	result;
+    Random		rnd;
+    String[]		colors;
+    String[]		alignments;
+    int			i;
+
+    result     = new StringBuilder();
+    rnd        = new Random(seed);
+    colors     = new String[]{"000000", "FFFFFF", "#FF0000", "00FF00", "#0000FF", "808080"};
+    alignments = new String[]{"LEFT", "CENTER", "RIGHT", "JUSTIFIED"};
+    result.append("# generated instructions\n");
+    result.append("units: mm\n");
+    result.append("font: Helvetica 12 000000\n");
+    for (i = 0; i < numLines; i++) {
+      if (i % 1000 == 0) {
+	result.append("\n# page ").append(i / 1000 + 1).append("\n");
+	result.append("page: ").append(i / 1000 + 1).append("\n");
+	continue;
+      }
+      switch (rnd.nextInt(10)) {
+	case 0:
+	  result.append("font: Helvetica ").append(8 + rnd.nextInt(10)).append(" ").append(colors[rnd.nextInt(colors.length)]).append("\n");
+	  break;
+	case 1:
+	  result.append("line: ").append(rnd.nextInt(210)).append(" ").append(rnd.nextInt(297)).append(" ")
+	    .append(rnd.nextInt(210)).append(" ").append(rnd.nextInt(297)).append(" 0.5 ")
+	    .append(colors[rnd.nextInt(colors.length)]).append("\n");
+	  break;
+	case 2:
+	  result.append("rect: ").append(rnd.nextInt(210)).append(".5 ").append(rnd.nextInt(297)).append(" 5 15 1 ")
+	    .append(colors[rnd.nextInt(colors.length)]).append(" ").append(colors[rnd.nextInt(colors.length)]).append("\n");
+	  break;
+	case 3:
+	  result.append("oval: ").append(rnd.nextInt(210)).append(" ").append(rnd.nextInt(297)).append(" 5 5 3 ")
+	    .append(colors[rnd.nextInt(colors.length)]).append("\n");
+	  break;
+	default:
+	  result.append("text: ").append(rnd.nextInt(100)).append(" ").append(rnd.nextInt(297)).append(".25 -1 ")
+	    .append(rnd.nextInt(20)).append(" 0 ").append(alignments[rnd.nextInt(alignments.length)])
+	    .append(" Student ").append(rnd.nextInt(100000)).append("  - row ").append(i).append("\n");
+	  break;
+      }
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Parses the location string.
+   *
+   * @param str		the string to parse
+   * @param units	the units the location is in (in|mm|pt)
+   * @return		the position in points, negative if the page maximum is to be used
+   */
+  protected static float parseLocation(String str, String units) {
+    float	result;
+
+    result = Float.parseFloat(str);
+
+    if (result >= 0) {
+      switch (units) {
+	case "mm":
+	  result = Utilities.millimetersToPoints(result);
+	  break;
+	case "in":
+	  result = Utilities.inchesToPoints(result);
+	  break;
+	case "pt":
+	  // nothing to do
+	  break;
+	default:
+	  LOGGER.warning("Unknown units: " + units);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses the first four locations.
+   *
+   * @param parts	the parts of the instruction
+   * @param units	the units the locations are in
+   * @return		the locations in points
+   */
+  protected static float[] parseLocations(String[] parts, String units) {
+    float[]	result;
+    int		i;
+
+    result = new float[4];
+    for (i = 0; i < result.length; i++)
+      result[i] = parseLocation(parts[i], units);
+
+    return result;
+  }
+
+  /**
+   * The split-based parser that {@link OverlayProgram#parse(Reader, OverlayProgram.OperationHandler)}
+   * replaced, used as reference.
+   *
+   * @param instructions	the instructions to parse
+   * @param handler		for handling the operations
+   * @throws Exception		if parsing fails
+   */
+  protected static void parseReference(Reader instructions, OverlayProgram.OperationHandler handler) throws Exception {
+    List<Operation>	block;
+    PageRange		range;
+    BufferedReader	breader;
+    String		line;
+    int 		lineNo;
+    String		units;
+    Font 		font;
+    String[]		parts;
+    StringBuilder	text;
+    int			i;
+
+    block   = null;
+    range   = null;
+    breader = new BufferedReader(instructions);
+    lineNo  = 0;
+    units   = "pt";
+    font    = null;
+    while ((line = breader.readLine()) != null) {
+      lineNo++;
+      if (line.trim().startsWith(SimplePDFOverlay.PREFIX_COMMENT))
+	continue;
+      if (line.trim().length() == 0)
+	continue;
+      try {
+	if (line.startsWith(SimplePDFOverlay.PREFIX_UNITS)) {
+	  units = line.substring(SimplePDFOverlay.PREFIX_UNITS.length()).trim().toLowerCase();
+	}
+	else if (line.startsWith(SimplePDFOverlay.PREFIX_PAGE)) {
+	  if (range != null)
+	    handler.handle(new RangeOperation(range, block));
+	  range = PageRange.parse(line.substring(SimplePDFOverlay.PREFIX_PAGE.length()).trim());
+	  if (range == null) {
+	    block = null;
+	    handler.handle(new PageOperation(Integer.parseInt(line.substring(SimplePDFOverlay.PREFIX_PAGE.length()).trim())));
+	  }
+	  else {
+	    block = new ArrayList<>();
+	  }
+	}
+	else if (line.startsWith(SimplePDFOverlay.PREFIX_FONT)) {
+	  parts = line.substring(SimplePDFOverlay.PREFIX_FONT.length()).trim().split(" ");
+	  if (parts.length == 3)
+	    font = ResourceCache.getFont(parts[0], Float.parseFloat(parts[1]), OverlayProgram.parseBaseColor(parts[2]));
+	}
+	else if (line.startsWith(SimplePDFOverlay.PREFIX_TEXT)) {
+	  parts = line.substring(SimplePDFOverlay.PREFIX_TEXT.length()).trim().split(" ");
+	  if (parts.length >= 7) {
+	    text = new StringBuilder();
+	    for (i = 6; i < parts.length; i++) {
+	      if (text.length() > 0)
+		text.append(" ");
+	      text.append(parts[i]);
+	    }
+	    OverlayProgram.add(new TextOperation(
+	      parseLocation(parts[0], units),
+	      parseLocation(parts[1], units),
+	      parseLocation(parts[2], units),
+	      parseLocation(parts[3], units),
+	      Float.parseFloat(parts[4]),
+	      OverlayProgram.parseAlignment(parts[5]),
+	      text.toString(),
+	      font), block, handler);
+	  }
+	}
+	else if (line.startsWith(SimplePDFOverlay.PREFIX_LINE)) {
+	  parts = line.substring(SimplePDFOverlay.PREFIX_LINE.length()).trim().split(" ");
+	  if (parts.length >= 6)
+	    OverlayProgram.add(new LineOperation(
+	      parseLocations(parts, units),
+	      Float.parseFloat(parts[4]),
+	      OverlayProgram.parseBaseColor(parts[5])), block, handler);
+	}
+	else if (line.startsWith(SimplePDFOverlay.PREFIX_RECT) || line.startsWith(SimplePDFOverlay.PREFIX_OVAL)) {
+	  boolean oval = line.startsWith(SimplePDFOverlay.PREFIX_OVAL);
+	  parts = line.substring(oval ? SimplePDFOverlay.PREFIX_OVAL.length() : SimplePDFOverlay.PREFIX_RECT.length()).trim().split(" ");
+	  if (parts.length >= 6)
+	    OverlayProgram.add(new ShapeOperation(
+	      oval,
+	      parseLocations(parts, units),
+	      Float.parseFloat(parts[4]),
+	      OverlayProgram.parseBaseColor(parts[5]),
+	      (parts.length >= 7) ? OverlayProgram.parseBaseColor(parts[6]) : null), block, handler);
+	}
+      }
+      catch (Exception e) {
+	throw new IllegalArgumentException("Failed to process line #" + lineNo + ":\n" + line, e);
+      }
+    }
+
+    if (range != null)
+      handler.handle(new RangeOperation(range, block));
+  }
+
+  /**
+   * Parses the instructions several times and returns the best lines per second.
+   *
+   * @param instructions	the instructions
+   * @param numLines		the number of lines in the instructions
+   * @param runs		the number of runs
+   * @param reference		whether to use the reference parser
+   * @param ops			for storing the operations of the last run
+   * @return			the lines per second
+   * @throws Exception		if parsing fails
+   */
+  protected static double measure(String instructions, int numLines, int runs, boolean reference, List<Operation> ops) throws Exception {
+    double	result;
+    long	start;
+    long	duration;
+    int		i;
+
+    result = 0;
+    for (i = 0; i < runs; i++) {
+      ops.clear();
+      start = System.nanoTime();
+      if (reference)
+	parseReference(new StringReader(instructions), ops::add);
+      else
+	OverlayProgram.parse(new StringReader(instructions), ops::add);
+      duration = System.nanoTime() - start;
+      result   = Math.max(result, numLines / (duration / 1e9));
+    }
+
+    return result;
+  }
+
+  /**
+   * Runs the benchmark from the commandline.
+   *
+   * @param args	the arguments, use -h for help
+   * @throws Exception	if benchmark fails
+   */
+  public static void main(String[] args) throws Exception {
+    ArgumentParser 	parser;
+    Namespace 		ns;
+    String		instructions;
+    int			numLines;
+    int			runs;
+    List<Operation>	reference;
+    List<Operation>	current;
+    double		refRate;
+    double		curRate;
+    int			i;
+    int			diffs;
+
+    parser = ArgumentParsers.newArgumentParser(SimplePDFOverlayBenchmark.class.getName());
+    parser.description("Compares the speed of the current instruction parser with the previous one.");
+    parser.addArgument("--" + LINES)
+      .metavar(LINES)
+      .type(Integer.class)
+      .setDefault(500000)
+      .dest(LINES)
+      .help("The number of instruction lines to generate.");
+    parser.addArgument("--" + RUNS)
+      .metavar(RUNS)
+      .type(Integer.class)
+      .setDefault(5)
+      .dest(RUNS)
+      .help("The number of runs per parser, the best one is reported.");
+    parser.addArgument("--" + SEED)
+      .metavar(SEED)
+      .type(Long.class)
+      .setDefault(1L)
+      .dest(SEED)
+      .help("The seed for generating the instructions.");
+
+    try {
+      ns = parser.parseArgs(args);
+    }
+    catch (Exception e) {
+      parser.printHelp();
+      return;
+    }
+
+    numLines     = ns.getInt(LINES);
+    runs         = ns.getInt(RUNS);
+    instructions = generate(numLines, ns.getLong(SEED));
+    reference    = new ArrayList<>();
+    current      = new ArrayList<>();
+    // warm up
+    measure(instructions, numLines, 2, true, reference);
+    measure(instructions, numLines, 2, false, current);
+    refRate = measure(instructions, numLines, runs, true, reference);
+    curRate = measure(instructions, numLines, runs, false, current);
+
+    diffs = Math.abs(reference.size() - current.size());
+    for (i = 0; i < Math.min(reference.size(), current.size()); i++) {
+      if (!reference.get(i).toString().equals(current.get(i).toString()))
+	diffs++;
+    }
+
+    System.out.println("Lines: " + numLines + ", runs: " + runs);
+    System.out.println(String.format("Reference: %,.0f lines/sec", refRate));
+    System.out.println(String.format("Current:   %,.0f lines/sec", curRate));
+    System.out.println(String.format("Speedup:   %.2fx", curRate / refRate));
+    System.out.println("Operations: " + current.size() + ", differences: " + diffs);
+  }
+}
@@ -24,20 +24,25 @@ import com.itextpdf.text.Chunk;
 import com.itextpdf.text.Document;
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.ColumnText;
 import com.itextpdf.text.pdf.PdfAction;
+import com.itextpdf.text.pdf.PdfAnnotation;
+import com.itextpdf.text.pdf.PdfBorderArray;
 import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfDestination;
 import com.itextpdf.text.pdf.PdfImportedPage;
 import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
 import com.itextpdf.text.pdf.PdfWriter;
 import de.intarsys.pdf.content.CSDeviceBasedInterpreter;
-import de.intarsys.pdf.content.text.CSTextExtractor;
 import de.intarsys.pdf.pd.PDDocument;
 import de.intarsys.pdf.pd.PDPage;
 import de.intarsys.pdf.pd.PDPageTree;
 import de.intarsys.pdf.tools.kernel.PDFGeometryTools;
 import de.intarsys.tools.locator.FileLocator;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 import nz.ac.waikato.cms.core.FileUtils;
@@ -49,7 +54,20 @@ import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
 /**
@@ -74,8 +92,42 @@ public class HyperLinkGrades
 
   public static final String NOCOMPLETIONS = "nocompletions";
 
+  public static final String THREADS = "threads";
+
+  public static final String PIPELINE = "pipeline";
+
+  public static final String INCREMENTAL = "incremental";
+
+  public static final String PATTERN = "pattern";
+
+  public static final String VERBOSE = "verbose";
+
+  public static final String CACHE = "cache";
+
+  public static final String CACHEDIR = "cachedir";
+
+  public static final String CACHESIZE = "cachesize";
+
+  public static final String JOBS = "jobs";
+
+  public static final String SUFFIX = "suffix";
+
+  public static final String SUMMARY = "summary";
+
   public static final int MAX_ITEMS_PER_PAGE = 35;
 
+  /** for extracting name and ID from the header of a student block. */
+  protected static final Pattern PATTERN_DATA = Pattern.compile("(.*)([0-9][0-9][0-9][0-9][0-9][0-9][0-9]*).*");
+
+  /** for extracting the ID from the student data. */
+  protected static final Pattern PATTERN_ID = Pattern.compile("^(.*[^0-9])([0-9]+)$");
+
+  /** the number of scanned pages that can be queued up for the writer. */
+  public static final int PIPELINE_CAPACITY = 64;
+
+  /** the default name of the summary file in batch mode. */
+  public static final String SUMMARY_FILE = "hyperlinkgrades-summary.csv";
+
   /**
    * Container for storing location information.
    *
@@ -99,6 +151,9 @@ public class HyperLinkGrades
     /** the id. */
     protected String m_ID;
 
+    /** the name of the pattern that matched. */
+    protected String m_Pattern;
+
     /**
      * Initializes the container.
      *
@@ -108,10 +163,24 @@ public class HyperLinkGrades
      * @param name	the name
      */
     public Location(int page, String text, String id, String name) {
-      m_Page = page;
-      m_Text = text;
-      m_ID   = id;
-      m_Name = name;
+      this(page, text, id, name, null);
+    }
+
+    /**
+     * Initializes the container.
+     *
+     * @param page	the page
+     * @param text	the text that matched
+     * @param id	the ID
+     * @param name	the name
+     * @param pattern	the name of the pattern that matched, can be null
+     */
+    public Location(int page, String text, String id, String name, String pattern) {
+      m_Page    = page;
+      m_Text    = text;
+      m_ID      = id;
+      m_Name    = name;
+      m_Pattern = pattern;
       if ((m_Name != null) && m_Name.isEmpty())
 	m_Name = null;
     }
@@ -152,6 +221,15 @@ public class HyperLinkGrades
       return m_Name;
     }
 
+    /**
+     * Returns the name of the pattern that matched.
+     *
+     * @return		the pattern name, null if unnamed
+     */
+    public String getPattern() {
+      return m_Pattern;
+    }
+
     /**
      * Outputs page and text.
      *
@@ -162,6 +240,572 @@ public class HyperLinkGrades
     }
   }
 
+  /**
+   * Container for the data of a student, taken from the header line of the
+   * student block. The data is parsed on first access.
+   *
+   * @author FracPete (fracpete at waikato dot ac dot nz)
+   */
+  public static class StudentBlock
+    implements Serializable {
+
+    private static final long serialVersionUID = 5208765443907223914L;
+
+    /** the header line. */
+    protected String m_Header;
+
+    /** the student data (name and ID), null if not yet parsed. */
+    protected String m_Data;
+
+    /** the ID. */
+    protected String m_ID;
+
+    /** the name. */
+    protected String m_Name;
+
+    /**
+     * Initializes the block.
+     *
+     * @param header	the header line
+     */
+    public StudentBlock(String header) {
+      m_Header = header;
+    }
+
+    /**
+     * Parses the header, if necessary.
+     */
+    protected synchronized void parse() {
+      if (m_Data != null)
+	return;
+      m_Data = PATTERN_DATA.matcher(m_Header.trim()).replaceAll("$1$2").replace("  ", "");
+      m_ID   = PATTERN_ID.matcher(m_Data).replaceAll("$2");
+      m_Name = m_Data.substring(0, m_Data.length() - m_ID.length()).trim();
+    }
+
+    /**
+     * Returns the header line.
+     *
+     * @return		the header
+     */
+    public String getHeader() {
+      return m_Header;
+    }
+
+    /**
+     * Returns the student data (name and ID).
+     *
+     * @return		the data
+     */
+    public String getData() {
+      parse();
+      return m_Data;
+    }
+
+    /**
+     * Returns the ID.
+     *
+     * @return		the ID
+     */
+    public String getID() {
+      parse();
+      return m_ID;
+    }
+
+    /**
+     * Returns the name.
+     *
+     * @return		the name
+     */
+    public String getName() {
+      parse();
+      return m_Name;
+    }
+
+    /**
+     * Returns whether the student has already completed the studies.
+     *
+     * @return		true if completed
+     */
+    public boolean isCompleted() {
+      return containsIgnoreCase(m_Header, "completion confirmed");
+    }
+  }
+
+  /**
+   * Container for the outcome of processing a single PDF.
+   *
+   * @author FracPete (fracpete at waikato dot ac dot nz)
+   */
+  public static class ProcessResult
+    implements Serializable {
+
+    private static final long serialVersionUID = -4430291706453017316L;
+
+    /** the input PDF. */
+    protected File m_Input;
+
+    /** the output PDF. */
+    protected File m_Output;
+
+    /** the number of locations found. */
+    protected int m_NumLocations;
+
+    /** the duration in msec. */
+    protected long m_Duration;
+
+    /** the error, null if successful. */
+    protected String m_Error;
+
+    /**
+     * Initializes the container.
+     *
+     * @param input	the input PDF
+     * @param output	the output PDF
+     * @param numLocations	the number of locations found
+     * @param duration	the duration in msec
+     * @param error	the error, null if successful
+     */
+    public ProcessResult(File input, File output, int numLocations, long duration, String error) {
+      m_Input        = input;
+      m_Output       = output;
+      m_NumLocations = numLocations;
+      m_Duration     = duration;
+      m_Error        = error;
+    }
+
+    /**
+     * Returns the input PDF.
+     *
+     * @return		the input
+     */
+    public File getInput() {
+      return m_Input;
+    }
+
+    /**
+     * Returns the output PDF.
+     *
+     * @return		the output
+     */
+    public File getOutput() {
+      return m_Output;
+    }
+
+    /**
+     * Returns the number of locations that were found.
+     *
+     * @return		the number of locations
+     */
+    public int getNumLocations() {
+      return m_NumLocations;
+    }
+
+    /**
+     * Returns the duration.
+     *
+     * @return		the duration in msec
+     */
+    public long getDuration() {
+      return m_Duration;
+    }
+
+    /**
+     * Returns the error.
+     *
+     * @return		the error, null if successful
+     */
+    public String getError() {
+      return m_Error;
+    }
+
+    /**
+     * Returns whether the processing was successful.
+     *
+     * @return		true if successful
+     */
+    public boolean isSuccess() {
+      return (m_Error == null);
+    }
+
+    /**
+     * Returns a short description of the outcome.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return m_Input.getName() + ": " + (isSuccess() ? m_NumLocations + " match(es)" : "failed (" + m_Error + ")") + " in " + m_Duration + "ms";
+    }
+  }
+
+  /**
+   * Interface for classes that get notified about the progress of a batch run.
+   */
+  public interface BatchListener {
+
+    /**
+     * Gets called after a PDF has been processed, from the thread that
+     * processed it.
+     *
+     * @param result	the outcome
+     */
+    public void fileProcessed(ProcessResult result);
+  }
+
+  /**
+   * Matches the lines of a page against the patterns as they get extracted.
+   * Student blocks are tracked on the fly and case-insensitive matching
+   * folds the characters into a reusable buffer, i.e., strings only get
+   * created for lines that match and for the headers of student blocks.
+   *
+   * @author FracPete (fracpete at waikato dot ac dot nz)
+   */
+  protected static class PageScanner
+    implements LineTextExtractor.LineListener {
+
+    /** the index of the page. */
+    protected int m_Index;
+
+    /** the patterns to match. */
+    protected PatternSet m_Patterns;
+
+    /** whether matching is case-sensitive. */
+    protected boolean m_CaseSens;
+
+    /** whether to skip students that completed their studies. */
+    protected boolean m_NoCompletions;
+
+    /** the buffer for the trimmed (and lower case) line. */
+    protected StringBuilder m_Buffer;
+
+    /** the current student block, null if none. */
+    protected StudentBlock m_Block;
+
+    /** the collected text, null if not recorded. */
+    protected StringBuilder m_Text;
+
+    /** the number of lines so far. */
+    protected int m_NumLines;
+
+    /** the locations. */
+    protected List<Location> m_Locations;
+
+    /**
+     * Initializes the scanner.
+     *
+     * @param index	the index of the page (0-based)
+     * @param patterns	the patterns to use for matching
+     * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+     * @param noCompletions	whether to exclude students that completed their studies
+     * @param recordText	whether to record the text of the page
+     */
+    public PageScanner(int index, PatternSet patterns, boolean caseSens, boolean noCompletions, boolean recordText) {
+      m_Index         = index;
+      m_Patterns      = patterns;
+      m_CaseSens      = caseSens;
+      m_NoCompletions = noCompletions;
+      m_Buffer        = new StringBuilder(256);
+      m_Text          = recordText ? new StringBuilder() : null;
+      m_Locations     = new ArrayList<>();
+    }
+
+    /**
+     * Gets called with each line of text.
+     *
+     * @param line	the line, only valid during the call
+     */
+    @Override
+    public void lineFound(CharSequence line) {
+      List<Integer>	matches;
+      String		text;
+      String		data;
+      int		start;
+      int		end;
+      int		i;
+
+      if (m_Text != null) {
+	if (m_NumLines > 0)
+	  m_Text.append('\n');
+	m_Text.append(line);
+      }
+      m_NumLines++;
+
+      // trim
+      start = 0;
+      end   = line.length();
+      while ((start < end) && (line.charAt(start) <= ' '))
+	start++;
+      while ((end > start) && (line.charAt(end - 1) <= ' '))
+	end--;
+      m_Buffer.setLength(0);
+      if (m_CaseSens) {
+	m_Buffer.append(line, start, end);
+      }
+      else {
+	for (i = start; i < end; i++)
+	  m_Buffer.append(Character.toLowerCase(line.charAt(i)));
+      }
+
+      matches = m_Patterns.matches(m_Buffer);
+      // check whether student already completed studies
+      if (!matches.isEmpty() && !(m_NoCompletions && (m_Block != null) && m_Block.isCompleted())) {
+	data = (m_Block == null) ? "" : m_Block.getData();
+	text = line + " [" + data + "]";
+	for (int match: matches)
+	  m_Locations.add(new Location(
+	    m_Index, text,
+	    (m_Block == null) ? "" : m_Block.getID(),
+	    (m_Block == null) ? "" : m_Block.getName(),
+	    m_Patterns.getName(match)));
+      }
+
+      if (isBlockHeader(line))
+	m_Block = new StudentBlock(line.toString());
+      else if (isBlockSeparator(line))
+	m_Block = null;
+    }
+
+    /**
+     * Returns the recorded text of the page.
+     *
+     * @return		the text, null if not recorded
+     */
+    public String getText() {
+      return (m_Text == null) ? null : m_Text.toString();
+    }
+
+    /**
+     * Returns the locations that were found.
+     *
+     * @return		the locations
+     */
+    public List<Location> getLocations() {
+      return m_Locations;
+    }
+  }
+
+  /**
+   * Container for one or more named regular expressions that get matched in
+   * a single pass. The expressions are analyzed for literals that a matching
+   * line has to contain, which allows a {@link LiteralPrefilter} to reject
+   * most lines with a single scan and to dispatch the remaining ones only to
+   * the expressions that can possibly match. Expressions without literals
+   * fall back on a combined expression (an alternation of all the
+   * expressions). Expressions of the form ".*X.*" are evaluated as "X" using
+   * find() to avoid the backtracking of the wildcards.
+   *
+   * @author FracPete (fracpete at waikato dot ac dot nz)
+   */
+  public static class PatternSet
+    implements Serializable {
+
+    private static final long serialVersionUID = -2338517402617209764L;
+
+    /** the names of the expressions. */
+    protected String[] m_Names;
+
+    /** the compiled expressions. */
+    protected Pattern[] m_Patterns;
+
+    /** the rewritten expressions for find(), null entries if not applicable. */
+    protected Pattern[] m_Finders;
+
+    /** the required literals of the expressions, null entries if none. */
+    protected String[][] m_Literals;
+
+    /** the prefilter, null if no expression has literals. */
+    protected LiteralPrefilter m_Prefilter;
+
+    /** the combined expression, null if only a single expression or prefilter available. */
+    protected Pattern m_Combined;
+
+    /** the number of lines that were checked. */
+    protected AtomicLong m_NumLines;
+
+    /** the number of lines that were rejected by the prefilter. */
+    protected AtomicLong m_NumRejected;
+
+    /**
+     * Initializes the set with a single unnamed expression.
+     *
+     * @param expr	the regular expression
+     */
+    public PatternSet(String expr) {
+      this(Collections.singletonMap((String) null, expr));
+    }
+
+    /**
+     * Initializes the set with the named expressions.
+     *
+     * @param exprs	the expressions (name -> regular expression)
+     */
+    public PatternSet(Map<String,String> exprs) {
+      StringBuilder	combined;
+      String		find;
+      boolean		literals;
+      int		i;
+
+      if (exprs.isEmpty())
+	throw new IllegalArgumentException("At least one expression required!");
+
+      m_Names       = new String[exprs.size()];
+      m_Patterns    = new Pattern[exprs.size()];
+      m_Finders     = new Pattern[exprs.size()];
+      m_Literals    = new String[exprs.size()][];
+      m_NumLines    = new AtomicLong();
+      m_NumRejected = new AtomicLong();
+      combined      = new StringBuilder();
+      literals      = false;
+      i             = 0;
+      for (Map.Entry<String,String> entry: exprs.entrySet()) {
+	m_Names[i]    = entry.getKey();
+	m_Patterns[i] = Pattern.compile(entry.getValue());
+	find          = LiteralPrefilter.toFindExpression(entry.getValue());
+	if (find != null)
+	  m_Finders[i] = Pattern.compile(find);
+	m_Literals[i] = LiteralPrefilter.requiredLiterals(entry.getValue());
+	if (m_Literals[i] != null)
+	  literals = true;
+	if (i > 0)
+	  combined.append("|");
+	combined.append("(?:").append(entry.getValue()).append(")");
+	i++;
+      }
+      m_Prefilter = null;
+      m_Combined  = null;
+      if (literals) {
+	m_Prefilter = new LiteralPrefilter(m_Literals);
+      }
+      else if (m_Patterns.length > 1) {
+	try {
+	  m_Combined = Pattern.compile(combined.toString());
+	}
+	catch (Exception e) {
+	  // eg back references that are no longer valid, match individually
+	  m_Combined = null;
+	}
+      }
+    }
+
+    /**
+     * Returns the number of expressions.
+     *
+     * @return		the number
+     */
+    public int size() {
+      return m_Patterns.length;
+    }
+
+    /**
+     * Returns the name of the specified expression.
+     *
+     * @param index	the index of the expression
+     * @return		the name, null if unnamed
+     */
+    public String getName(int index) {
+      return m_Names[index];
+    }
+
+    /**
+     * Returns whether the text matches the specified expression.
+     *
+     * @param index	the index of the expression
+     * @param text	the text to match
+     * @return		true if a match
+     */
+    protected boolean matches(int index, CharSequence text) {
+      if (m_Finders[index] != null)
+	return m_Finders[index].matcher(text).find();
+      else
+	return m_Patterns[index].matcher(text).matches();
+    }
+
+    /**
+     * Returns the indices of all the expressions that match the text.
+     *
+     * @param text	the text to match
+     * @return		the indices, empty if none matched
+     */
+    public List<Integer> matches(CharSequence text) {
+      List<Integer>	result;
+      BitSet		candidates;
+      int		i;
+
+      // only allocated once a match is found
+      result = Collections.emptyList();
+      m_NumLines.incrementAndGet();
+
+      if (m_Prefilter != null) {
+	candidates = m_Prefilter.candidates(text);
+	if (candidates.isEmpty()) {
+	  m_NumRejected.incrementAndGet();
+	  return result;
+	}
+	for (i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+	  if (matches(i, text)) {
+	    if (result.isEmpty())
+	      result = new ArrayList<>();
+	    result.add(i);
+	  }
+	}
+	return result;
+      }
+
+      if ((m_Combined != null) && !m_Combined.matcher(text).matches())
+	return result;
+      for (i = 0; i < m_Patterns.length; i++) {
+	if (matches(i, text)) {
+	  if (result.isEmpty())
+	    result = new ArrayList<>();
+	  result.add(i);
+	}
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the number of lines that were checked.
+     *
+     * @return		the number of lines
+     */
+    public long getNumLines() {
+      return m_NumLines.get();
+    }
+
+    /**
+     * Returns the number of lines that the prefilter rejected.
+     *
+     * @return		the number of lines
+     */
+    public long getNumRejected() {
+      return m_NumRejected.get();
+    }
+
+    /**
+     * Returns a summary of the analysis of the expressions and the number of
+     * lines that were rejected by the prefilter.
+     *
+     * @return		the summary
+     */
+    public String statistics() {
+      StringBuilder	result;
+      int		i;
+
+      result = new StringBuilder();
+      for (i = 0; i < m_Patterns.length; i++) {
+	result.append("Expression").append(m_Names[i] == null ? "" : " '" + m_Names[i] + "'").append(": ").append(m_Patterns[i].pattern()).append("\n");
+	result.append("  literals: ").append(m_Literals[i] == null ? "-" : Arrays.asList(m_Literals[i])).append("\n");
+	result.append("  find: ").append(m_Finders[i] == null ? "-" : m_Finders[i].pattern()).append("\n");
+      }
+      result.append("Lines checked: ").append(getNumLines()).append("\n");
+      result.append("Lines rejected by prefilter: ").append(getNumRejected());
+
+      return result.toString();
+    }
+  }
+
   /**
    * Loads the specified PDF document.
    *
@@ -202,131 +846,416 @@ public class HyperLinkGrades
   }
 
   /**
-   * Returns the student data.
+   * Checks whether the text contains the (lower case) string, ignoring case.
+   * Avoids creating a lower case copy of the text.
+   *
+   * @param text	the text to search
+   * @param lower	the lower case string to look for
+   * @return		true if contained
+   */
+  protected static boolean containsIgnoreCase(CharSequence text, String lower) {
+    int		i;
+    int		n;
+
+    for (i = 0; i <= text.length() - lower.length(); i++) {
+      for (n = 0; n < lower.length(); n++) {
+	if (Character.toLowerCase(text.charAt(i + n)) != lower.charAt(n))
+	  break;
+      }
+      if (n == lower.length())
+	return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks whether the line is the header of a student block.
+   *
+   * @param line	the line to check
+   * @return		true if header
+   */
+  protected static boolean isBlockHeader(CharSequence line) {
+    return containsIgnoreCase(line, "pass") && containsIgnoreCase(line, "fail") && containsIgnoreCase(line, "other");
+  }
+
+  /**
+   * Checks whether the line separates student blocks.
+   *
+   * @param line	the line to check
+   * @return		true if separator
+   */
+  protected static boolean isBlockSeparator(CharSequence line) {
+    return containsIgnoreCase(line, "----");
+  }
+
+  /**
+   * Splits the text into lines and hands them to the listener. Like
+   * splitting with String.split, trailing empty lines are dropped.
+   *
+   * @param content	the text to split
+   * @param listener	the listener to hand the lines to
+   */
+  protected static void lines(String content, LineTextExtractor.LineListener listener) {
+    StringBuilder	line;
+    int			start;
+    int			end;
+    int			pendingEmpty;
+
+    line         = new StringBuilder(256);
+    pendingEmpty = 0;
+    start        = 0;
+    while (start < content.length()) {
+      end = content.indexOf('\n', start);
+      if (end == -1)
+	end = content.length();
+      if (end == start) {
+	pendingEmpty++;
+      }
+      else {
+	for (; pendingEmpty > 0; pendingEmpty--)
+	  listener.lineFound("");
+	line.setLength(0);
+	line.append(content, start, end);
+	listener.lineFound(line);
+      }
+      start = end + 1;
+    }
+  }
+
+  /**
+   * Extracts the text from the page, line by line.
+   *
+   * @param page	the page to extract the content from
+   * @param listener	the listener to hand the lines to
+   */
+  protected static void extract(PDPage page, LineTextExtractor.LineListener listener) {
+    LineTextExtractor 		extractor;
+    AffineTransform 		pageTx;
+    CSDeviceBasedInterpreter 	interpreter;
+
+    extractor = new LineTextExtractor(listener);
+    pageTx    = new AffineTransform();
+    PDFGeometryTools.adjustTransform(pageTx, page);
+    extractor.setDeviceTransform(pageTx);
+    interpreter = new CSDeviceBasedInterpreter(null, extractor);
+    interpreter.process(page.getContentStream(), page.getResources());
+    extractor.flush();
+  }
+
+  /**
+   * Extracts locations of text from the page content that match the patterns.
+   *
+   * @param content	the text of the page
+   * @param index	the index of the page (0-based)
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @return		the locations on this page
+   */
+  protected static List<Location> locate(String content, int index, PatternSet patterns, boolean caseSens, boolean noCompletions) {
+    PageScanner		scanner;
+
+    scanner = new PageScanner(index, patterns, caseSens, noCompletions, false);
+    lines(content, scanner);
+
+    return scanner.getLocations();
+  }
+
+  /**
+   * Extracts locations of text from the page that match the patterns.
+   *
+   * @param page	the page to extract the content from
+   * @param index	the index of the page (0-based)
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @return		the locations on this page
+   */
+  protected static List<Location> locate(PDPage page, int index, PatternSet patterns, boolean caseSens, boolean noCompletions) {
+    return locate(page, index, patterns, caseSens, noCompletions, null);
+  }
+
+  /**
+   * Extracts locations of text from the page that match the patterns.
+   *
+   * @param page	the page to extract the content from
+   * @param index	the index of the page (0-based)
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param texts	for storing the text of the page under its index (eg for caching), can be null
+   * @return		the locations on this page
+   */
+  protected static List<Location> locate(PDPage page, int index, PatternSet patterns, boolean caseSens, boolean noCompletions, String[] texts) {
+    PageScanner		scanner;
+
+    scanner = new PageScanner(index, patterns, caseSens, noCompletions, texts != null);
+    extract(page, scanner);
+    if (texts != null)
+      texts[index] = scanner.getText();
+
+    return scanner.getLocations();
+  }
+
+  /**
+   * Extracts locations of text from the specified PDF file that matches the
+   * regular expression.
+   *
+   * @param file	the PDF file to extract the content from
+   * @param expr	the regular expression to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @return		the locations
+   */
+  public static List<Location> locate(File file, String expr, boolean caseSens, boolean noCompletions) {
+    return locate(file, expr, caseSens, noCompletions, 1);
+  }
+
+  /**
+   * Extracts locations of text from the specified PDF file that matches the
+   * regular expression.
+   *
+   * @param file	the PDF file to extract the content from
+   * @param expr	the regular expression to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use, less than 1 for number of available cores
+   * @return		the locations
+   */
+  public static List<Location> locate(File file, String expr, boolean caseSens, boolean noCompletions, int numThreads) {
+    return locate(file, expr, caseSens, noCompletions, numThreads, null);
+  }
+
+  /**
+   * Extracts locations of text from the specified PDF file that matches the
+   * regular expression. With more than one thread, every worker opens its own
+   * copy of the document (jPod documents are not thread-safe) and interprets
+   * every n-th page. The locations are returned in page order.
+   * If a cache is provided, the text of the pages is taken from the cache
+   * (if available) or added to the cache after extraction.
+   *
+   * @param file	the PDF file to extract the content from
+   * @param expr	the regular expression to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use, less than 1 for number of available cores
+   * @param cache	the text cache to use, can be null
+   * @return		the locations
+   */
+  public static List<Location> locate(File file, String expr, boolean caseSens, boolean noCompletions, int numThreads, PageTextCache cache) {
+    return locate(file, new PatternSet(expr), caseSens, noCompletions, numThreads, cache);
+  }
+
+  /**
+   * Extracts locations of text from the specified PDF file that match any of
+   * the regular expressions, scanning every line only once. With more than
+   * one thread, every worker interprets every n-th page using its own copy
+   * of the document, as jPod documents are not thread-safe (the first worker
+   * reuses the document that the number of pages was determined from). The
+   * locations are returned in page order.
+   * If a cache is provided, the text of the pages is taken from the cache
+   * (if available) or added to the cache after extraction.
+   *
+   * @param file	the PDF file to extract the content from
+   * @param patterns	the regular expressions to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use, less than 1 for number of available cores
+   * @param cache	the text cache to use, can be null
+   * @return		the locations
+   * @throws IllegalStateException	if loading the PDF or extracting the text fails
+   */
+  public static List<Location> locate(File file, PatternSet patterns, boolean caseSens, boolean noCompletions, int numThreads, PageTextCache cache) {
+    List<Location>		locations;
+    PDDocument 			document;
+    int				i;
+    int				numPages;
+    PDPageTree 			tree;
+    String			digest;
+    String[]			texts;
+    List<List<Location>>	pages;
+    ExecutorService		executor;
+    List<Future<Boolean>>	jobs;
+    boolean			shared;
+
+    locations = new ArrayList<>();
+
+    // cached?
+    digest = null;
+    texts  = null;
+    if (cache != null) {
+      try {
+	digest = cache.digest(file);
+	texts  = cache.get(digest);
+      }
+      catch (Exception e) {
+	System.err.println("Failed to compute digest for '" + file + "': ");
+	e.printStackTrace();
+      }
+      if (texts != null) {
+	for (i = 0; i < texts.length; i++)
+	  locations.addAll(locate(texts[i], i, patterns, caseSens, noCompletions));
+	return locations;
+      }
+    }
+
+    document = load(file);
+    if (document == null)
+      throw new IllegalStateException("Failed to load " + file);
+
+    if (numThreads < 1)
+      numThreads = Runtime.getRuntime().availableProcessors();
+
+    shared = false;
+    try {
+      tree     = document.getPageTree();
+      numPages = tree.getCount();
+      if (digest != null)
+	texts = new String[numPages];
+      if ((numThreads == 1) || (numPages < 2)) {
+	for (i = 0; i < numPages; i++) {
+	  locations.addAll(locate(tree.getPageAt(i), i, patterns, caseSens, noCompletions, texts));
+	}
+	if (texts != null)
+	  cache.put(digest, texts);
+	return locations;
+      }
+      // handed on to the first worker
+      shared = true;
+    }
+    catch (Exception e) {
+      throw new IllegalStateException("Failed to extract locations from " + file, e);
+    }
+    finally {
+      if (!shared)
+	close(document);
+    }
+
+    numThreads = Math.min(numThreads, numPages);
+    pages      = new ArrayList<>(Collections.nCopies(numPages, (List<Location>) null));
+    executor   = Executors.newFixedThreadPool(numThreads);
+    jobs       = new ArrayList<>();
+    for (i = 0; i < numThreads; i++) {
+      final int offset = i;
+      final int step   = numThreads;
+      final String[] pageTexts = texts;
+      final PDDocument first = document;
+      jobs.add(executor.submit(() -> {
+	PDDocument doc = (offset == 0) ? first : load(file);
+	if (doc == null)
+	  throw new IllegalStateException("Failed to load " + file);
+	try {
+	  PDPageTree t = doc.getPageTree();
+	  for (int n = offset; n < numPages; n += step) {
+	    pages.set(n, locate(t.getPageAt(n), n, patterns, caseSens, noCompletions, pageTexts));
+	  }
+	  return true;
+	}
+	finally {
+	  close(doc);
+	}
+      }));
+    }
+    executor.shutdown();
+
+    try {
+      for (Future<Boolean> job: jobs)
+	job.get();
+      for (i = 0; i < numPages; i++)
+	locations.addAll(pages.get(i));
+      if (texts != null)
+	cache.put(digest, texts);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to extract locations from " + file, e.getCause());
+    }
+    catch (InterruptedException e) {
+      throw new IllegalStateException("Interrupted while extracting locations from " + file, e);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+
+    return locations;
+  }
+
+  /**
+   * Imports the specified page and adds the target for the hyperlinks.
    *
-   * @param lines	the current page
-   * @param index	the line index to work backwards from
-   * @return		true if already completed
+   * @param document	the document to add the page to
+   * @param writer	the writer to use for importing
+   * @param reader	the reader to import from
+   * @param index	the page (1-based) to import
+   * @return		the height of the page
    */
-  protected static String getStudentData(String[] lines, int index) {
-    String	result;
-    String	toMatch;
-    int		m;
+  protected static float importPage(Document document, PdfWriter writer, PdfReader reader, int index) {
+    PdfContentByte	canvas;
+    PdfImportedPage	page;
+    Chunk		loc;
 
-    result = "";
+    canvas = writer.getDirectContent();
+    document.newPage();
+    page = writer.getImportedPage(reader, index);
+    canvas.addTemplate(page, 1f, 0, 0, 1, 0, 0);
+    loc = new Chunk(" ");
+    loc.setLocalDestination("loc" + index);
+    ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(loc), 50, page.getHeight() - 50, 0);
 
-    for (m = index - 1; m >= 0; m--) {
-      toMatch = lines[m].toLowerCase().trim();
-      if (toMatch.contains("pass") && toMatch.contains("fail") && toMatch.contains("other")) {
-	result = lines[m].trim().replaceAll("(.*)([0-9][0-9][0-9][0-9][0-9][0-9][0-9]*).*", "$1$2").replaceAll("  ", "");
-	break;
-      }
-      else if (toMatch.contains("----")) {
-	break;
-      }
-    }
-
-    return result;
+    return page.getHeight();
   }
 
   /**
-   * Checks whether the student has already completed the studies.
+   * Groups the locations by the name of the pattern that matched, in order
+   * of their first occurrence. Unnamed locations form a single section.
    *
-   * @param lines	the current page
-   * @param index	the line index to work backwards from
-   * @return		true if already completed
+   * @param locations	the locations to group
+   * @return		the sections
    */
-  protected static boolean hasCompleted(String[] lines, int index) {
-    boolean	result;
-    String	toMatch;
-    int		m;
-
-    result = false;
+  protected static List<List<Location>> sections(List<Location> locations) {
+    Map<String,List<Location>>	result;
 
-    for (m = index - 1; m >= 0; m--) {
-      toMatch = lines[m].toLowerCase();
-      if (toMatch.contains("pass") && toMatch.contains("fail") && toMatch.contains("other")) {
-	result = (toMatch.contains("completion confirmed"));
-	break;
-      }
-      else if (toMatch.contains("----")) {
-	break;
-      }
+    result = new LinkedHashMap<>();
+    for (Location loc: locations) {
+      if (!result.containsKey(loc.getPattern()))
+	result.put(loc.getPattern(), new ArrayList<>());
+      result.get(loc.getPattern()).add(loc);
     }
 
-    return result;
+    return new ArrayList<>(result.values());
   }
 
   /**
-   * Extracts locations of text from the specified PDF file that matches the
-   * regular expression.
+   * Appends the index pages with the hyperlinks to the document. Each
+   * pattern gets its own section, starting on a new page.
    *
-   * @param file	the PDF file to extract the content from
-   * @param expr	the regular expression to use for matching
-   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
-   * @param noCompletions	whether to exclude students that completed their studies
-   * @return		the locations
+   * @param locations	the locations to index
+   * @param document	the document to add the index to
+   * @param writer	the writer in use
+   * @param height	the height of the pages
    */
-  public static List<Location> locate(File file, String expr, boolean caseSens, boolean noCompletions) {
-    List<Location>		locations;
-    PDDocument 			document;
-    int				i;
-    int				n;
-    int				m;
-    PDPageTree 			tree;
-    CSTextExtractor 		extractor;
-    PDPage 			page;
-    AffineTransform 		pageTx;
-    CSDeviceBasedInterpreter 	interpreter;
-    String[]			lines;
-    String			line;
-    String 			toMatch;
-    Pattern			pattern;
-    String			data;
-    String			id;
-    String			name;
+  protected static void appendIndex(List<Location> locations, Document document, PdfWriter writer, float height) {
+    PdfContentByte	canvas;
+    int			i;
+    Location		loc;
+    String		text;
+    Chunk		chunk;
 
-    locations = new ArrayList<>();
-    pattern = Pattern.compile(expr);
-
-    document = load(file);
-    if (document != null) {
-      try {
-	tree = document.getPageTree();
-	for (i = 0; i < tree.getCount(); i++) {
-	  extractor = new CSTextExtractor();
-	  page      = tree.getPageAt(i);
-	  pageTx    = new AffineTransform();
-	  PDFGeometryTools.adjustTransform(pageTx, page);
-	  extractor.setDeviceTransform(pageTx);
-	  interpreter = new CSDeviceBasedInterpreter(null, extractor);
-	  interpreter.process(page.getContentStream(), page.getResources());
-	  lines = extractor.getContent().split("\n");
-	  for (n = 0; n < lines.length; n++) {
-	    line    = lines[n];
-	    toMatch = line.trim();
-	    if (!caseSens)
-	      toMatch = toMatch.toLowerCase();
-	    if (!pattern.matcher(toMatch).matches())
-	      continue;
-	    // check whether student already completed studies
-	    if (noCompletions && hasCompleted(lines, n))
-	      continue;
-	    data = getStudentData(lines, n);
-	    id   = data.replaceAll("^(.*[^0-9])([0-9]+)$", "$2");
-	    name = data.substring(0, data.length() - id.length()).trim();
-	    locations.add(new Location(i, line + " [" + data + "]", id, name));
-	  }
+    canvas = writer.getDirectContent();
+    for (List<Location> section: sections(locations)) {
+      for (i = 0; i < section.size(); i++) {
+	loc = section.get(i);
+	if (i % MAX_ITEMS_PER_PAGE == 0) {
+	  document.newPage();
+	  if (loc.getPattern() != null)
+	    ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(loc.getPattern()), 50, height - 70, 0);
 	}
+	text  = loc.getID() + " " + (loc.getName() == null ? "???" : loc.getName());
+	chunk = new Chunk("Page " + (loc.getPage()+1) + ": " + text);
+	chunk.setAction(PdfAction.gotoLocalPage("loc" + (loc.getPage()+1), false));
+	ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(chunk), 50, height - 100 - (i % MAX_ITEMS_PER_PAGE)*20, 0);
       }
-      catch (Exception e) {
-	System.err.println("Failed to extract locations from '" + file + "': ");
-	e.printStackTrace();
-      }
-      close(document);
     }
-
-    return locations;
   }
 
   /**
@@ -344,28 +1273,11 @@ public class HyperLinkGrades
       Document document = new Document();
       PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(output.getAbsolutePath()));
       document.open();
-      PdfContentByte canvas = writer.getDirectContent();
-      PdfImportedPage page;
       float height = 0;
-      for (int i = 1; i <= reader.getNumberOfPages(); i++) {
-	document.newPage();
-	page = writer.getImportedPage(reader, i);
-	canvas.addTemplate(page, 1f, 0, 0, 1, 0, 0);
-	Chunk loc = new Chunk(" ");
-	loc.setLocalDestination("loc" + i);
-	height = page.getHeight();
-	ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(loc), 50, height - 50, 0);
-      }
+      for (int i = 1; i <= reader.getNumberOfPages(); i++)
+	height = importPage(document, writer, reader, i);
       // add index
-      for (int i = 0; i < locations.size(); i++) {
-	Location loc = locations.get(i);
-	if (i % MAX_ITEMS_PER_PAGE == 0)
-	  document.newPage();
-	String text = loc.getID() + " " + (loc.getName() == null ? "???" : loc.getName());
-	Chunk chunk = new Chunk("Page " + (loc.getPage()+1) + ": " + text);
-	chunk.setAction(PdfAction.gotoLocalPage("loc" + (loc.getPage()+1), false));
-	ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(chunk), 50, height - 100 - (i % MAX_ITEMS_PER_PAGE)*20, 0);
-      }
+      appendIndex(locations, document, writer, height);
       document.close();
 
       return true;
@@ -378,7 +1290,219 @@ public class HyperLinkGrades
   }
 
   /**
-   * Generates the CSV output.
+   * Adds the index with locations to the existing PDF as an incremental
+   * update, i.e., the original bytes get copied as is and only the index
+   * pages and their link annotations get appended.
+   *
+   * @param locations	the locations to index
+   * @param input	the input PDF
+   * @param output	the output PDF
+   * @return		true if successfully generated
+   */
+  public static boolean addIndexIncremental(List<Location> locations, File input, File output) {
+    PdfReader		reader;
+    PdfStamper		stamper;
+    FileOutputStream	fos;
+    Rectangle		size;
+    int			numPages;
+    int			indexPage;
+    int			i;
+    float		y;
+    Location		loc;
+    String		text;
+    PdfContentByte	canvas;
+    PdfAnnotation	link;
+
+    reader  = null;
+    stamper = null;
+    fos     = null;
+    try {
+      reader    = new PdfReader(input.getAbsolutePath());
+      fos       = new FileOutputStream(output.getAbsolutePath());
+      stamper   = new PdfStamper(reader, fos, '\0', true);
+      numPages  = reader.getNumberOfPages();
+      size      = reader.getPageSize(numPages);
+      indexPage = numPages;
+      canvas    = null;
+      for (List<Location> section: sections(locations)) {
+	for (i = 0; i < section.size(); i++) {
+	  loc = section.get(i);
+	  if (i % MAX_ITEMS_PER_PAGE == 0) {
+	    indexPage++;
+	    stamper.insertPage(indexPage, size);
+	    canvas = stamper.getOverContent(indexPage);
+	    if (loc.getPattern() != null)
+	      ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase(loc.getPattern()), 50, size.getHeight() - 70, 0);
+	  }
+	  y    = size.getHeight() - 100 - (i % MAX_ITEMS_PER_PAGE)*20;
+	  text = loc.getID() + " " + (loc.getName() == null ? "???" : loc.getName());
+	  ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT, new Phrase("Page " + (loc.getPage()+1) + ": " + text), 50, y, 0);
+	  link = PdfAnnotation.createLink(
+	    stamper.getWriter(),
+	    new Rectangle(50, y - 4, size.getWidth() - 50, y + 14),
+	    PdfAnnotation.HIGHLIGHT_INVERT,
+	    loc.getPage() + 1,
+	    new PdfDestination(PdfDestination.FIT));
+	  link.setBorder(new PdfBorderArray(0, 0, 0));
+	  stamper.addAnnotation(link, indexPage);
+	}
+      }
+      stamper.close();
+      stamper = null;
+      return true;
+    }
+    catch (Exception e) {
+      System.err.println("Failed to overlay locations!");
+      e.printStackTrace();
+      return false;
+    }
+    finally {
+      try {
+	if (stamper != null)
+	  stamper.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      if (reader != null)
+	reader.close();
+      FileUtils.closeQuietly(fos);
+    }
+  }
+
+  /**
+   * Locates the matching text and adds the index in a single pipeline:
+   * jPod extracts the text of the pages in a background thread and hands
+   * the locations of each page to iText, which imports the pages as soon as
+   * they have been scanned. Only the index pages at the end have to wait for
+   * the extraction to finish.
+   *
+   * @param input	the input PDF
+   * @param expr	the regular expression to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param output	the output PDF
+   * @return		the locations, null if failed to generate output
+   */
+  public static List<Location> locateAndIndex(File input, String expr, boolean caseSens, boolean noCompletions, File output) {
+    return locateAndIndex(input, new PatternSet(expr), caseSens, noCompletions, output);
+  }
+
+  /**
+   * Locates the text matching any of the expressions and adds the index in
+   * a single pipeline.
+   *
+   * @param input	the input PDF
+   * @param patterns	the regular expressions to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param output	the output PDF
+   * @return		the locations, null if failed to generate output
+   * @see		#locateAndIndex(File, String, boolean, boolean, File)
+   */
+  public static List<Location> locateAndIndex(File input, PatternSet patterns, boolean caseSens, boolean noCompletions, File output) {
+    final List<Location>		endOfPages;
+    final BlockingQueue<List<Location>>	queue;
+    final AtomicReference<Throwable>	failure;
+    List<Location>			locations;
+    List<Location>			page;
+    ExecutorService			executor;
+    PdfReader				reader;
+    Document				document;
+    FileOutputStream			fos;
+    PdfWriter				writer;
+    float				height;
+    boolean				success;
+    int					i;
+
+    endOfPages = new ArrayList<>();
+    queue      = new ArrayBlockingQueue<>(PIPELINE_CAPACITY);
+    failure    = new AtomicReference<>();
+    locations  = new ArrayList<>();
+
+    // producer: jPod
+    executor = Executors.newSingleThreadExecutor();
+    executor.submit(() -> {
+      PDDocument doc = load(input);
+      try {
+	if (doc == null) {
+	  failure.set(new IllegalStateException("Failed to load " + input));
+	}
+	else {
+	  PDPageTree tree = doc.getPageTree();
+	  for (int n = 0; n < tree.getCount(); n++)
+	    queue.put(locate(tree.getPageAt(n), n, patterns, caseSens, noCompletions));
+	}
+      }
+      catch (InterruptedException e) {
+	return;
+      }
+      catch (Throwable t) {
+	// handed on to the consumer
+	failure.set(t);
+      }
+      finally {
+	close(doc);
+      }
+      try {
+	queue.put(endOfPages);
+      }
+      catch (InterruptedException e) {
+	// ignored
+      }
+    });
+    executor.shutdown();
+
+    // consumer: iText
+    reader   = null;
+    document = null;
+    fos      = null;
+    success  = false;
+    try {
+      reader   = new PdfReader(input.getAbsolutePath());
+      document = new Document();
+      fos      = new FileOutputStream(output.getAbsolutePath());
+      writer   = PdfWriter.getInstance(document, fos);
+      document.open();
+      height = 0;
+      for (i = 1; i <= reader.getNumberOfPages(); i++) {
+	page = queue.take();
+	if (page == endOfPages)
+	  throw new IllegalStateException("Text extraction stopped before page " + i + " of " + input, failure.get());
+	locations.addAll(page);
+	height = importPage(document, writer, reader, i);
+      }
+      appendIndex(locations, document, writer, height);
+      document.close();
+      document = null;
+      success  = true;
+      return locations;
+    }
+    catch (Exception e) {
+      System.err.println("Failed to overlay locations!");
+      e.printStackTrace();
+      return null;
+    }
+    finally {
+      executor.shutdownNow();
+      try {
+	if (document != null)
+	  document.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      FileUtils.closeQuietly(fos);
+      if (reader != null)
+	reader.close();
+      if (!success && output.exists() && !output.delete())
+	System.err.println("Failed to remove incomplete output: " + output);
+    }
+  }
+
+  /**
+   * Generates the CSV output. If any of the locations stems from a named
+   * pattern, an additional column with the pattern name gets output.
    *
    * @param locations	the locations
    * @param output	the file to write the CSV output to
@@ -387,6 +1511,15 @@ public class HyperLinkGrades
   public static boolean generateCSV(List<Location> locations, File output) {
     BufferedWriter	bwriter;
     FileWriter		fwriter;
+    boolean		named;
+
+    named = false;
+    for (Location location: locations) {
+      if (location.getPattern() != null) {
+	named = true;
+	break;
+      }
+    }
 
     bwriter = null;
     fwriter = null;
@@ -394,6 +1527,8 @@ public class HyperLinkGrades
       fwriter = new FileWriter(output);
       bwriter = new BufferedWriter(fwriter);
       bwriter.write("Page\tName\tID");
+      if (named)
+	bwriter.write("\tPattern");
       bwriter.write("\n");
       for (Location location: locations) {
 	bwriter.write("" + (location.getPage() + 1));
@@ -401,6 +1536,10 @@ public class HyperLinkGrades
 	bwriter.write(location.getName() == null ? "???" : location.getName());
 	bwriter.write("\t");
 	bwriter.write(location.getID() == null ? "???" : location.getID());
+	if (named) {
+	  bwriter.write("\t");
+	  bwriter.write(location.getPattern() == null ? "" : location.getPattern());
+	}
 	bwriter.write("\n");
       }
       bwriter.flush();
@@ -417,15 +1556,209 @@ public class HyperLinkGrades
     }
   }
 
+  /**
+   * Processes a single PDF: locates the matches, adds the index and
+   * (optionally) writes the CSV file.
+   *
+   * @param input	the input PDF
+   * @param output	the output PDF
+   * @param csv		the CSV file to write, null to skip
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use for extracting the text, less than 1 for number of available cores
+   * @param pipeline	whether to write the output while extracting the text
+   * @param incremental	whether to only append the index as incremental update
+   * @param cache	the text cache to use, can be null
+   * @return		the outcome
+   */
+  public static ProcessResult process(File input, File output, File csv, PatternSet patterns, boolean caseSens, boolean noCompletions, int numThreads, boolean pipeline, boolean incremental, PageTextCache cache) {
+    List<Location>	locations;
+    long		start;
+    String		error;
+
+    start     = System.currentTimeMillis();
+    locations = null;
+    error     = null;
+    try {
+      if (incremental) {
+	// 1. locate
+	locations = locate(input, patterns, caseSens, noCompletions, numThreads, cache);
+	// 2. append index
+	if (!addIndexIncremental(locations, input, output))
+	  error = "Failed to add index";
+      }
+      else if (pipeline) {
+	// 1.+2. locate and add index
+	locations = locateAndIndex(input, patterns, caseSens, noCompletions, output);
+	if (locations == null)
+	  error = "Failed to add index";
+      }
+      else {
+	// 1. locate
+	locations = locate(input, patterns, caseSens, noCompletions, numThreads, cache);
+	// 2. add index
+	if (!addIndex(locations, input, output))
+	  error = "Failed to add index";
+      }
+
+      // 3. CSV output
+      if ((error == null) && (csv != null)) {
+	if (!generateCSV(locations, csv))
+	  error = "Failed to generate CSV";
+      }
+    }
+    catch (Exception e) {
+      System.err.println("Failed to process '" + input + "':");
+      e.printStackTrace();
+      error = e.toString();
+    }
+
+    return new ProcessResult(input, output, (locations == null) ? 0 : locations.size(), System.currentTimeMillis() - start, error);
+  }
+
+  /**
+   * Processes the PDFs in parallel. The index PDF and the CSV of each input
+   * get stored in the output directory, using the name of the input file
+   * with the suffix appended.
+   *
+   * @param inputs	the PDFs to process
+   * @param outputDir	the output directory
+   * @param suffix	the suffix to append to the file names (before the extension)
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use for extracting the text per file, less than 1 for number of available cores
+   * @param pipeline	whether to write the output while extracting the text
+   * @param incremental	whether to only append the index as incremental update
+   * @param cache	the text cache to use, can be null
+   * @param numJobs	the number of files to process in parallel, less than 1 for number of available cores
+   * @return		the outcomes, in the order of the inputs
+   */
+  public static List<ProcessResult> batch(List<File> inputs, File outputDir, String suffix, PatternSet patterns, boolean caseSens, boolean noCompletions, int numThreads, boolean pipeline, boolean incremental, PageTextCache cache, int numJobs) {
+    return batch(inputs, outputDir, suffix, patterns, caseSens, noCompletions, numThreads, pipeline, incremental, cache, numJobs, null);
+  }
+
+  /**
+   * Processes the PDFs in parallel, notifying the listener whenever a PDF
+   * has been processed.
+   *
+   * @param inputs	the PDFs to process
+   * @param outputDir	the output directory
+   * @param suffix	the suffix to append to the file names (before the extension)
+   * @param patterns	the patterns to use for matching
+   * @param caseSens	whether the matching is case-sensitive, if not matched against lower case
+   * @param noCompletions	whether to exclude students that completed their studies
+   * @param numThreads	the number of threads to use for extracting the text per file, less than 1 for number of available cores
+   * @param pipeline	whether to write the output while extracting the text
+   * @param incremental	whether to only append the index as incremental update
+   * @param cache	the text cache to use, can be null
+   * @param numJobs	the number of files to process in parallel, less than 1 for number of available cores
+   * @param listener	the listener to notify, can be null
+   * @return		the outcomes, in the order of the inputs
+   * @see		#batch(List, File, String, PatternSet, boolean, boolean, int, boolean, boolean, PageTextCache, int)
+   */
+  public static List<ProcessResult> batch(List<File> inputs, File outputDir, String suffix, PatternSet patterns, boolean caseSens, boolean noCompletions, int numThreads, boolean pipeline, boolean incremental, PageTextCache cache, int numJobs, BatchListener listener) {
+    List<ProcessResult>		result;
+    ExecutorService		executor;
+    List<Future<ProcessResult>>	jobs;
+    int				i;
+
+    result = new ArrayList<>();
+    if (inputs.isEmpty())
+      return result;
+
+    if (numJobs < 1)
+      numJobs = Runtime.getRuntime().availableProcessors();
+    numJobs  = Math.min(numJobs, inputs.size());
+    executor = Executors.newFixedThreadPool(numJobs);
+    jobs     = new ArrayList<>();
+    for (File input: inputs) {
+      final File output = FileUtils.replaceExtension(new File(outputDir, input.getName()), suffix + ".pdf");
+      final File csv    = FileUtils.replaceExtension(new File(outputDir, input.getName()), suffix + ".csv");
+      jobs.add(executor.submit(() -> {
+	ProcessResult res = process(input, output, csv, patterns, caseSens, noCompletions, numThreads, pipeline, incremental, cache);
+	if (listener != null)
+	  listener.fileProcessed(res);
+	return res;
+      }));
+    }
+    executor.shutdown();
+
+    for (i = 0; i < jobs.size(); i++) {
+      try {
+	result.add(jobs.get(i).get());
+      }
+      catch (Exception e) {
+	System.err.println("Failed to process '" + inputs.get(i) + "':");
+	e.printStackTrace();
+	result.add(new ProcessResult(inputs.get(i), null, 0, 0, e.toString()));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Writes the summary of a batch run (tab-separated): file, matches,
+   * duration and error.
+   *
+   * @param results	the outcomes of the batch run
+   * @param output	the file to write to
+   * @return		true if successfully generated
+   */
+  public static boolean generateSummary(List<ProcessResult> results, File output) {
+    BufferedWriter	bwriter;
+    FileWriter		fwriter;
+
+    bwriter = null;
+    fwriter = null;
+    try {
+      fwriter = new FileWriter(output);
+      bwriter = new BufferedWriter(fwriter);
+      bwriter.write("File\tMatches\tDuration\tError\n");
+      for (ProcessResult result: results) {
+	bwriter.write(result.getInput().getName());
+	bwriter.write("\t");
+	bwriter.write("" + result.getNumLocations());
+	bwriter.write("\t");
+	bwriter.write("" + result.getDuration());
+	bwriter.write("\t");
+	bwriter.write(result.isSuccess() ? "" : result.getError().replace("\t", " ").replace("\n", " "));
+	bwriter.write("\n");
+      }
+      bwriter.flush();
+      return true;
+    }
+    catch (Exception e) {
+      System.err.println("Failed to generate summary: " + output);
+      e.printStackTrace();
+      return false;
+    }
+    finally {
+      FileUtils.closeQuietly(bwriter);
+      FileUtils.closeQuietly(fwriter);
+    }
+  }
+
+
   /**
    * Expects the following parameters:
    * <ol>
    *   <li>input PDF</li>
-   *   <li>the regular expression for matching the text</li>
+   *   <li>the regular expression for matching the text ("-" to only use --pattern)</li>
    *   <li>output PDF</li>
    *   <li>[optional] --casesensitive {true|false} (using lower case if insensitive)</li>
    *   <li>[optional] --nocompletions {true|false}</li>
    *   <li>[optional] --csv file</li>
+   *   <li>[optional] --threads {int} (number of threads for extraction, less than 1 for all cores)</li>
+   *   <li>[optional] --pipeline {true|false} (writes the output while still extracting, ignores --threads)</li>
+   *   <li>[optional] --incremental {true|false} (only appends the index to the original PDF, takes precedence over --pipeline)</li>
+   *   <li>[optional] --pattern name=regexp (additional named expression, can be supplied multiple times)</li>
+   *   <li>[optional] --verbose {true|false} (outputs statistics of the expression prefilter)</li>
+   *   <li>[optional] --cache {true|false} (whether to cache the extracted text, not used by --pipeline)</li>
+   *   <li>[optional] --cachedir dir (the directory for the text cache)</li>
+   *   <li>[optional] --cachesize {int} (the maximum size of the text cache in MB)</li>
    * </ol>
    * Use -h/--help to display help:
    *
@@ -440,15 +1773,15 @@ public class HyperLinkGrades
     parser.addArgument(INPUT)
       .metavar(INPUT)
       .type(String.class)
-      .help("The PDF file to add the hyperlinks to.");
+      .help("The PDF file to add the hyperlinks to; a directory or a glob pattern (eg '/some/where/*.pdf', quoted) for batch mode.");
     parser.addArgument(REGEXP)
       .metavar(REGEXP)
       .type(String.class)
-      .help("The regular expression for matching the text.");
+      .help("The regular expression for matching the text (use '-' to only use the named expressions).");
     parser.addArgument(OUTPUT)
       .metavar(OUTPUT)
       .type(String.class)
-      .help("The file to save the modified PDF to.");
+      .help("The file to save the modified PDF to; the output directory in batch mode.");
     parser.addArgument("--" + CASESENSITIVE)
       .metavar(CASESENSITIVE)
       .type(Boolean.class)
@@ -461,11 +1794,76 @@ public class HyperLinkGrades
       .dest(NOCOMPLETIONS)
       .setDefault(false)
       .help("Whether to exclude completions.");
+    parser.addArgument("--" + THREADS)
+      .metavar(THREADS)
+      .type(Integer.class)
+      .dest(THREADS)
+      .setDefault(1)
+      .help("The number of threads to use for extracting the text from the pages (less than 1 uses all available cores).");
+    parser.addArgument("--" + PIPELINE)
+      .metavar(PIPELINE)
+      .type(Boolean.class)
+      .dest(PIPELINE)
+      .setDefault(false)
+      .help("Whether to write the output while the text is still being extracted (ignores the number of threads).");
+    parser.addArgument("--" + INCREMENTAL)
+      .metavar(INCREMENTAL)
+      .type(Boolean.class)
+      .dest(INCREMENTAL)
+      .setDefault(false)
+      .help("Whether to only append the index to the unchanged original PDF as incremental update (takes precedence over pipeline).");
+    parser.addArgument("--" + PATTERN)
+      .metavar("name=regexp")
+      .type(String.class)
+      .dest(PATTERN)
+      .action(Arguments.append())
+      .help("An additional named regular expression (can be supplied multiple times); all expressions get matched in a single pass, with one index section and CSV label per name. The main expression forms an unnamed section; names must be unique.");
+    parser.addArgument("--" + VERBOSE)
+      .metavar(VERBOSE)
+      .type(Boolean.class)
+      .dest(VERBOSE)
+      .setDefault(false)
+      .help("Whether to output the analysis of the expressions and how many lines the literal prefilter rejected.");
+    parser.addArgument("--" + CACHE)
+      .metavar(CACHE)
+      .type(Boolean.class)
+      .dest(CACHE)
+      .setDefault(false)
+      .help("Whether to cache the text extracted from the pages, speeding up repeated runs on the same PDF (not used by pipeline).");
+    parser.addArgument("--" + CACHEDIR)
+      .metavar(CACHEDIR)
+      .type(String.class)
+      .dest(CACHEDIR)
+      .setDefault(PageTextCache.DEFAULT_DIR)
+      .help("The directory to store the text cache in.");
+    parser.addArgument("--" + CACHESIZE)
+      .metavar(CACHESIZE)
+      .type(Integer.class)
+      .dest(CACHESIZE)
+      .setDefault(PageTextCache.DEFAULT_MAX_SIZE)
+      .help("The maximum size of the text cache in MB, least recently used entries get removed first.");
+    parser.addArgument("--" + JOBS)
+      .metavar(JOBS)
+      .type(Integer.class)
+      .dest(JOBS)
+      .setDefault(1)
+      .help("The number of PDF files to process in parallel in batch mode (less than 1 uses all available cores).");
+    parser.addArgument("--" + SUFFIX)
+      .metavar(SUFFIX)
+      .type(String.class)
+      .dest(SUFFIX)
+      .setDefault("")
+      .help("The suffix to append to the names of the output files in batch mode (before the extension).");
+    parser.addArgument("--" + SUMMARY)
+      .metavar(SUMMARY)
+      .type(String.class)
+      .dest(SUMMARY)
+      .help("The file to save the summary (matches, duration, errors per file) to in batch mode; default is '" + SUMMARY_FILE + "' in the output directory.");
     parser.addArgument(CSV)
       .metavar(CSV)
       .setDefault(".")
       .type(String.class)
-      .help("The CSV file to save the located entries to.");
+      .help("The CSV file to save the located entries to (ignored in batch mode, where each PDF gets its own CSV file in the output directory).");
 
     Namespace namespace;
     try {
@@ -476,22 +1874,109 @@ public class HyperLinkGrades
       return;
     }
 
-    // 1. locate
-    List<Location> locations = locate(
-      new File(namespace.getString(INPUT)),
-      namespace.getString(REGEXP),
-      namespace.getBoolean(CASESENSITIVE),
-      namespace.getBoolean(NOCOMPLETIONS));
+    PatternSet patterns;
+    List<Object> named = namespace.getList(PATTERN);
+    if ((named == null) || named.isEmpty()) {
+      patterns = new PatternSet(namespace.getString(REGEXP));
+    }
+    else {
+      Map<String,String> exprs = new LinkedHashMap<>();
+      // the main expression is unnamed
+      if (!namespace.getString(REGEXP).equals("-"))
+	exprs.put(null, namespace.getString(REGEXP));
+      for (Object item: named) {
+	String expr = (String) item;
+	int pos = expr.indexOf('=');
+	if (pos < 1) {
+	  System.err.println("Named expression not in format 'name=regexp': " + expr);
+	  parser.printHelp();
+	  return;
+	}
+	if (exprs.containsKey(expr.substring(0, pos))) {
+	  System.err.println("Duplicate name of expression: " + expr.substring(0, pos));
+	  return;
+	}
+	exprs.put(expr.substring(0, pos), expr.substring(pos + 1));
+      }
+      patterns = new PatternSet(exprs);
+    }
 
-    // 2. add index
-    addIndex(
-      locations,
-      new File(namespace.getString(INPUT)),
-      new File(namespace.getString(OUTPUT)));
+    PageTextCache cache = null;
+    if (namespace.getBoolean(CACHE))
+      cache = new PageTextCache(new File(namespace.getString(CACHEDIR)), namespace.getInt(CACHESIZE));
 
-    // 3. CSV output
-    if (!new File(namespace.getString(CSV)).isDirectory()) {
-      generateCSV(locations, new File(namespace.getString(CSV)));
+    // batch mode
+    if (PDFBatch.isBatch(namespace.getString(INPUT))) {
+      File outputDir = new File(namespace.getString(OUTPUT));
+      String suffix = namespace.getString(SUFFIX);
+      List<File> inputs = PDFBatch.determineInputs(namespace.getString(INPUT));
+      if (inputs.isEmpty()) {
+	System.err.println("No PDF files found: " + namespace.getString(INPUT));
+	return;
+      }
+      if (!outputDir.isDirectory()) {
+	System.err.println("Output directory does not exist: " + outputDir);
+	return;
+      }
+      if (suffix.isEmpty()) {
+	File canonical = outputDir.getCanonicalFile();
+	for (File input: inputs) {
+	  if (canonical.equals(input.getCanonicalFile().getParentFile())) {
+	    System.err.println("Output directory is the same as the input directory, a suffix is required!");
+	    return;
+	  }
+	}
+      }
+      List<ProcessResult> results = batch(
+	inputs,
+	outputDir,
+	suffix,
+	patterns,
+	namespace.getBoolean(CASESENSITIVE),
+	namespace.getBoolean(NOCOMPLETIONS),
+	namespace.getInt(THREADS),
+	namespace.getBoolean(PIPELINE),
+	namespace.getBoolean(INCREMENTAL),
+	cache,
+	namespace.getInt(JOBS),
+	(ProcessResult result) -> {
+	  synchronized (System.out) {
+	    System.out.println(result);
+	  }
+	});
+      File summary;
+      if (namespace.getString(SUMMARY) == null)
+	summary = new File(outputDir, SUMMARY_FILE);
+      else
+	summary = new File(namespace.getString(SUMMARY));
+      generateSummary(results, summary);
+      int failed = 0;
+      int matches = 0;
+      for (ProcessResult result: results) {
+	if (!result.isSuccess())
+	  failed++;
+	matches += result.getNumLocations();
+      }
+      System.out.println("Processed " + results.size() + " file(s), " + matches + " match(es), " + failed + " failure(s), summary: " + summary);
+      if (namespace.getBoolean(VERBOSE))
+	System.out.println(patterns.statistics());
+      return;
     }
+
+    File csv = new File(namespace.getString(CSV));
+    process(
+      new File(namespace.getString(INPUT)),
+      new File(namespace.getString(OUTPUT)),
+      csv.isDirectory() ? null : csv,
+      patterns,
+      namespace.getBoolean(CASESENSITIVE),
+      namespace.getBoolean(NOCOMPLETIONS),
+      namespace.getInt(THREADS),
+      namespace.getBoolean(PIPELINE),
+      namespace.getBoolean(INCREMENTAL),
+      cache);
+
+    if (namespace.getBoolean(VERBOSE))
+      System.out.println(patterns.statistics());
   }
 }
@@ -0,0 +1,191 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LineTextExtractor.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import de.intarsys.pdf.content.ICSInterpreter;
+import de.intarsys.pdf.content.text.CSCharacterParser;
+import de.intarsys.pdf.cos.COSName;
+import de.intarsys.pdf.font.PDFont;
+import de.intarsys.pdf.font.PDGlyphs;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Text device that hands each completed line to a listener instead of
+ * building the text of the whole page. Uses the same line break and word gap
+ * heuristics as jPod's CSTextExtractor. The line is passed on as a reusable
+ * buffer, which is only valid during the callback.
+ * <br>
+ * Since the interpreter does not close the device, {@link #flush()} has to
+ * be called once the page has been processed.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class LineTextExtractor
+  extends CSCharacterParser {
+
+  /**
+   * Interface for classes that process the lines of a page.
+   */
+  public interface LineListener {
+
+    /**
+     * Gets called with each line of text.
+     *
+     * @param line	the line, only valid during the call
+     */
+    public void lineFound(CharSequence line);
+  }
+
+  /** the listener to notify. */
+  protected LineListener m_Listener;
+
+  /** the current line. */
+  protected StringBuilder m_Line;
+
+  /** whether any text has been found on the page so far. */
+  protected boolean m_HasContent;
+
+  /** the number of empty lines that haven't been passed on yet. */
+  protected int m_PendingEmpty;
+
+  /** the maximum horizontal distance between characters of the same word. */
+  protected double m_MaxDX;
+
+  /** the maximum vertical distance between characters of the same line. */
+  protected double m_MaxDY;
+
+  /**
+   * Initializes the extractor.
+   *
+   * @param listener	the listener to hand the lines to
+   */
+  public LineTextExtractor(LineListener listener) {
+    super();
+    m_Listener = listener;
+    m_Line     = new StringBuilder(256);
+    m_MaxDX    = 5.0;
+    m_MaxDY    = 5.0;
+  }
+
+  /**
+   * Resets the state at the start of a page.
+   *
+   * @param interpreter	the interpreter
+   */
+  @Override
+  public void open(ICSInterpreter interpreter) {
+    super.open(interpreter);
+    m_Line.setLength(0);
+    m_HasContent   = false;
+    m_PendingEmpty = 0;
+  }
+
+  /**
+   * Passes on the current line and starts a new one. Empty lines are held
+   * back until more text follows, i.e., trailing empty lines get dropped.
+   */
+  protected void newLine() {
+    if (m_Line.length() == 0) {
+      m_PendingEmpty++;
+      return;
+    }
+    for (; m_PendingEmpty > 0; m_PendingEmpty--)
+      m_Listener.lineFound("");
+    m_Listener.lineFound(m_Line);
+    m_Line.setLength(0);
+  }
+
+  /**
+   * Passes on the last line of the page.
+   */
+  public void flush() {
+    if (m_Line.length() > 0)
+      newLine();
+    m_PendingEmpty = 0;
+  }
+
+  /**
+   * Gets called when a character was found.
+   *
+   * @param glyphs	the glyphs
+   * @param rect	the bounding box
+   */
+  @Override
+  protected void onCharacterFound(PDGlyphs glyphs, Rectangle2D rect) {
+    char[]	chars;
+    double	dx;
+    double	dy;
+
+    chars = glyphs.getChars();
+    if (chars == null)
+      chars = new char[]{' '};
+    dx = lastStopX - lastStartX;
+    dy = lastStopY - lastStartY;
+    if (m_HasContent && (Math.abs(dy) > m_MaxDY || (Math.abs(dx) >= m_MaxDX && Math.abs(dy) >= m_MaxDY)))
+      newLine();
+    else if (m_HasContent && (Math.abs(dx) >= m_MaxDX) && (Math.abs(dy) < m_MaxDY))
+      m_Line.append(' ');
+    for (char c: chars) {
+      if (c == '\n')
+	newLine();
+      else
+	m_Line.append(c);
+    }
+    if (chars.length > 0)
+      m_HasContent = true;
+  }
+
+  /**
+   * Updates the thresholds for the line detection.
+   */
+  protected void updateThresholds() {
+    AffineTransform	tx;
+
+    tx = (AffineTransform) getDeviceTransform().clone();
+    tx.concatenate(textState.globalTransform);
+    m_MaxDX = textState.fontSize * 0.2 * tx.getScaleX();
+    m_MaxDY = textState.fontSize * 0.6 * tx.getScaleY();
+  }
+
+  /**
+   * Sets the font.
+   *
+   * @param name	the name of the font resource
+   * @param font	the font
+   * @param size	the font size
+   */
+  @Override
+  public void textSetFont(COSName name, PDFont font, float size) {
+    super.textSetFont(name, font, size);
+    updateThresholds();
+  }
+
+  /**
+   * Sets the text transform.
+   */
+  @Override
+  public void textSetTransform(float a, float b, float c, float d, float e, float f) {
+    super.textSetTransform(a, b, c, d, e, f);
+    updateThresholds();
+  }
+}
@@ -0,0 +1,685 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * LiteralPrefilter.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Analyzes regular expressions for literals that a matching text must
+ * contain and rejects texts that contain none of them with an Aho-Corasick
+ * automaton, before any regular expression gets evaluated.
+ * <br>
+ * The analysis is conservative: whenever an expression uses constructs that
+ * are not understood (eg inline flags), no literals are extracted and the
+ * expression simply does not get prefiltered.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class LiteralPrefilter
+  implements Serializable {
+
+  private static final long serialVersionUID = 8261617315470389144L;
+
+  /** the pattern for detecting inline flags, eg (?i) or (?s:...). */
+  protected static final Pattern INLINE_FLAGS = Pattern.compile("\\(\\?[a-zA-Z-]+[:)]");
+
+  /**
+   * Thrown internally if an expression cannot be analyzed.
+   */
+  protected static class UnsupportedExpressionException
+    extends RuntimeException {
+
+    private static final long serialVersionUID = 1786532474301826548L;
+  }
+
+  /** the transitions of the automaton (per state). */
+  protected List<Map<Character,Integer>> m_Transitions;
+
+  /** the failure links of the automaton (per state). */
+  protected int[] m_Failure;
+
+  /** the indices of the expressions that are candidates when reaching a state. */
+  protected BitSet[] m_Output;
+
+  /** the expressions without literals, ie always candidates. */
+  protected BitSet m_Unfiltered;
+
+  /** the number of expressions. */
+  protected int m_NumExpressions;
+
+  /**
+   * Initializes the prefilter with the literals of the expressions.
+   *
+   * @param literals	the literals per expression (any of them required), null if expression cannot be prefiltered
+   */
+  public LiteralPrefilter(String[][] literals) {
+    List<BitSet>	output;
+    ArrayDeque<Integer>	queue;
+    int			state;
+    int			next;
+    int			fail;
+    int			i;
+
+    m_NumExpressions = literals.length;
+    m_Unfiltered     = new BitSet();
+    m_Transitions    = new ArrayList<>();
+    output           = new ArrayList<>();
+    m_Transitions.add(new HashMap<>());
+    output.add(new BitSet());
+
+    // trie
+    for (i = 0; i < literals.length; i++) {
+      if (literals[i] == null) {
+	m_Unfiltered.set(i);
+	continue;
+      }
+      for (String literal: literals[i]) {
+	state = 0;
+	for (char c: literal.toCharArray()) {
+	  Integer target = m_Transitions.get(state).get(c);
+	  if (target == null) {
+	    target = m_Transitions.size();
+	    m_Transitions.get(state).put(c, target);
+	    m_Transitions.add(new HashMap<>());
+	    output.add(new BitSet());
+	  }
+	  state = target;
+	}
+	output.get(state).set(i);
+      }
+    }
+
+    // failure links
+    m_Failure = new int[m_Transitions.size()];
+    queue     = new ArrayDeque<>(m_Transitions.get(0).values());
+    while (!queue.isEmpty()) {
+      state = queue.poll();
+      for (Map.Entry<Character,Integer> entry: m_Transitions.get(state).entrySet()) {
+	next = entry.getValue();
+	queue.add(next);
+	fail = m_Failure[state];
+	while ((fail > 0) && !m_Transitions.get(fail).containsKey(entry.getKey()))
+	  fail = m_Failure[fail];
+	if (m_Transitions.get(fail).containsKey(entry.getKey()) && (m_Transitions.get(fail).get(entry.getKey()) != next))
+	  m_Failure[next] = m_Transitions.get(fail).get(entry.getKey());
+	else
+	  m_Failure[next] = 0;
+	output.get(next).or(output.get(m_Failure[next]));
+      }
+    }
+
+    m_Output = output.toArray(new BitSet[output.size()]);
+  }
+
+  /**
+   * Returns the expressions that can possibly match the text.
+   *
+   * @param text	the text to check
+   * @return		the indices of the candidate expressions
+   */
+  public BitSet candidates(CharSequence text) {
+    BitSet	result;
+    int		state;
+    int		i;
+    char	c;
+    Integer	next;
+
+    result = (BitSet) m_Unfiltered.clone();
+    state  = 0;
+    for (i = 0; i < text.length(); i++) {
+      c    = text.charAt(i);
+      next = m_Transitions.get(state).get(c);
+      while ((next == null) && (state > 0)) {
+	state = m_Failure[state];
+	next  = m_Transitions.get(state).get(c);
+      }
+      state = (next == null) ? 0 : next;
+      if (!m_Output[state].isEmpty()) {
+	result.or(m_Output[state]);
+	if (result.cardinality() == m_NumExpressions)
+	  break;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the expression uses inline flags, which change the
+   * meaning of literals.
+   *
+   * @param expr	the expression to check
+   * @return		true if inline flags present
+   */
+  protected static boolean hasInlineFlags(String expr) {
+    return INLINE_FLAGS.matcher(expr).find();
+  }
+
+  /**
+   * Returns the position after the closing character, skipping escapes and
+   * character classes.
+   *
+   * @param expr	the expression
+   * @param start	the position of the opening character
+   * @return		the position after the closing character
+   */
+  protected static int skipGroup(String expr, int start) {
+    int		depth;
+    int		i;
+    char	c;
+
+    depth = 0;
+    i     = start;
+    while (i < expr.length()) {
+      c = expr.charAt(i);
+      if (c == '\\') {
+	i = skipEscape(expr, i);
+	continue;
+      }
+      if (c == '[') {
+	i = skipClass(expr, i);
+	continue;
+      }
+      if (c == '(')
+	depth++;
+      else if (c == ')')
+	depth--;
+      i++;
+      if (depth == 0)
+	return i;
+    }
+
+    throw new UnsupportedExpressionException();
+  }
+
+  /**
+   * Returns the position after the character class.
+   *
+   * @param expr	the expression
+   * @param start	the position of the opening bracket
+   * @return		the position after the closing bracket
+   */
+  protected static int skipClass(String expr, int start) {
+    int		depth;
+    int		i;
+    char	c;
+
+    depth = 0;
+    i     = start;
+    while (i < expr.length()) {
+      c = expr.charAt(i);
+      if (c == '\\') {
+	i = skipEscape(expr, i);
+	continue;
+      }
+      if (c == '[') {
+	depth++;
+	i++;
+	// leading ']' (or '^]') is a literal
+	if ((i < expr.length()) && (expr.charAt(i) == '^'))
+	  i++;
+	if ((i < expr.length()) && (expr.charAt(i) == ']'))
+	  i++;
+	continue;
+      }
+      if (c == ']')
+	depth--;
+      i++;
+      if (depth == 0)
+	return i;
+    }
+
+    throw new UnsupportedExpressionException();
+  }
+
+  /**
+   * Returns the position after the escape sequence.
+   *
+   * @param expr	the expression
+   * @param start	the position of the backslash
+   * @return		the position after the escape sequence
+   */
+  protected static int skipEscape(String expr, int start) {
+    int		i;
+    char	c;
+    int		end;
+
+    i = start + 1;
+    if (i >= expr.length())
+      throw new UnsupportedExpressionException();
+    c = expr.charAt(i);
+    i++;
+    switch (c) {
+      case 'p':
+      case 'P':
+      case 'x':
+      case 'k':
+	if ((i < expr.length()) && ((expr.charAt(i) == '{') || (expr.charAt(i) == '<'))) {
+	  end = expr.indexOf(expr.charAt(i) == '{' ? '}' : '>', i);
+	  if (end == -1)
+	    throw new UnsupportedExpressionException();
+	  return end + 1;
+	}
+	return (c == 'x') ? i + 2 : i + 1;
+      case 'u':
+	return i + 4;
+      case 'c':
+	return i + 1;
+      case '0':
+	while ((i < expr.length()) && (i < start + 5) && (expr.charAt(i) >= '0') && (expr.charAt(i) <= '7'))
+	  i++;
+	return i;
+      case 'Q':
+	end = expr.indexOf("\\E", i);
+	return (end == -1) ? expr.length() : end + 2;
+      default:
+	return i;
+    }
+  }
+
+  /**
+   * Splits the expression at its top-level alternations.
+   *
+   * @param expr	the expression to split
+   * @return		the alternatives
+   */
+  protected static List<String> split(String expr) {
+    List<String>	result;
+    int			i;
+    int			last;
+    char		c;
+
+    result = new ArrayList<>();
+    last   = 0;
+    i      = 0;
+    while (i < expr.length()) {
+      c = expr.charAt(i);
+      if (c == '\\') {
+	i = skipEscape(expr, i);
+      }
+      else if (c == '[') {
+	i = skipClass(expr, i);
+      }
+      else if (c == '(') {
+	i = skipGroup(expr, i);
+      }
+      else if (c == ')') {
+	throw new UnsupportedExpressionException();
+      }
+      else {
+	if (c == '|') {
+	  result.add(expr.substring(last, i));
+	  last = i + 1;
+	}
+	i++;
+      }
+    }
+    result.add(expr.substring(last));
+
+    return result;
+  }
+
+  /**
+   * Returns the position after the quantifier (if any).
+   *
+   * @param expr	the expression
+   * @param start	the position after the atom
+   * @return		the position after the quantifier, same as start if none
+   */
+  protected static int skipQuantifier(String expr, int start) {
+    int		i;
+    int		end;
+
+    if (start >= expr.length())
+      return start;
+    i = start;
+    switch (expr.charAt(i)) {
+      case '*':
+      case '+':
+      case '?':
+	i++;
+	break;
+      case '{':
+	end = expr.indexOf('}', i);
+	if (end == -1)
+	  throw new UnsupportedExpressionException();
+	i = end + 1;
+	break;
+      default:
+	return start;
+    }
+    // lazy/possessive
+    if ((i < expr.length()) && ((expr.charAt(i) == '?') || (expr.charAt(i) == '+')))
+      i++;
+
+    return i;
+  }
+
+  /**
+   * Returns whether the quantifier requires at least one occurrence.
+   *
+   * @param quantifier	the quantifier, empty if none
+   * @return		true if at least one occurrence required
+   */
+  protected static boolean isRequired(String quantifier) {
+    if (quantifier.isEmpty() || quantifier.startsWith("+"))
+      return true;
+    if (quantifier.startsWith("{"))
+      return !quantifier.matches("\\{0*[,}].*");
+    return false;
+  }
+
+  /**
+   * Returns the literal character if the atom is a literal.
+   *
+   * @param atom	the atom to check
+   * @return		the character, null if not a literal
+   */
+  protected static Character toLiteral(String atom) {
+    char	c;
+
+    if (atom.length() == 1) {
+      c = atom.charAt(0);
+      if ("^$.|?*+()[]{}\\".indexOf(c) > -1)
+	return null;
+      return c;
+    }
+    if ((atom.length() == 2) && (atom.charAt(0) == '\\')) {
+      c = atom.charAt(1);
+      if (Character.isLetterOrDigit(c))
+	return null;
+      return c;
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the expression as string if it consists only of literals.
+   *
+   * @param expr	the expression to check
+   * @return		the literal string, null if not a pure literal
+   */
+  protected static String toLiteralString(String expr) {
+    StringBuilder	result;
+    int			i;
+    int			end;
+    Character		literal;
+
+    result = new StringBuilder();
+    i      = 0;
+    while (i < expr.length()) {
+      if (expr.charAt(i) == '\\')
+	end = skipEscape(expr, i);
+      else
+	end = i + 1;
+      literal = toLiteral(expr.substring(i, end));
+      if (literal == null)
+	return null;
+      if (skipQuantifier(expr, end) != end)
+	return null;
+      result.append(literal.charValue());
+      i = end;
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the group content without the group prefix.
+   *
+   * @param group	the group, including the parentheses
+   * @return		the content, null if not a capturing/non-capturing group (eg lookaround)
+   */
+  protected static String groupContent(String group) {
+    String	content;
+    int		end;
+
+    content = group.substring(1, group.length() - 1);
+    if (!content.startsWith("?"))
+      return content;
+    if (content.startsWith("?:"))
+      return content.substring(2);
+    if (content.startsWith("?<") && (content.length() > 2) && Character.isLetter(content.charAt(2))) {
+      end = content.indexOf('>');
+      if (end > -1)
+	return content.substring(end + 1);
+    }
+
+    return null;
+  }
+
+  /**
+   * Determines the literals (any of them) that a text must contain to match
+   * the expression, which must not contain top-level alternations.
+   *
+   * @param expr	the expression to analyze
+   * @return		the literals, null if none
+   */
+  protected static List<String> required(String expr) {
+    List<List<String>>	candidates;
+    List<String>	result;
+    StringBuilder	run;
+    int			i;
+    int			end;
+    int			quantEnd;
+    String		atom;
+    String		quantifier;
+    boolean		required;
+    Character		literal;
+    String		content;
+    List<String>	alts;
+    List<String>	literals;
+    String		str;
+    int			min;
+    int			bestMin;
+
+    candidates = new ArrayList<>();
+    run        = new StringBuilder();
+    i          = 0;
+    while (i < expr.length()) {
+      switch (expr.charAt(i)) {
+	case '\\':
+	  end = skipEscape(expr, i);
+	  break;
+	case '[':
+	  end = skipClass(expr, i);
+	  break;
+	case '(':
+	  end = skipGroup(expr, i);
+	  break;
+	default:
+	  end = i + 1;
+      }
+      atom       = expr.substring(i, end);
+      quantEnd   = skipQuantifier(expr, end);
+      quantifier = expr.substring(end, quantEnd);
+      required   = isRequired(quantifier);
+      literal    = toLiteral(atom);
+
+      if (literal != null) {
+	if (quantifier.isEmpty()) {
+	  run.append(literal.charValue());
+	}
+	else {
+	  if (required)
+	    run.append(literal.charValue());
+	  if (run.length() > 0)
+	    candidates.add(singleton(run.toString()));
+	  run = new StringBuilder();
+	  if (required)
+	    run.append(literal.charValue());
+	}
+      }
+      else {
+	if (run.length() > 0)
+	  candidates.add(singleton(run.toString()));
+	run = new StringBuilder();
+	if (atom.startsWith("(") && required) {
+	  content = groupContent(atom);
+	  if (content != null) {
+	    alts = split(content);
+	    if (alts.size() == 1) {
+	      literals = required(content);
+	      if (literals != null)
+		candidates.add(literals);
+	    }
+	    else {
+	      literals = new ArrayList<>();
+	      for (String alt: alts) {
+		str = toLiteralString(alt);
+		if ((str == null) || str.isEmpty()) {
+		  literals = null;
+		  break;
+		}
+		literals.add(str);
+	      }
+	      if (literals != null)
+		candidates.add(literals);
+	    }
+	  }
+	}
+      }
+
+      i = quantEnd;
+    }
+    if (run.length() > 0)
+      candidates.add(singleton(run.toString()));
+
+    // pick the most selective candidate
+    result  = null;
+    bestMin = 0;
+    for (List<String> candidate: candidates) {
+      min = Integer.MAX_VALUE;
+      for (String lit: candidate)
+	min = Math.min(min, lit.length());
+      if (min > bestMin) {
+	bestMin = min;
+	result  = candidate;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns a list with a single string.
+   *
+   * @param str		the string
+   * @return		the list
+   */
+  protected static List<String> singleton(String str) {
+    List<String>	result;
+
+    result = new ArrayList<>();
+    result.add(str);
+
+    return result;
+  }
+
+  /**
+   * Determines the literals that a text must contain (at least one of them)
+   * to match the expression.
+   *
+   * @param expr	the expression to analyze
+   * @return		the literals, null if none could be determined
+   */
+  public static String[] requiredLiterals(String expr) {
+    List<String>	result;
+    List<String>	literals;
+
+    try {
+      if (hasInlineFlags(expr))
+	return null;
+      result = new ArrayList<>();
+      for (String alt: split(expr)) {
+	literals = required(alt);
+	if (literals == null)
+	  return null;
+	for (String literal: literals) {
+	  if (!result.contains(literal))
+	    result.add(literal);
+	}
+      }
+      return result.toArray(new String[result.size()]);
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+
+  /**
+   * Rewrites an expression of the form ".*X.*" (or alternations thereof),
+   * intended for {@link java.util.regex.Matcher#matches()}, into "X" to be
+   * used with {@link java.util.regex.Matcher#find()} instead. This avoids
+   * the backtracking of the leading and trailing wildcards. Only valid for
+   * single lines of text, as "." does not match line terminators.
+   *
+   * @param expr	the expression to rewrite
+   * @return		the rewritten expression, null if not applicable
+   */
+  public static String toFindExpression(String expr) {
+    List<String>	alts;
+    StringBuilder	result;
+    String		inner;
+    int			backslashes;
+    int			i;
+
+    try {
+      if (hasInlineFlags(expr))
+	return null;
+      alts   = split(expr);
+      result = new StringBuilder();
+      for (String alt: alts) {
+	if ((alt.length() < 5) || !alt.startsWith(".*") || !alt.endsWith(".*"))
+	  return null;
+	// lazy/possessive wildcard at start
+	if ((alt.charAt(2) == '?') || (alt.charAt(2) == '+'))
+	  return null;
+	inner = alt.substring(2, alt.length() - 2);
+	// escaped '.' at end?
+	backslashes = 0;
+	for (i = inner.length() - 1; (i >= 0) && (inner.charAt(i) == '\\'); i--)
+	  backslashes++;
+	if (backslashes % 2 == 1)
+	  return null;
+	// must be a valid expression on its own
+	Pattern.compile(inner);
+	if (alts.size() == 1)
+	  return inner;
+	if (result.length() > 0)
+	  result.append("|");
+	result.append("(?:").append(inner).append(")");
+      }
+      return result.toString();
+    }
+    catch (Exception e) {
+      return null;
+    }
+  }
+}
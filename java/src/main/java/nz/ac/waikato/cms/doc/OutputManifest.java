@@ -0,0 +1,471 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * OutputManifest.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import nz.ac.waikato.cms.core.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Manifest of the generated outputs in an output directory, for incremental
+ * rebuilds. For each output it records the input (path, size, timestamp and
+ * SHA-256 digest of its content), a digest of the options and the version of
+ * the tool. An output is up to date if it still exists unchanged and was
+ * generated from the same input with the same options and tool version.
+ * Inputs with the same size and timestamp are not read again, inputs that
+ * were only touched get compared by their digest.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class OutputManifest {
+
+  /** the name of the manifest file in the output directory. */
+  public static final String FILENAME = ".fcms-doc-modifier.manifest";
+
+  /** the separator for the values of an entry. */
+  public static final String SEPARATOR = "\t";
+
+  /** for logging. */
+  protected static final Logger LOGGER = Logger.getLogger(OutputManifest.class.getName());
+
+  /** the version of the tools. */
+  protected static String m_Version;
+
+  /**
+   * A manifest entry.
+   */
+  protected static class Entry {
+
+    /** the input file. */
+    public String input;
+
+    /** the size of the input. */
+    public long inputSize;
+
+    /** the timestamp of the input. */
+    public long inputModified;
+
+    /** the digest of the input content. */
+    public String inputDigest;
+
+    /** the digest of the options. */
+    public String options;
+
+    /** the tool version. */
+    public String version;
+
+    /** the size of the output. */
+    public long outputSize;
+
+    /** the timestamp of the output. */
+    public long outputModified;
+
+    /**
+     * Parses an entry.
+     *
+     * @param value	the value to parse
+     * @return		the entry, null if invalid
+     */
+    public static Entry parse(String value) {
+      Entry	result;
+      String[]	parts;
+
+      parts = value.split(SEPARATOR, 8);
+      if (parts.length != 8)
+	return null;
+
+      try {
+	result                = new Entry();
+	result.inputSize      = Long.parseLong(parts[0]);
+	result.inputModified  = Long.parseLong(parts[1]);
+	result.inputDigest    = parts[2];
+	result.options        = parts[3];
+	result.version        = parts[4];
+	result.outputSize     = Long.parseLong(parts[5]);
+	result.outputModified = Long.parseLong(parts[6]);
+	result.input          = parts[7];
+	return result;
+      }
+      catch (Exception e) {
+	return null;
+      }
+    }
+
+    /**
+     * Returns the entry as string, see {@link #parse(String)}.
+     *
+     * @return		the string
+     */
+    @Override
+    public String toString() {
+      return inputSize + SEPARATOR + inputModified + SEPARATOR + inputDigest + SEPARATOR
+	+ options + SEPARATOR + version + SEPARATOR + outputSize + SEPARATOR + outputModified
+	+ SEPARATOR + input;
+    }
+  }
+
+  /** the output directory. */
+  protected File m_Directory;
+
+  /** the digest of the options. */
+  protected String m_Options;
+
+  /** the entries (relative output path - entry). */
+  protected Map<String,Entry> m_Entries;
+
+  /** the number of skipped outputs. */
+  protected AtomicInteger m_NumSkipped;
+
+  /** the number of updated outputs. */
+  protected AtomicInteger m_NumUpdated;
+
+  /**
+   * Initializes the manifest.
+   *
+   * @param dir		the output directory
+   * @param options	the tool and the options that influence the output
+   */
+  public OutputManifest(File dir, String options) {
+    m_Directory  = dir;
+    m_Options    = digest(options.getBytes(StandardCharsets.UTF_8));
+    m_Entries    = new ConcurrentHashMap<>();
+    m_NumSkipped = new AtomicInteger();
+    m_NumUpdated = new AtomicInteger();
+  }
+
+  /**
+   * Returns the version of the tools, as stored in the jar by maven.
+   *
+   * @return		the version, "unknown" if not available
+   */
+  public static synchronized String getVersion() {
+    Properties	props;
+    InputStream	in;
+
+    if (m_Version == null) {
+      m_Version = OutputManifest.class.getPackage().getImplementationVersion();
+      if (m_Version == null) {
+	in = OutputManifest.class.getResourceAsStream("/META-INF/maven/com.github.waikato/fcms-doc-modifier/pom.properties");
+	if (in != null) {
+	  try {
+	    props = new Properties();
+	    props.load(in);
+	    m_Version = props.getProperty("version");
+	  }
+	  catch (Exception e) {
+	    // ignored
+	  }
+	  finally {
+	    FileUtils.closeQuietly(in);
+	  }
+	}
+      }
+      if (m_Version == null)
+	m_Version = "unknown";
+    }
+
+    return m_Version;
+  }
+
+  /**
+   * Turns the digest into a hex string.
+   *
+   * @param md		the digest to convert
+   * @return		the hex string
+   */
+  protected static String toHex(MessageDigest md) {
+    StringBuilder	result;
+
+    result = new StringBuilder();
+    for (byte b: md.digest())
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Computes the SHA-256 digest of the data.
+   *
+   * @param data	the data
+   * @return		the digest as hex string
+   */
+  public static String digest(byte[] data) {
+    MessageDigest	md;
+
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    }
+    catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+    md.update(data);
+
+    return toHex(md);
+  }
+
+  /**
+   * Computes the SHA-256 digest of the file content.
+   *
+   * @param file	the file to compute the digest for
+   * @return		the digest as hex string
+   * @throws Exception	if reading the file fails
+   */
+  public static String digest(File file) throws Exception {
+    MessageDigest	md;
+    InputStream		in;
+    byte[]		buffer;
+    int			read;
+
+    md     = MessageDigest.getInstance("SHA-256");
+    buffer = new byte[65536];
+    in     = null;
+    try {
+      in = new FileInputStream(file);
+      while ((read = in.read(buffer)) != -1)
+	md.update(buffer, 0, read);
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+
+    return toHex(md);
+  }
+
+  /**
+   * Returns the output directory.
+   *
+   * @return		the directory
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Returns the manifest file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return new File(m_Directory, FILENAME);
+  }
+
+  /**
+   * Returns the key for the output, i.e., its path relative to the output
+   * directory (or its absolute path if located elsewhere).
+   *
+   * @param output	the output file
+   * @return		the key
+   */
+  protected String key(File output) {
+    Path	dir;
+    Path	path;
+
+    dir  = m_Directory.toPath().toAbsolutePath().normalize();
+    path = output.toPath().toAbsolutePath().normalize();
+    if (path.startsWith(dir))
+      path = dir.relativize(path);
+
+    return path.toString().replace(File.separatorChar, '/');
+  }
+
+  /**
+   * Loads the manifest from the output directory, if present.
+   *
+   * @return		null if successful, otherwise error message
+   */
+  public String load() {
+    Properties	props;
+    InputStream	in;
+    Entry	entry;
+
+    m_Entries.clear();
+    if (!getFile().exists())
+      return null;
+
+    props = new Properties();
+    in    = null;
+    try {
+      in = new BufferedInputStream(new FileInputStream(getFile()));
+      props.load(in);
+      for (String key: props.stringPropertyNames()) {
+	entry = Entry.parse(props.getProperty(key));
+	if (entry != null)
+	  m_Entries.put(key, entry);
+      }
+      LOGGER.info("Loaded " + m_Entries.size() + " manifest entries from " + getFile());
+      return null;
+    }
+    catch (Exception e) {
+      m_Entries.clear();
+      return "Failed to load manifest " + getFile() + ": " + e;
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+  }
+
+  /**
+   * Saves the manifest in the output directory. Writes to a temporary file
+   * first, which replaces the manifest once complete.
+   *
+   * @return		null if successful, otherwise error message
+   */
+  public String save() {
+    Properties		props;
+    OutputStream	out;
+    File		tmp;
+
+    props = new Properties();
+    for (Map.Entry<String,Entry> entry: m_Entries.entrySet())
+      props.setProperty(entry.getKey(), entry.getValue().toString());
+
+    tmp = new File(getFile().getPath() + ".tmp");
+    out = null;
+    try {
+      out = new BufferedOutputStream(new FileOutputStream(tmp));
+      props.store(out, "tool version " + getVersion());
+      out.close();
+      out = null;
+      Files.move(tmp.toPath(), getFile().toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return null;
+    }
+    catch (Exception e) {
+      tmp.delete();
+      return "Failed to save manifest " + getFile() + ": " + e;
+    }
+    finally {
+      FileUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Checks whether the output is up to date, i.e., whether it can be skipped.
+   *
+   * @param input	the input file
+   * @param output	the output file
+   * @return		true if up to date
+   */
+  public boolean isUpToDate(File input, File output) {
+    Entry	entry;
+    String	digest;
+
+    entry = m_Entries.get(key(output));
+    if (entry == null)
+      return false;
+    if (!output.exists() || (output.length() != entry.outputSize) || (output.lastModified() != entry.outputModified))
+      return false;
+    if (!entry.options.equals(m_Options) || !entry.version.equals(getVersion()))
+      return false;
+    if (!entry.input.equals(input.getAbsolutePath()) || (input.length() != entry.inputSize))
+      return false;
+
+    // only touched?
+    if (input.lastModified() != entry.inputModified) {
+      try {
+	digest = digest(input);
+      }
+      catch (Exception e) {
+	return false;
+      }
+      if (!digest.equals(entry.inputDigest))
+	return false;
+      entry.inputModified = input.lastModified();
+    }
+
+    m_NumSkipped.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Records the successfully generated output.
+   *
+   * @param input	the input file
+   * @param data	the content of the input file, null to read it from disk
+   * @param output	the output file
+   * @return		null if successful, otherwise error message
+   */
+  public String update(File input, byte[] data, File output) {
+    Entry	entry;
+
+    entry                = new Entry();
+    entry.input          = input.getAbsolutePath();
+    entry.inputSize      = input.length();
+    entry.inputModified  = input.lastModified();
+    try {
+      entry.inputDigest  = (data != null) ? digest(data) : digest(input);
+    }
+    catch (Exception e) {
+      m_Entries.remove(key(output));
+      return "Failed to compute digest of " + input + ": " + e;
+    }
+    entry.options        = m_Options;
+    entry.version        = getVersion();
+    entry.outputSize     = output.length();
+    entry.outputModified = output.lastModified();
+    m_Entries.put(key(output), entry);
+    m_NumUpdated.incrementAndGet();
+
+    return null;
+  }
+
+  /**
+   * Removes the entry for the output, eg when generating it failed.
+   *
+   * @param output	the output file
+   */
+  public void remove(File output) {
+    m_Entries.remove(key(output));
+  }
+
+  /**
+   * Returns the number of outputs that were up to date.
+   *
+   * @return		the number
+   */
+  public int getNumSkipped() {
+    return m_NumSkipped.get();
+  }
+
+  /**
+   * Returns the number of outputs that were generated.
+   *
+   * @return		the number
+   */
+  public int getNumUpdated() {
+    return m_NumUpdated.get();
+  }
+}
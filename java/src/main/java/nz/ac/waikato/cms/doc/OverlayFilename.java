@@ -20,23 +20,20 @@
 
 package nz.ac.waikato.cms.doc;
 
-import com.itextpdf.text.Document;
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Paragraph;
 import com.itextpdf.text.pdf.ColumnText;
 import com.itextpdf.text.pdf.PdfContentByte;
-import com.itextpdf.text.pdf.PdfImportedPage;
 import com.itextpdf.text.pdf.PdfReader;
 import com.itextpdf.text.pdf.PdfStamper;
-import com.itextpdf.text.pdf.PdfWriter;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -60,18 +57,44 @@ public class OverlayFilename {
 
   public static final String EVENPAGES = "event-pages";
 
+  /** the manifest for incremental processing, null if not incremental. */
+  protected OutputManifest m_Manifest;
+
   /**
-   * For filtering PDF files in a directory.
+   * Sets the manifest to use for skipping outputs that are up to date.
    *
-   * @author FracPete (fracpete at waikato dot ac dot nz)
+   * @param value	the manifest, null to process all files
    */
-  public static class PdfFilenameFilter
-    implements FilenameFilter {
+  public void setManifest(OutputManifest value) {
+    m_Manifest = value;
+  }
 
-    @Override
-    public boolean accept(File dir, String name) {
-      return name.toLowerCase().endsWith(".pdf");
-    }
+  /**
+   * Returns the manifest to use for skipping outputs that are up to date.
+   *
+   * @return		the manifest, null if processing all files
+   */
+  public OutputManifest getManifest() {
+    return m_Manifest;
+  }
+
+  /**
+   * Returns the options that influence the output, for the manifest.
+   *
+   * @param vpos	the vertical position
+   * @param hpos	the horizontal position
+   * @param stripPath	whether to strip the path
+   * @param stripExt	whether to strip the extension
+   * @param pages	the array of pages (1-based) to add the overlay to, null for all
+   * @param evenPages	whether to enforce even pages in the document
+   * @return		the options
+   */
+  public static String getOptions(int vpos, int hpos, boolean stripPath, boolean stripExt, int[] pages, boolean evenPages) {
+    return OverlayFilename.class.getName()
+      + " vpos=" + vpos + " hpos=" + hpos
+      + " strippath=" + stripPath + " stripext=" + stripExt
+      + " pages=" + ((pages == null) ? "all" : Arrays.toString(pages))
+      + " evenpages=" + evenPages;
   }
 
   /**
@@ -88,6 +111,30 @@ public class OverlayFilename {
    * @return		true if successfully overlay
    */
   public boolean overlay(File input, File output, int vpos, int hpos, boolean stripPath, boolean stripExt, int[] pages, boolean evenPages) {
+    String	error;
+
+    error = overlay(null, input, output, vpos, hpos, stripPath, stripExt, pages, evenPages);
+    if (error != null)
+      System.err.println(error);
+
+    return (error == null);
+  }
+
+  /**
+   * Performs the overlay.
+   *
+   * @param data	the content of the input file, null to read it from disk
+   * @param input	the input file
+   * @param output	the output file
+   * @param vpos	the vertical position
+   * @param hpos	the horizontal position
+   * @param stripPath	whether to strip the path
+   * @param stripExt	whether to strip the extension
+   * @param pages	the array of pages (1-based) to add the overlay to, null for all
+   * @param evenPages	whether to enforce even pages in the document
+   * @return		null if successful, otherwise error message
+   */
+  protected String overlay(byte[] data, File input, File output, int vpos, int hpos, boolean stripPath, boolean stripExt, int[] pages, boolean evenPages) {
     PdfReader 		reader;
     PdfStamper 		stamper;
     FileOutputStream 	fos;
@@ -95,18 +142,17 @@ public class OverlayFilename {
     int 		i;
     String		text;
     int			numPages;
-    File		tmpFile;
-    Document		document;
-    PdfWriter		writer;
-    PdfImportedPage 	page;
-    PdfContentByte	cb;
 
     reader   = null;
     stamper  = null;
     fos      = null;
-    numPages = -1;
     try {
-      reader   = new PdfReader(input.getAbsolutePath());
+      if (data != null)
+	reader = new PdfReader(data);
+      else
+	reader = new PdfReader(input.getAbsolutePath());
+      if ((output.getParentFile() != null) && !output.getParentFile().exists())
+	output.getParentFile().mkdirs();
       fos      = new FileOutputStream(output.getAbsolutePath());
       stamper  = new PdfStamper(reader, fos);
       numPages = reader.getNumberOfPages();
@@ -133,11 +179,20 @@ public class OverlayFilename {
 	  vpos,
 	  0.0f);
       }
+
+      // enforce even pages? append an empty page in the same pass
+      if (evenPages && (numPages > 0) && (numPages % 2 == 1))
+	stamper.insertPage(numPages + 1, reader.getPageSize(1));
+
+      // close explicitly, so that failing to write the output gets reported
+      stamper.close();
+      stamper = null;
+      fos.close();
+      fos = null;
     }
     catch (Exception e) {
-      System.err.println("Failed to process " + input + ":");
-      e.printStackTrace();
-      return false;
+      // reported by the caller
+      return "Failed to process " + input + ": " + e;
     }
     finally {
       try {
@@ -165,117 +220,53 @@ public class OverlayFilename {
       }
     }
 
-    // enforce even pages?
-    if (evenPages && (numPages > 0) && (numPages % 2 == 1)) {
-      reader  = null;
-      fos     = null;
-      writer  = null;
-      tmpFile = new File(output.getAbsolutePath() + "tmp");
-      try {
-	if (!output.renameTo(tmpFile)) {
-	  System.err.println("Failed to rename '" + output + "' to '" + tmpFile + "'!");
-	  return false;
-	}
-	reader   = new PdfReader(tmpFile.getAbsolutePath());
-	document = new Document(reader.getPageSize(1));
-	fos      = new FileOutputStream(output.getAbsoluteFile());
-	writer   = PdfWriter.getInstance(document, fos);
-	document.open();
-	document.addCreationDate();
-	document.addAuthor(System.getProperty("user.name"));
-	cb      = writer.getDirectContent();
-	for (i = 0; i < reader.getNumberOfPages(); i++) {
-	  page = writer.getImportedPage(reader, i+1);
-	  document.newPage();
-	  cb.addTemplate(page, 0, 0);
-	}
-	document.newPage();
-	document.add(new Paragraph(" "));  // fake content
-	document.close();
-      }
-      catch (Exception e) {
-	System.err.println("Failed to process " + tmpFile + ":");
-	e.printStackTrace();
-	return false;
-      }
-      finally {
-	try {
-	  if (fos != null) {
-	    fos.flush();
-	    fos.close();
-	  }
-	}
-	catch (Exception e) {
-	  // ignored
-	}
-	try {
-	  if (reader != null)
-	    reader.close();
-	}
-	catch (Exception e) {
-	  // ignored
-	}
-	try {
-	  if (writer != null)
-	    writer.close();
-	}
-	catch (Exception e) {
-	  // ignored
-	}
-	if (tmpFile.exists()) {
-	  try {
-	    tmpFile.delete();
-	  }
-	  catch (Exception e) {
-	    // ignored
-	  }
-	}
-      }
-    }
-
-    return true;
+    return null;
   }
 
   /**
-   * Determines the input and output files and returns them as array (0=input, 1=output).
+   * Performs the overlay on all the files, using multiple jobs.
    *
-   * @param input the input file/dir
-   * @param output the output file/dir
-   * @return the matched input/output files
+   * @param files	the input and output files (0=input, 1=output), see {@link PDFBatch#determineFiles(File, File)}
+   * @param vpos	the vertical position
+   * @param hpos	the horizontal position
+   * @param stripPath	whether to strip the path
+   * @param stripExt	whether to strip the extension
+   * @param pages	the array of pages (1-based) to add the overlay to, null for all
+   * @param evenPages	whether to enforce even pages in the document
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link PDFBatch#determineJobs(int, File[])}
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
    */
-  public File[][] determineFiles(File input, File output) {
-    File[][]	result;
-    List<File>	files;
-    int		i;
-
-    if (input.isFile()) {
-      if (output.isFile()) {
-	return new File[][]{
-	  new File[]{input},
-	  new File[]{output}
-	};
-      }
-      else {
-	return new File[][]{
-	  new File[]{input},
-	  new File[]{new File(output.getAbsolutePath() + File.separator + input.getName())}
-	};
-      }
-    }
-
-    if (output.isFile())
-      output = output.getParentFile();
-    files = new ArrayList<>();
-    for (String fname : input.list(new PdfFilenameFilter())) {
-      files.add(new File(input.getAbsolutePath() + File.separator + fname));
-    }
-    result = new File[2][files.size()];
-    for (i = 0; i < files.size(); i++) {
-      result[0][i] = files.get(i);
-      result[1][i] = new File(output.getAbsolutePath() + File.separator + files.get(i).getName());
-    }
+  public List<String> overlay(File[][] files, int vpos, int hpos, boolean stripPath, boolean stripExt, int[] pages, boolean evenPages, int numJobs, PDFBatch.ProgressListener listener) {
+    return PDFBatch.process(
+      files, numJobs, m_Manifest,
+      (byte[] data, File input, File output) -> overlay(data, input, output, vpos, hpos, stripPath, stripExt, pages, evenPages),
+      listener);
+  }
 
-    return result;
+  /**
+   * Performs the overlay on the files as they get supplied by the iterator
+   * (eg from {@link PDFBatch#discoverFiles(File, File, boolean, List, List)}),
+   * using multiple jobs.
+   *
+   * @param files	the input and output file pairs (0=input, 1=output)
+   * @param vpos	the vertical position
+   * @param hpos	the horizontal position
+   * @param stripPath	whether to strip the path
+   * @param stripExt	whether to strip the extension
+   * @param pages	the array of pages (1-based) to add the overlay to, null for all
+   * @param evenPages	whether to enforce even pages in the document
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link PDFBatch#determineJobs(int, File[])}
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
+   */
+  public List<String> overlay(Iterator<File[]> files, int vpos, int hpos, boolean stripPath, boolean stripExt, int[] pages, boolean evenPages, int numJobs, PDFBatch.ProgressListener listener) {
+    return PDFBatch.process(
+      files, numJobs, m_Manifest,
+      (byte[] data, File input, File output) -> overlay(data, input, output, vpos, hpos, stripPath, stripExt, pages, evenPages),
+      listener);
   }
 
   /**
@@ -305,7 +296,7 @@ public class OverlayFilename {
     parser.addArgument(OUTPUT)
       .metavar(OUTPUT)
       .type(String.class)
-      .help("The file to save the modified PDF to (must be a directory if input is a directory).");
+      .help("The file to save the modified PDF to, or an existing directory to save it in (must be a directory if input is a directory).");
     parser.addArgument("--" + VPOS)
       .metavar(VPOS)
       .type(Integer.class)
@@ -334,6 +325,7 @@ public class OverlayFilename {
       .dest(EVENPAGES)
       .setDefault(false)
       .help("Whether to enforce even pages in the document (simply adds an empty one).");
+    PDFBatch.addArguments(parser);
 
     Namespace namespace;
     try {
@@ -345,22 +337,18 @@ public class OverlayFilename {
     }
 
     OverlayFilename of = new OverlayFilename();
-
-    File[][] files = of.determineFiles(
+    int vpos = namespace.getInt(VPOS);
+    int hpos = namespace.getInt(HPOS);
+    boolean stripPath = namespace.getBoolean(STRIPPATH);
+    boolean stripExt = namespace.getBoolean(STRIPEXT);
+    boolean evenPages = namespace.getBoolean(EVENPAGES);
+    int failed = PDFBatch.run(
       new File(namespace.getString(INPUT)),
-      new File(namespace.getString(OUTPUT)));
-
-    for (int i = 0; i < files[0].length; i++) {
-      System.out.println(files[0][i] + "\n--> " + files[1][i]);
-      of.overlay(
-	files[0][i],
-	files[1][i],
-	namespace.getInt(VPOS),
-	namespace.getInt(HPOS),
-	namespace.getBoolean(STRIPPATH),
-	namespace.getBoolean(STRIPEXT),
-	null,
-	namespace.getBoolean(EVENPAGES));
-    }
+      new File(namespace.getString(OUTPUT)),
+      namespace,
+      getOptions(vpos, hpos, stripPath, stripExt, null, evenPages),
+      (byte[] data, File input, File output) -> of.overlay(data, input, output, vpos, hpos, stripPath, stripExt, null, evenPages));
+    if (failed > 0)
+      System.exit(1);
   }
 }
@@ -0,0 +1,1287 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * OverlayProgram.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.Utilities;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfTemplate;
+import nz.ac.waikato.cms.core.FileUtils;
+import nz.ac.waikato.cms.core.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Compiled form of the instructions used by {@link SimplePDFOverlay}. The
+ * instructions get parsed only once into typed operations with the
+ * locations already converted to points and colors and fonts already
+ * obtained from the {@link ResourceCache}. The program is immutable and can be applied to any number of
+ * PDFs, also concurrently.
+ * <br>
+ * Instructions following a page range (eg "page: 1-500" or "page: odd")
+ * get rendered only once into a template (Form XObject) per page size,
+ * which is then referenced from all the selected pages.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class OverlayProgram {
+
+  /**
+   * The state while applying the program to a PDF.
+   */
+  protected static class State {
+
+    /** the reader. */
+    public PdfReader reader;
+
+    /** the stamper. */
+    public PdfStamper stamper;
+
+    /** the current page (1-based). */
+    public int pageNo;
+
+    /** the content of the current page. */
+    public PdfContentByte cb;
+
+    /** the width of the current page. */
+    public float width;
+
+    /** the height of the current page. */
+    public float height;
+
+    /** the page sizes obtained so far (1-based). */
+    protected Rectangle[] m_Sizes;
+
+    /**
+     * Returns the size of the page, obtaining it from the reader only once.
+     *
+     * @param page	the page (1-based)
+     * @return		the size
+     */
+    public Rectangle getPageSize(int page) {
+      if (m_Sizes == null)
+	m_Sizes = new Rectangle[reader.getNumberOfPages() + 1];
+      if ((page < 1) || (page >= m_Sizes.length))
+	return reader.getPageSize(page);
+      if (m_Sizes[page] == null)
+	m_Sizes[page] = reader.getPageSize(page);
+      return m_Sizes[page];
+    }
+
+    /**
+     * Selects the page to draw on.
+     *
+     * @param page	the page (1-based)
+     * @param content	the content to draw on
+     */
+    public void select(int page, PdfContentByte content) {
+      Rectangle	size;
+
+      size   = getPageSize(page);
+      pageNo = page;
+      cb     = content;
+      width  = size.getWidth();
+      height = size.getHeight();
+    }
+  }
+
+  /**
+   * A single compiled instruction.
+   */
+  protected interface Operation {
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     * @throws Exception	if applying fails
+     */
+    public void apply(State state) throws Exception;
+  }
+
+  /**
+   * Receives the operations as soon as they have been parsed.
+   */
+  protected interface OperationHandler {
+
+    /**
+     * Handles the operation.
+     *
+     * @param op	the operation
+     * @throws Exception	if handling fails
+     */
+    public void handle(Operation op) throws Exception;
+  }
+
+  /**
+   * Selects the page to draw on.
+   */
+  protected static class PageOperation
+    implements Operation {
+
+    /** the page (1-based). */
+    protected final int m_Page;
+
+    /**
+     * Initializes the operation.
+     *
+     * @param page	the page (1-based)
+     */
+    public PageOperation(int page) {
+      m_Page = page;
+    }
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     */
+    @Override
+    public void apply(State state) {
+      state.select(m_Page, state.stamper.getOverContent(m_Page));
+    }
+
+    /**
+     * Returns a description of the operation.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "page " + m_Page;
+    }
+  }
+
+  /**
+   * A range of pages (1-based): from-to, all, odd or even pages.
+   */
+  protected static class PageRange {
+
+    /** the first page. */
+    protected final int m_From;
+
+    /** the last page, -1 for last page of the document. */
+    protected final int m_To;
+
+    /** the step between pages. */
+    protected final int m_Step;
+
+    /**
+     * Initializes the range.
+     *
+     * @param from	the first page
+     * @param to	the last page, -1 for the last page of the document
+     * @param step	the step between pages
+     */
+    public PageRange(int from, int to, int step) {
+      m_From = from;
+      m_To   = to;
+      m_Step = step;
+    }
+
+    /**
+     * Returns the first page.
+     *
+     * @return		the page
+     */
+    public int getFrom() {
+      return m_From;
+    }
+
+    /**
+     * Returns the last page.
+     *
+     * @param numPages	the number of pages in the document
+     * @return		the page
+     */
+    public int getTo(int numPages) {
+      if ((m_To == -1) || (m_To > numPages))
+	return numPages;
+      return m_To;
+    }
+
+    /**
+     * Returns the step between pages.
+     *
+     * @return		the step
+     */
+    public int getStep() {
+      return m_Step;
+    }
+
+    /**
+     * Parses the range: all, odd, even or from-to.
+     *
+     * @param str	the string to parse
+     * @return		the range, null if just a single page
+     */
+    public static PageRange parse(String str) {
+      int	pos;
+      int	from;
+      int	to;
+
+      switch (str.toLowerCase()) {
+	case "all":
+	  return new PageRange(1, -1, 1);
+	case "odd":
+	  return new PageRange(1, -1, 2);
+	case "even":
+	  return new PageRange(2, -1, 2);
+      }
+
+      pos = str.indexOf('-');
+      if (pos == -1)
+	return null;
+      from = Integer.parseInt(str.substring(0, pos).trim());
+      to   = Integer.parseInt(str.substring(pos + 1).trim());
+      if ((from < 1) || (to < from))
+	throw new IllegalArgumentException("Invalid page range: " + str);
+
+      return new PageRange(from, to, 1);
+    }
+  }
+
+  /**
+   * Renders its operations once into a template per page size and adds the
+   * template to all the pages of the range.
+   */
+  protected static class RangeOperation
+    implements Operation {
+
+    /** the pages. */
+    protected final PageRange m_Range;
+
+    /** the operations to render. */
+    protected final List<Operation> m_Operations;
+
+    /**
+     * Initializes the operation.
+     *
+     * @param range	the pages
+     * @param operations	the operations to render
+     */
+    public RangeOperation(PageRange range, List<Operation> operations) {
+      m_Range      = range;
+      m_Operations = Collections.unmodifiableList(new ArrayList<>(operations));
+    }
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     * @throws Exception	if rendering fails
+     */
+    @Override
+    public void apply(State state) throws Exception {
+      Map<String,PdfTemplate>	templates;
+      PdfTemplate		template;
+      PdfContentByte		cb;
+      Rectangle			size;
+      String			key;
+      int			to;
+      int			i;
+
+      templates = new HashMap<>();
+      to        = m_Range.getTo(state.reader.getNumberOfPages());
+      for (i = m_Range.getFrom(); i <= to; i += m_Range.getStep()) {
+	size     = state.getPageSize(i);
+	key      = size.getLeft() + "," + size.getBottom() + "," + size.getRight() + "," + size.getTop();
+	cb       = state.stamper.getOverContent(i);
+	template = templates.get(key);
+	if (template == null) {
+	  template = cb.createTemplate(size.getWidth(), size.getHeight());
+	  template.setBoundingBox(new Rectangle(size.getLeft(), size.getBottom(), size.getRight(), size.getTop()));
+	  state.select(i, template);
+	  for (Operation op: m_Operations)
+	    op.apply(state);
+	  templates.put(key, template);
+	}
+	cb.addTemplate(template, 0, 0);
+	state.select(i, cb);
+      }
+    }
+
+    /**
+     * Returns a description of the operation.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "pages " + m_Range.getFrom() + "-" + m_Range.m_To + "/" + m_Range.getStep() + " " + m_Operations;
+    }
+  }
+
+  /**
+   * Places text in a rectangle.
+   */
+  protected static class TextOperation
+    implements Operation {
+
+    /** lower left x (points, negative for page width). */
+    protected final float m_LLX;
+
+    /** lower left y (points, negative for page height). */
+    protected final float m_LLY;
+
+    /** upper right x (points, negative for page width). */
+    protected final float m_URX;
+
+    /** upper right y (points, negative for page height). */
+    protected final float m_URY;
+
+    /** the leading. */
+    protected final float m_Leading;
+
+    /** the alignment. */
+    protected final int m_Alignment;
+
+    /** the text. */
+    protected final String m_Text;
+
+    /** the font, null for default. */
+    protected final Font m_Font;
+
+    /**
+     * Initializes the operation.
+     *
+     * @param llx	lower left x
+     * @param lly	lower left y
+     * @param urx	upper right x
+     * @param ury	upper right y
+     * @param leading	the leading
+     * @param alignment	the alignment
+     * @param text	the text
+     * @param font	the font, null for default
+     */
+    public TextOperation(float llx, float lly, float urx, float ury, float leading, int alignment, String text, Font font) {
+      m_LLX       = llx;
+      m_LLY       = lly;
+      m_URX       = urx;
+      m_URY       = ury;
+      m_Leading   = leading;
+      m_Alignment = alignment;
+      m_Text      = text;
+      m_Font      = font;
+    }
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     * @throws Exception	if placing the text fails
+     */
+    @Override
+    public void apply(State state) throws Exception {
+      ColumnText	ct;
+
+      ct = new ColumnText(state.cb);
+      ct.setSimpleColumn(
+	resolve(m_LLX, state.width),
+	resolve(m_LLY, state.height),
+	resolve(m_URX, state.width),
+	resolve(m_URY, state.height),
+	m_Leading,
+	m_Alignment);
+      if (m_Font == null)
+	ct.setText(new Phrase(m_Text));
+      else
+	ct.setText(new Phrase(m_Text, m_Font));
+      ct.go();
+    }
+
+    /**
+     * Returns a description of the operation.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "text " + m_LLX + " " + m_LLY + " " + m_URX + " " + m_URY + " " + m_Leading + " " + m_Alignment + " " + m_Font + " " + m_Text;
+    }
+  }
+
+  /**
+   * Draws a line.
+   */
+  protected static class LineOperation
+    implements Operation {
+
+    /** the coordinates x1, y1, x2, y2 (points, negative for page width). */
+    protected final float[] m_Coordinates;
+
+    /** the line width. */
+    protected final float m_LineWidth;
+
+    /** the stroke color. */
+    protected final BaseColor m_Stroke;
+
+    /**
+     * Initializes the operation.
+     *
+     * @param coords	the coordinates
+     * @param lineWidth	the line width
+     * @param stroke	the stroke color
+     */
+    public LineOperation(float[] coords, float lineWidth, BaseColor stroke) {
+      m_Coordinates = coords.clone();
+      m_LineWidth   = lineWidth;
+      m_Stroke      = stroke;
+    }
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     */
+    @Override
+    public void apply(State state) {
+      state.cb.saveState();
+      state.cb.setLineWidth(m_LineWidth);
+      state.cb.setColorStroke(m_Stroke);
+      state.cb.moveTo(resolve(m_Coordinates[0], state.width), resolve(m_Coordinates[1], state.width));
+      state.cb.lineTo(resolve(m_Coordinates[2], state.width), resolve(m_Coordinates[3], state.width));
+      state.cb.stroke();
+      state.cb.restoreState();
+    }
+
+    /**
+     * Returns a description of the operation.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return "line " + Arrays.toString(m_Coordinates) + " " + m_LineWidth + " " + m_Stroke;
+    }
+  }
+
+  /**
+   * Draws a rectangle or an oval.
+   */
+  protected static class ShapeOperation
+    implements Operation {
+
+    /** whether to draw an oval rather than a rectangle. */
+    protected final boolean m_Oval;
+
+    /** the coordinates (points, negative for page width). */
+    protected final float[] m_Coordinates;
+
+    /** the line width. */
+    protected final float m_LineWidth;
+
+    /** the stroke color. */
+    protected final BaseColor m_Stroke;
+
+    /** the fill color, null if not filled. */
+    protected final BaseColor m_Fill;
+
+    /**
+     * Initializes the operation.
+     *
+     * @param oval	whether to draw an oval (x1 y1 x2 y2) rather than a rectangle (x y w h)
+     * @param coords	the coordinates
+     * @param lineWidth	the line width
+     * @param stroke	the stroke color
+     * @param fill	the fill color, null if not filled
+     */
+    public ShapeOperation(boolean oval, float[] coords, float lineWidth, BaseColor stroke, BaseColor fill) {
+      m_Oval        = oval;
+      m_Coordinates = coords.clone();
+      m_LineWidth   = lineWidth;
+      m_Stroke      = stroke;
+      m_Fill        = fill;
+    }
+
+    /**
+     * Applies the operation.
+     *
+     * @param state	the current state
+     */
+    @Override
+    public void apply(State state) {
+      float	a;
+      float	b;
+      float	c;
+      float	d;
+
+      a = resolve(m_Coordinates[0], state.width);
+      b = resolve(m_Coordinates[1], state.width);
+      c = resolve(m_Coordinates[2], state.width);
+      d = resolve(m_Coordinates[3], state.width);
+      state.cb.saveState();
+      if (m_Oval)
+	state.cb.ellipse(a, b, c, d);
+      else
+	state.cb.rectangle(a, b, c, d);
+      state.cb.setLineWidth(m_LineWidth);
+      state.cb.setColorStroke(m_Stroke);
+      if (m_Fill != null) {
+	state.cb.setColorFill(m_Fill);
+	state.cb.fillStroke();
+      }
+      else {
+	state.cb.stroke();
+      }
+      state.cb.restoreState();
+    }
+
+    /**
+     * Returns a description of the operation.
+     *
+     * @return		the description
+     */
+    @Override
+    public String toString() {
+      return (m_Oval ? "oval " : "rect ") + Arrays.toString(m_Coordinates) + " " + m_LineWidth + " " + m_Stroke + " " + m_Fill;
+    }
+  }
+
+  /**
+   * Splits the arguments of an instruction into tokens, like trimming and
+   * splitting on single blanks, but without creating the intermediate
+   * strings and arrays.
+   */
+  protected static class Tokenizer {
+
+    /** the current line. */
+    protected String m_Line;
+
+    /** the end of the arguments (excluding). */
+    protected int m_End;
+
+    /** the start of the next token. */
+    protected int m_Pos;
+
+    /** the number of tokens. */
+    protected int m_Count;
+
+    /** the start of the current token. */
+    protected int m_Start;
+
+    /** the end of the current token (excluding). */
+    protected int m_Stop;
+
+    /** the color strings seen so far. */
+    protected List<String> m_ColorKeys;
+
+    /** the colors seen so far. */
+    protected List<BaseColor> m_Colors;
+
+    /**
+     * Initializes the tokenizer.
+     */
+    public Tokenizer() {
+      m_ColorKeys = new ArrayList<>();
+      m_Colors    = new ArrayList<>();
+    }
+
+    /**
+     * Starts tokenizing the arguments of the line.
+     *
+     * @param line	the line
+     * @param start	the start of the arguments
+     */
+    public void reset(String line, int start) {
+      int	i;
+
+      m_Line = line;
+      m_End  = line.length();
+      while ((start < m_End) && (line.charAt(start) <= ' '))
+	start++;
+      while ((m_End > start) && (line.charAt(m_End - 1) <= ' '))
+	m_End--;
+      m_Pos   = start;
+      m_Count = 1;
+      for (i = start; i < m_End; i++) {
+	if (line.charAt(i) == ' ')
+	  m_Count++;
+      }
+    }
+
+    /**
+     * Returns the number of tokens.
+     *
+     * @return		the number
+     */
+    public int count() {
+      return m_Count;
+    }
+
+    /**
+     * Moves on to the next token.
+     */
+    protected void next() {
+      m_Start = m_Pos;
+      m_Stop  = m_Line.indexOf(' ', m_Pos);
+      if ((m_Stop == -1) || (m_Stop > m_End))
+	m_Stop = m_End;
+      m_Pos = m_Stop + 1;
+    }
+
+    /**
+     * Returns the next token as string.
+     *
+     * @return		the token
+     */
+    public String nextString() {
+      next();
+      return m_Line.substring(m_Start, m_Stop);
+    }
+
+    /**
+     * Returns the next token as float.
+     *
+     * @return		the value
+     */
+    public float nextFloat() {
+      next();
+      return parseFloat(m_Line, m_Start, m_Stop);
+    }
+
+    /**
+     * Returns the next token as location in points.
+     *
+     * @param units	the units the location is in
+     * @return		the location, negative if the page maximum is to be used
+     */
+    public float nextLocation(int units) {
+      return toPoints(nextFloat(), units);
+    }
+
+    /**
+     * Returns the next four tokens as locations in points.
+     *
+     * @param units	the units the locations are in
+     * @return		the locations
+     */
+    public float[] nextLocations(int units) {
+      return new float[]{nextLocation(units), nextLocation(units), nextLocation(units), nextLocation(units)};
+    }
+
+    /**
+     * Returns the next token as alignment.
+     *
+     * @return		the alignment, see {@link Element}
+     */
+    public int nextAlignment() {
+      int	i;
+
+      next();
+      for (i = 0; i < ALIGNMENTS.length; i++) {
+	if ((ALIGNMENTS[i].length() == m_Stop - m_Start) && m_Line.startsWith(ALIGNMENTS[i], m_Start))
+	  return ALIGNMENT_VALUES[i];
+      }
+
+      return parseAlignment(m_Line.substring(m_Start, m_Stop));
+    }
+
+    /**
+     * Returns the next token as color.
+     *
+     * @return		the color
+     */
+    public BaseColor nextColor() {
+      BaseColor	result;
+      String	key;
+      int	i;
+
+      next();
+      for (i = 0; i < m_ColorKeys.size(); i++) {
+	key = m_ColorKeys.get(i);
+	if ((key.length() == m_Stop - m_Start) && m_Line.startsWith(key, m_Start))
+	  return m_Colors.get(i);
+      }
+
+      key    = m_Line.substring(m_Start, m_Stop);
+      result = parseBaseColor(key);
+      if (m_ColorKeys.size() < MAX_COLORS) {
+	m_ColorKeys.add(key);
+	m_Colors.add(result);
+      }
+
+      return result;
+    }
+
+    /**
+     * Returns the remaining tokens, without leading blanks.
+     *
+     * @return		the remainder
+     */
+    public String rest() {
+      int	start;
+
+      start = m_Pos;
+      while ((start < m_End) && (m_Line.charAt(start) == ' '))
+	start++;
+
+      return m_Line.substring(start, m_End);
+    }
+  }
+
+  /** the instruction prefixes, the index is the command. */
+  protected static final String[] COMMANDS = {
+    SimplePDFOverlay.PREFIX_UNITS,
+    SimplePDFOverlay.PREFIX_PAGE,
+    SimplePDFOverlay.PREFIX_FONT,
+    SimplePDFOverlay.PREFIX_TEXT,
+    SimplePDFOverlay.PREFIX_LINE,
+    SimplePDFOverlay.PREFIX_RECT,
+    SimplePDFOverlay.PREFIX_OVAL,
+  };
+
+  public static final int CMD_UNKNOWN = -1;
+
+  public static final int CMD_UNITS = 0;
+
+  public static final int CMD_PAGE = 1;
+
+  public static final int CMD_FONT = 2;
+
+  public static final int CMD_TEXT = 3;
+
+  public static final int CMD_LINE = 4;
+
+  public static final int CMD_RECT = 5;
+
+  public static final int CMD_OVAL = 6;
+
+  /** the dispatch table: first character of the line to command. */
+  protected static final int[] DISPATCH = new int[128];
+  static {
+    Arrays.fill(DISPATCH, CMD_UNKNOWN);
+    for (int i = 0; i < COMMANDS.length; i++) {
+      if (DISPATCH[COMMANDS[i].charAt(0)] != CMD_UNKNOWN)
+	throw new IllegalStateException("Instruction prefixes must start with different characters: " + COMMANDS[i]);
+      DISPATCH[COMMANDS[i].charAt(0)] = i;
+    }
+  }
+
+  public static final int UNITS_PT = 0;
+
+  public static final int UNITS_MM = 1;
+
+  public static final int UNITS_IN = 2;
+
+  /** the alignment strings. */
+  protected static final String[] ALIGNMENTS = {"UNDEFINED", "LEFT", "CENTER", "RIGHT", "JUSTIFIED"};
+
+  /** the alignments. */
+  protected static final int[] ALIGNMENT_VALUES = {Element.ALIGN_UNDEFINED, Element.ALIGN_LEFT, Element.ALIGN_CENTER, Element.ALIGN_RIGHT, Element.ALIGN_JUSTIFIED};
+
+  /** the powers of ten that are exact floats. */
+  protected static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f};
+
+  /** the maximum number of colors to remember per parse. */
+  public static final int MAX_COLORS = 64;
+
+  /** for logging. */
+  protected static final Logger LOGGER = Logger.getLogger(OverlayProgram.class.getName());
+
+  /** the operations. */
+  protected final List<Operation> m_Operations;
+
+  /**
+   * Initializes the program.
+   *
+   * @param operations	the operations
+   */
+  protected OverlayProgram(List<Operation> operations) {
+    m_Operations = Collections.unmodifiableList(new ArrayList<>(operations));
+  }
+
+  /**
+   * Returns the number of operations.
+   *
+   * @return		the number
+   */
+  public int size() {
+    return m_Operations.size();
+  }
+
+  /**
+   * Returns the location, using the maximum if negative.
+   *
+   * @param value	the location in points
+   * @param max		the maximum
+   * @return		the location
+   */
+  protected static float resolve(float value, float max) {
+    return (value >= 0) ? value : max;
+  }
+
+  /**
+   * Parses the color string (#RRGGBB) into an iText color.
+   *
+   * @param str		the color string
+   * @return		the color, BLACK if failed to parse
+   * @see		ResourceCache#getColor(String)
+   */
+  protected static BaseColor parseBaseColor(String str) {
+    return ResourceCache.getColor(str);
+  }
+
+  /**
+   * Parses the alignment string.
+   *
+   * @param str		the alignment string
+   * @return		the alignment, see {@link Element}
+   */
+  protected static int parseAlignment(String str) {
+    switch (str) {
+      case "UNDEFINED":
+	return Element.ALIGN_UNDEFINED;
+      case "LEFT":
+	return Element.ALIGN_LEFT;
+      case "CENTER":
+	return Element.ALIGN_CENTER;
+      case "RIGHT":
+	return Element.ALIGN_RIGHT;
+      case "JUSTIFIED":
+	return Element.ALIGN_JUSTIFIED;
+      default:
+	LOGGER.warning("Unhandled alignment, falling back to LEFT: " + str);
+	return Element.ALIGN_LEFT;
+    }
+  }
+
+  /**
+   * Parses a float from the part of the string. Plain decimal numbers with up
+   * to 7 digits are parsed directly (the division of two exact floats yields
+   * the correctly rounded result), anything else via Float.parseFloat.
+   *
+   * @param str		the string
+   * @param start	the start of the number
+   * @param end		the end of the number (excluding)
+   * @return		the value
+   * @throws NumberFormatException	if not a number
+   */
+  protected static float parseFloat(String str, int start, int end) {
+    int		i;
+    int		mantissa;
+    int		digits;
+    int		scale;
+    boolean	negative;
+    boolean	dot;
+    char	c;
+    float	result;
+
+    i        = start;
+    negative = false;
+    if ((i < end) && ((str.charAt(i) == '-') || (str.charAt(i) == '+'))) {
+      negative = (str.charAt(i) == '-');
+      i++;
+    }
+    mantissa = 0;
+    digits   = 0;
+    scale    = 0;
+    dot      = false;
+    for (; i < end; i++) {
+      c = str.charAt(i);
+      if ((c >= '0') && (c <= '9') && (digits < 7)) {
+	mantissa = mantissa * 10 + (c - '0');
+	digits++;
+	if (dot)
+	  scale++;
+      }
+      else if ((c == '.') && !dot) {
+	dot = true;
+      }
+      else {
+	return Float.parseFloat(str.substring(start, end));
+      }
+    }
+    if (digits == 0)
+      return Float.parseFloat(str.substring(start, end));
+
+    result = (float) mantissa;
+    if (scale > 0)
+      result /= POWERS_OF_TEN[scale];
+
+    return negative ? -result : result;
+  }
+
+  /**
+   * Parses the units.
+   *
+   * @param str		the units (pt|mm|in)
+   * @return		the units, pt if unknown
+   */
+  protected static int parseUnits(String str) {
+    switch (str) {
+      case "pt":
+	return UNITS_PT;
+      case "mm":
+	return UNITS_MM;
+      case "in":
+	return UNITS_IN;
+      default:
+	LOGGER.warning("Unknown units: " + str);
+	return UNITS_PT;
+    }
+  }
+
+  /**
+   * Converts the location to points.
+   *
+   * @param value	the location
+   * @param units	the units of the location
+   * @return		the location in points, negative if the page maximum is to be used
+   */
+  protected static float toPoints(float value, int units) {
+    if (value < 0)
+      return value;
+
+    switch (units) {
+      case UNITS_MM:
+	return Utilities.millimetersToPoints(value);
+      case UNITS_IN:
+	return Utilities.inchesToPoints(value);
+      default:
+	return value;
+    }
+  }
+
+  /**
+   * Determines the command of the instruction.
+   *
+   * @param line	the line with the instruction
+   * @return		the command, {@link #CMD_UNKNOWN} if none
+   */
+  protected static int command(String line) {
+    char	c;
+    int		cmd;
+
+    if (line.isEmpty())
+      return CMD_UNKNOWN;
+    c = line.charAt(0);
+    if (c >= DISPATCH.length)
+      return CMD_UNKNOWN;
+    cmd = DISPATCH[c];
+    if ((cmd != CMD_UNKNOWN) && line.startsWith(COMMANDS[cmd]))
+      return cmd;
+
+    return CMD_UNKNOWN;
+  }
+
+  /**
+   * Compiles the instructions from the file (UTF-8).
+   *
+   * @param instructions	the file with the instructions
+   * @return		the program
+   * @throws Exception	if reading or parsing fails
+   */
+  public static OverlayProgram compile(File instructions) throws Exception {
+    Reader	freader;
+
+    freader = null;
+    try {
+      freader = new InputStreamReader(new FileInputStream(instructions), StandardCharsets.UTF_8);
+      return compile(freader);
+    }
+    finally {
+      FileUtils.closeQuietly(freader);
+    }
+  }
+
+  /**
+   * Compiles the instructions from the reader. The reader does not get
+   * closed.
+   *
+   * @param instructions	the reader to read the instructions from
+   * @return		the program
+   * @throws Exception	if reading or parsing fails
+   */
+  public static OverlayProgram compile(Reader instructions) throws Exception {
+    List<Operation>	operations;
+
+    operations = new ArrayList<>();
+    parse(instructions, operations::add);
+
+    return new OverlayProgram(operations);
+  }
+
+  /**
+   * Passes the operation on to the handler or adds it to the current block.
+   *
+   * @param op		the operation
+   * @param block	the current block of a page range, null if none
+   * @param handler	the handler for the top-level operations
+   * @throws Exception	if the handler fails
+   */
+  protected static void add(Operation op, List<Operation> block, OperationHandler handler) throws Exception {
+    if (block == null)
+      handler.handle(op);
+    else
+      block.add(op);
+  }
+
+  /**
+   * Parses the instructions from the reader and passes the operations on to
+   * the handler as soon as they are complete (operations of a page range
+   * once the range ends). The reader does not get closed.
+   *
+   * @param instructions	the reader to read the instructions from
+   * @param handler	the handler for the operations
+   * @throws Exception	if reading, parsing or handling fails
+   */
+  protected static void parse(Reader instructions, OperationHandler handler) throws Exception {
+    List<Operation>	block;
+    PageRange		range;
+    BufferedReader	breader;
+    Tokenizer		tokens;
+    String		line;
+    String		args;
+    int 		lineNo;
+    int			units;
+    int			cmd;
+    int			first;
+    Font 		font;
+
+    block   = null;
+    range   = null;
+    breader = new BufferedReader(instructions);
+    tokens  = new Tokenizer();
+    lineNo  = 0;
+    units   = UNITS_PT;
+    font    = null;
+    while ((line = breader.readLine()) != null) {
+      lineNo++;
+      first = 0;
+      while ((first < line.length()) && (line.charAt(first) <= ' '))
+	first++;
+      if (first == line.length())
+	continue;
+      if (line.startsWith(SimplePDFOverlay.PREFIX_COMMENT, first))
+	continue;
+      try {
+	cmd = command(line);
+	switch (cmd) {
+	  case CMD_UNITS:
+	    units = parseUnits(line.substring(COMMANDS[cmd].length()).trim().toLowerCase());
+	    break;
+
+	  case CMD_PAGE:
+	    if (range != null)
+	      handler.handle(new RangeOperation(range, block));
+	    args  = line.substring(COMMANDS[cmd].length()).trim();
+	    range = PageRange.parse(args);
+	    if (range == null) {
+	      block = null;
+	      handler.handle(new PageOperation(Integer.parseInt(args)));
+	    }
+	    else {
+	      // the following instructions make up the template
+	      block = new ArrayList<>();
+	    }
+	    break;
+
+	  case CMD_FONT:
+	    tokens.reset(line, COMMANDS[cmd].length());
+	    if (tokens.count() == 3)
+	      font = ResourceCache.getFont(tokens.nextString(), tokens.nextFloat(), tokens.nextColor());
+	    else
+	      LOGGER.warning("Font instruction not in expected format (" + SimplePDFOverlay.FORMAT_FONT + "):\n" + line);
+	    break;
+
+	  case CMD_TEXT:
+	    tokens.reset(line, COMMANDS[cmd].length());
+	    if (tokens.count() >= 7) {
+	      add(new TextOperation(
+		tokens.nextLocation(units),  // llx
+		tokens.nextLocation(units),  // lly
+		tokens.nextLocation(units),  // urx
+		tokens.nextLocation(units),  // ury
+		tokens.nextFloat(),          // leading
+		tokens.nextAlignment(),      // alignment
+		tokens.rest(),
+		font), block, handler);
+	    }
+	    else {
+	      LOGGER.warning("Text instruction not in expected format (" + SimplePDFOverlay.FORMAT_TEXT + "):\n" + line);
+	    }
+	    break;
+
+	  case CMD_LINE:
+	    tokens.reset(line, COMMANDS[cmd].length());
+	    if (tokens.count() >= 6)
+	      add(new LineOperation(tokens.nextLocations(units), tokens.nextFloat(), tokens.nextColor()), block, handler);
+	    else
+	      LOGGER.warning("Line instruction not in expected format (" + SimplePDFOverlay.FORMAT_LINE + "):\n" + line);
+	    break;
+
+	  case CMD_RECT:
+	  case CMD_OVAL:
+	    tokens.reset(line, COMMANDS[cmd].length());
+	    if (tokens.count() >= 6)
+	      add(new ShapeOperation(
+		cmd == CMD_OVAL,
+		tokens.nextLocations(units),
+		tokens.nextFloat(),
+		tokens.nextColor(),
+		(tokens.count() >= 7) ? tokens.nextColor() : null), block, handler);
+	    else if (cmd == CMD_OVAL)
+	      LOGGER.warning("Oval instruction not in expected format (" + SimplePDFOverlay.FORMAT_OVAL + "):\n" + line);
+	    else
+	      LOGGER.warning("Rectangle instruction not in expected format (" + SimplePDFOverlay.FORMAT_RECT + "):\n" + line);
+	    break;
+
+	  default:
+	    LOGGER.warning("Unknown command on line #" + lineNo + ":\n" + line);
+	}
+      }
+      catch (Exception e) {
+	throw new IllegalArgumentException("Failed to process line #" + lineNo + ":\n" + line, e);
+      }
+    }
+
+    if (range != null)
+      handler.handle(new RangeOperation(range, block));
+  }
+
+  /**
+   * Opens the PDF for stamping.
+   *
+   * @param pdf		the PDF to overlay
+   * @param output	the stream to write the generated PDF to
+   * @return		the state, with the first page selected
+   * @throws Exception	if opening fails
+   */
+  protected static State open(File pdf, OutputStream output) throws Exception {
+    State		result;
+    FileInputStream	in;
+
+    result = new State();
+    in     = null;
+    try {
+      in            = new FileInputStream(pdf.getAbsolutePath());
+      result.reader = new PdfReader(in);
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+    result.stamper = new PdfStamper(result.reader, output);
+    result.select(1, result.stamper.getOverContent(1));
+
+    return result;
+  }
+
+  /**
+   * Finishes the stamping.
+   *
+   * @param state	the state to close
+   * @throws Exception	if closing fails
+   */
+  protected static void close(State state) throws Exception {
+    state.stamper.close();
+    state.reader.close();
+  }
+
+  /**
+   * Applies the program to the PDF.
+   *
+   * @param pdf		the PDF to overlay
+   * @param output	the file to store the generated PDF in
+   * @return		null if successful, otherwise error message
+   */
+  public String apply(File pdf, File output) {
+    FileOutputStream	out;
+
+    out = null;
+    try {
+      out = new FileOutputStream(output.getAbsolutePath());
+      return apply(pdf, out);
+    }
+    catch (Exception e) {
+      return "Failed to process!\n" + Utils.throwableToString(e);
+    }
+    finally {
+      FileUtils.closeQuietly(out);
+    }
+  }
+
+  /**
+   * Applies the program to the PDF. The stream gets closed.
+   *
+   * @param pdf		the PDF to overlay
+   * @param output	the stream to write the generated PDF to
+   * @return		null if successful, otherwise error message
+   */
+  public String apply(File pdf, OutputStream output) {
+    State	state;
+
+    try {
+      state = open(pdf, output);
+      for (Operation op: m_Operations)
+	op.apply(state);
+      close(state);
+      return null;
+    }
+    catch (Exception e) {
+      return "Failed to process!\n" + Utils.throwableToString(e);
+    }
+  }
+
+  /**
+   * Applies the instructions to the PDF while they are being read, i.e.,
+   * without compiling them first. The stream gets closed.
+   *
+   * @param instructions	the reader to read the instructions from
+   * @param pdf		the PDF to overlay
+   * @param output	the stream to write the generated PDF to
+   * @return		null if successful, otherwise error message
+   */
+  public static String execute(Reader instructions, File pdf, OutputStream output) {
+    final State	state;
+
+    try {
+      state = open(pdf, output);
+      parse(instructions, (Operation op) -> op.apply(state));
+      close(state);
+      return null;
+    }
+    catch (Exception e) {
+      return "Failed to process!\n" + Utils.throwableToString(e);
+    }
+  }
+}
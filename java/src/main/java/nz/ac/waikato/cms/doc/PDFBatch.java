@@ -0,0 +1,702 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * PDFBatch.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Processes batches of PDFs in parallel, for tools that turn one input PDF
+ * into one output PDF (eg {@link OverlayFilename} and {@link PageNumberOverlay}).
+ * The files get discovered while they are being processed, with the calling
+ * thread reading the inputs ahead of the jobs that process and write them.
+ * Outputs that are up to date can be skipped using an {@link OutputManifest}.
+ * Also determines the inputs of tools with a batch mode for directories and
+ * glob patterns (eg {@link HyperLinkGrades} and {@link SimplePDFOverlay}).
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PDFBatch {
+
+  public static final String JOBS = "jobs";
+
+  public static final String RECURSIVE = "recursive";
+
+  public static final String INCLUDE = "include";
+
+  public static final String EXCLUDE = "exclude";
+
+  public static final String INCREMENTAL = "incremental";
+
+  /** the minimum memory to assume per job when determining the number of jobs. */
+  public static final long MIN_MEMORY_PER_JOB = 32 * 1024 * 1024;
+
+  /** the memory to assume per job as multiple of the largest input file. */
+  public static final int MEMORY_FACTOR = 8;
+
+  /**
+   * Interface for the processing of a single file.
+   */
+  public interface Processor {
+
+    /**
+     * Processes the input file and writes the output file.
+     *
+     * @param data	the content of the input file, null to read it from disk
+     * @param input	the input file
+     * @param output	the output file
+     * @return		null if successful, otherwise error message
+     */
+    public String process(byte[] data, File input, File output);
+  }
+
+  /**
+   * Interface for classes that get notified about the progress.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Gets called after a file has been processed.
+     *
+     * @param input	the input file
+     * @param output	the output file
+     * @param processed	the number of files processed so far
+     * @param error	null if successful, otherwise error message
+     */
+    public void fileProcessed(File input, File output, int processed, String error);
+  }
+
+  /**
+   * The content of an input file, read ahead of processing.
+   */
+  protected static class Input {
+
+    /** the index of the file, -1 for the end of the files. */
+    public final int index;
+
+    /** the input file. */
+    public final File input;
+
+    /** the output file. */
+    public final File output;
+
+    /** the content, null if failed to read. */
+    public final byte[] data;
+
+    /** the error message, null if successfully read. */
+    public final String error;
+
+    /** the permits of the read-ahead budget held by the content. */
+    public final int permits;
+
+    /**
+     * Initializes the input.
+     *
+     * @param index	the index of the file
+     * @param input	the input file
+     * @param output	the output file
+     * @param data	the content
+     * @param error	the error message
+     * @param permits	the permits held by the content
+     */
+    public Input(int index, File input, File output, byte[] data, String error, int permits) {
+      this.index   = index;
+      this.input   = input;
+      this.output  = output;
+      this.data    = data;
+      this.error   = error;
+      this.permits = permits;
+    }
+  }
+
+  /** marks the end of the files. */
+  protected static final Input END = new Input(-1, null, null, null, null, 0);
+
+  /**
+   * Determines the number of jobs to use.
+   *
+   * @param numJobs	the requested number of jobs, less than 1 to determine it from
+   * 			the available cores and the memory required for the largest input
+   * @param inputs	the input files
+   * @return		the number of jobs
+   */
+  public static int determineJobs(int numJobs, File[] inputs) {
+    long	largest;
+    long	perJob;
+    long	memory;
+
+    if (numJobs > 0)
+      return numJobs;
+
+    largest = 0;
+    for (File input: inputs)
+      largest = Math.max(largest, input.length());
+    perJob = Math.max(MIN_MEMORY_PER_JOB, largest * MEMORY_FACTOR);
+    memory = Runtime.getRuntime().maxMemory();
+
+    return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), memory / perJob));
+  }
+
+  /**
+   * Returns the read-ahead budget, i.e., how much input data (in KB) can be
+   * held in memory at a time, being queued or processed. Since processing
+   * requires about {@link #MEMORY_FACTOR} times the size of the input, this
+   * is the maximum heap size divided by that factor.
+   *
+   * @return		the budget in KB
+   */
+  protected static int determineBudget() {
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / MEMORY_FACTOR / 1024));
+  }
+
+  /**
+   * Returns the permits of the read-ahead budget required for the file.
+   * Files larger than the budget take up all of it.
+   *
+   * @param size	the size of the file in bytes
+   * @param budget	the budget in KB
+   * @return		the permits
+   */
+  protected static int determinePermits(long size, int budget) {
+    return (int) Math.min(budget, Math.max(1, (size + 1023) / 1024));
+  }
+
+  /**
+   * Records the outcome of processing a file in the manifest, if any.
+   *
+   * @param manifest	the manifest, can be null
+   * @param input	the input file
+   * @param data	the content of the input file, null to read it from disk
+   * @param output	the output file
+   * @param error	null if successful, otherwise error message
+   */
+  protected static void updateManifest(OutputManifest manifest, File input, byte[] data, File output, String error) {
+    String	msg;
+
+    if (manifest == null)
+      return;
+    if (error != null) {
+      manifest.remove(output);
+    }
+    else {
+      msg = manifest.update(input, data, output);
+      if (msg != null)
+	System.err.println(msg);
+    }
+  }
+
+  /**
+   * Processes all the files, using multiple jobs.
+   *
+   * @param files	the input and output files (0=input, 1=output)
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link #determineJobs(int, File[])}
+   * @param manifest	the manifest for skipping outputs that are up to date, null to process all
+   * @param processor	the processor to apply to the files
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
+   */
+  public static List<String> process(File[][] files, int numJobs, OutputManifest manifest, Processor processor, ProgressListener listener) {
+    List<File[]>	pairs;
+    int			i;
+
+    pairs = new ArrayList<>();
+    for (i = 0; i < files[0].length; i++)
+      pairs.add(new File[]{files[0][i], files[1][i]});
+    numJobs = Math.min(determineJobs(numJobs, files[0]), Math.max(1, files[0].length));
+
+    return process(pairs.iterator(), numJobs, manifest, processor, listener);
+  }
+
+  /**
+   * Processes the files as they get supplied by the iterator (eg from
+   * {@link #discoverFiles(File, File, boolean, List, List)}), using multiple
+   * jobs. The calling thread obtains and reads the input files ahead of the
+   * jobs, which process and write them. To avoid running out of memory with
+   * large files, reading ahead gets limited by the size of the files being
+   * queued or processed, see {@link #determineBudget()}.
+   *
+   * @param files	the input and output file pairs (0=input, 1=output)
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link #determineJobs(int, File[])}
+   * @param manifest	the manifest for skipping outputs that are up to date, null to process all
+   * @param processor	the processor to apply to the files
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
+   */
+  public static List<String> process(Iterator<File[]> files, int numJobs, OutputManifest manifest, Processor processor, ProgressListener listener) {
+    List<String>			result;
+    final Map<Integer,String>		errors;
+    final BlockingQueue<Input>		queue;
+    final AtomicInteger			processed;
+    final Semaphore			budget;
+    ExecutorService			executor;
+    List<Future<?>>			jobs;
+    File[]				pair;
+    byte[]				data;
+    String				error;
+    int					i;
+    int					permits;
+    int					maxPermits;
+
+    result    = new ArrayList<>();
+    errors    = new ConcurrentSkipListMap<>();
+    processed = new AtomicInteger();
+    numJobs   = determineJobs(numJobs, new File[0]);
+
+    if (numJobs == 1) {
+      i = 0;
+      try {
+	while (files.hasNext()) {
+	  pair = files.next();
+	  if ((manifest != null) && manifest.isUpToDate(pair[0], pair[1]))
+	    continue;
+	  try {
+	    error = processor.process(null, pair[0], pair[1]);
+	    updateManifest(manifest, pair[0], null, pair[1], error);
+	    if (listener != null)
+	      listener.fileProcessed(pair[0], pair[1], processed.incrementAndGet(), error);
+	  }
+	  catch (Exception e) {
+	    // record against the file and continue with the next one
+	    error = "Failed to process " + pair[0] + ": " + e;
+	    if (manifest != null)
+	      manifest.remove(pair[1]);
+	  }
+	  if (error != null)
+	    errors.put(i, error);
+	  i++;
+	}
+      }
+      catch (Exception e) {
+	errors.put(i, "Failed to determine files: " + e);
+      }
+    }
+    else {
+      queue      = new ArrayBlockingQueue<>(numJobs);
+      maxPermits = determineBudget();
+      budget     = new Semaphore(maxPermits);
+      executor   = Executors.newFixedThreadPool(numJobs);
+      jobs       = new ArrayList<>();
+      for (i = 0; i < numJobs; i++) {
+	jobs.add(executor.submit(() -> {
+	  while (true) {
+	    Input in = queue.take();
+	    if (in == END)
+	      break;
+	    String err = in.error;
+	    try {
+	      if (err == null) {
+		err = processor.process(in.data, in.input, in.output);
+		updateManifest(manifest, in.input, in.data, in.output, err);
+	      }
+	      if (listener != null)
+		listener.fileProcessed(in.input, in.output, processed.incrementAndGet(), err);
+	    }
+	    catch (Exception e) {
+	      // keep taking files, otherwise reading them ahead would block
+	      err = "Failed to process " + in.input + ": " + e;
+	      if (manifest != null)
+		manifest.remove(in.output);
+	    }
+	    finally {
+	      budget.release(in.permits);
+	    }
+	    if (err != null)
+	      errors.put(in.index, err);
+	  }
+	  return null;
+	}));
+      }
+
+      try {
+	i = 0;
+	try {
+	  while (files.hasNext()) {
+	    pair = files.next();
+	    if ((manifest != null) && manifest.isUpToDate(pair[0], pair[1]))
+	      continue;
+	    permits = determinePermits(pair[0].length(), maxPermits);
+	    budget.acquire(permits);
+	    try {
+	      data  = Files.readAllBytes(pair[0].toPath());
+	      error = null;
+	    }
+	    catch (Exception e) {
+	      data  = null;
+	      error = "Failed to read " + pair[0] + ": " + e;
+	    }
+	    queue.put(new Input(i, pair[0], pair[1], data, error, permits));
+	    i++;
+	  }
+	}
+	catch (InterruptedException e) {
+	  throw e;
+	}
+	catch (Exception e) {
+	  errors.put(i, "Failed to determine files: " + e);
+	}
+	for (i = 0; i < numJobs; i++)
+	  queue.put(END);
+      }
+      catch (InterruptedException e) {
+	result.add("Interrupted!");
+	executor.shutdownNow();
+      }
+      executor.shutdown();
+      for (Future<?> job: jobs) {
+	try {
+	  job.get();
+	}
+	catch (Exception e) {
+	  result.add("Failed to process: " + e);
+	}
+      }
+    }
+
+    result.addAll(errors.values());
+
+    return result;
+  }
+
+  /**
+   * Creates a matcher for the pattern. Patterns starting with "glob:" or
+   * "regex:" get used as is, all others are interpreted as glob patterns.
+   *
+   * @param pattern	the pattern
+   * @return		the matcher
+   */
+  public static PathMatcher newMatcher(String pattern) {
+    if (pattern.startsWith("glob:") || pattern.startsWith("regex:"))
+      return FileSystems.getDefault().getPathMatcher(pattern);
+    else
+      return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+  }
+
+  /**
+   * Creates matchers for the patterns.
+   *
+   * @param patterns	the patterns, can be null
+   * @return		the matchers
+   * @see		#newMatcher(String)
+   */
+  public static List<PathMatcher> newMatchers(List<?> patterns) {
+    List<PathMatcher>	result;
+
+    result = new ArrayList<>();
+    if (patterns != null) {
+      for (Object pattern: patterns)
+	result.add(newMatcher("" + pattern));
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether any of the matchers matches the relative path or the
+   * name of the file.
+   *
+   * @param relative	the path relative to the input directory
+   * @param matchers	the matchers to check
+   * @return		true if matched
+   */
+  protected static boolean matches(Path relative, List<PathMatcher> matchers) {
+    for (PathMatcher matcher: matchers) {
+      if (matcher.matches(relative) || matcher.matches(relative.getFileName()))
+	return true;
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the file is to be processed.
+   *
+   * @param relative	the path relative to the input directory
+   * @param includes	the include patterns, all PDFs if null or empty
+   * @param excludes	the exclude patterns, can be null
+   * @return		true if to be processed
+   */
+  public static boolean accept(Path relative, List<PathMatcher> includes, List<PathMatcher> excludes) {
+    if ((includes == null) || includes.isEmpty()) {
+      if (!relative.getFileName().toString().toLowerCase().endsWith(".pdf"))
+	return false;
+    }
+    else if (!matches(relative, includes)) {
+      return false;
+    }
+    return (excludes == null) || !matches(relative, excludes);
+  }
+
+  /**
+   * Discovers the files to process, returning them as stream of input and
+   * output pairs (0=input, 1=output). The directory gets traversed lazily
+   * while the stream gets consumed, so processing can start with the first
+   * file found. The output directory mirrors the structure of the input
+   * directory. If the input is a file, the output is considered a file as
+   * well, unless it is an existing directory. The stream must be closed after
+   * use.
+   *
+   * @param input	the input file/dir
+   * @param output	the output file/dir
+   * @param recursive	whether to traverse the sub-directories as well
+   * @param includes	the patterns of the files to include, all PDFs if null or empty
+   * @param excludes	the patterns of the files to exclude, can be null
+   * @return		the input/output pairs
+   * @throws IOException	if traversing the directory fails
+   */
+  public static Stream<File[]> discoverFiles(File input, File output, boolean recursive, List<PathMatcher> includes, List<PathMatcher> excludes) throws IOException {
+    final Path	root;
+    final Path	outRoot;
+
+    if (input.isFile()) {
+      if (output.isDirectory())
+	output = new File(output.getAbsolutePath() + File.separator + input.getName());
+      return Stream.<File[]>of(new File[]{input, output});
+    }
+
+    if (output.isFile())
+      output = output.getParentFile();
+    root    = input.toPath().toAbsolutePath().normalize();
+    outRoot = output.toPath().toAbsolutePath().normalize();
+
+    return Files.walk(root, recursive ? Integer.MAX_VALUE : 1)
+      .filter((Path path) -> root.equals(outRoot) || !path.startsWith(outRoot))
+      .filter((Path path) -> Files.isRegularFile(path))
+      .filter((Path path) -> accept(root.relativize(path), includes, excludes))
+      .map((Path path) -> new File[]{path.toFile(), outRoot.resolve(root.relativize(path)).toFile()});
+  }
+
+  /**
+   * Determines the input and output files (non-recursive, all PDFs) and
+   * returns them as array (0=input, 1=output), see
+   * {@link #discoverFiles(File, File, boolean, List, List)}.
+   *
+   * @param input	the input file/dir
+   * @param output	the output file/dir
+   * @return		the matched input/output files
+   * @throws IOException	if listing the directory fails
+   */
+  public static File[][] determineFiles(File input, File output) throws IOException {
+    File[][]		result;
+    List<File[]>	files;
+    int			i;
+
+    try (Stream<File[]> stream = discoverFiles(input, output, false, null, null)) {
+      files = stream.collect(Collectors.toList());
+    }
+    result = new File[2][files.size()];
+    for (i = 0; i < files.size(); i++) {
+      result[0][i] = files.get(i)[0];
+      result[1][i] = files.get(i)[1];
+    }
+
+    return result;
+  }
+
+  /**
+   * Checks whether the input denotes a batch of PDFs, i.e., a directory or
+   * a glob pattern (eg "/some/where/*.pdf").
+   *
+   * @param input	the input to check
+   * @return		true if batch
+   */
+  public static boolean isBatch(String input) {
+    return new File(input).isDirectory() || input.contains("*") || input.contains("?");
+  }
+
+  /**
+   * Determines the PDFs to process, either all the PDFs in a directory or
+   * the files matching a glob pattern (eg "/some/where/*.pdf").
+   *
+   * @param input	the directory or glob pattern
+   * @return		the files, sorted by name
+   */
+  public static List<File> determineInputs(String input) {
+    List<File>		result;
+    File		dir;
+    File[]		files;
+    PathMatcher		matcher;
+
+    result = new ArrayList<>();
+    if (new File(input).isDirectory()) {
+      dir     = new File(input);
+      matcher = null;
+    }
+    else {
+      dir     = new File(input).getParentFile();
+      if (dir == null)
+	dir = new File(".");
+      matcher = FileSystems.getDefault().getPathMatcher("glob:" + new File(input).getName());
+    }
+
+    files = dir.listFiles();
+    if (files == null)
+      return result;
+    for (File file: files) {
+      if (!file.isFile())
+	continue;
+      if (matcher == null) {
+	if (file.getName().toLowerCase().endsWith(".pdf"))
+	  result.add(file);
+      }
+      else {
+	if (matcher.matches(Paths.get(file.getName())))
+	  result.add(file);
+      }
+    }
+    Collections.sort(result);
+
+    return result;
+  }
+
+  /**
+   * Adds the arguments for batch processing (jobs, recursive, include,
+   * exclude, incremental) to the parser.
+   *
+   * @param parser	the parser to add the arguments to
+   */
+  public static void addArguments(ArgumentParser parser) {
+    parser.addArgument("--" + JOBS)
+      .metavar(JOBS)
+      .type(Integer.class)
+      .dest(JOBS)
+      .setDefault(1)
+      .help("The number of files to process in parallel (less than 1 determines it from the available cores and memory).");
+    parser.addArgument("--" + RECURSIVE)
+      .metavar(RECURSIVE)
+      .type(Boolean.class)
+      .dest(RECURSIVE)
+      .setDefault(false)
+      .help("Whether to process the sub-directories of the input directory as well, mirroring them in the output directory.");
+    parser.addArgument("--" + INCLUDE)
+      .metavar("pattern")
+      .type(String.class)
+      .dest(INCLUDE)
+      .action(Arguments.append())
+      .help("The glob pattern (eg '*.pdf') or regular expression ('regex:...') of the files to include, matched against the name and the path relative to the input directory (can be supplied multiple times; default: all PDFs).");
+    parser.addArgument("--" + EXCLUDE)
+      .metavar("pattern")
+      .type(String.class)
+      .dest(EXCLUDE)
+      .action(Arguments.append())
+      .help("The glob pattern or regular expression ('regex:...') of the files to exclude (can be supplied multiple times).");
+    parser.addArgument("--" + INCREMENTAL)
+      .metavar(INCREMENTAL)
+      .type(Boolean.class)
+      .dest(INCREMENTAL)
+      .setDefault(false)
+      .help("Whether to skip outputs that are up to date, i.e., generated from the same input with the same options and tool version (recorded in '" + OutputManifest.FILENAME + "' in the output directory).");
+  }
+
+  /**
+   * Processes the input file or directory from the command-line, using the
+   * arguments added via {@link #addArguments(ArgumentParser)}. Outputs the
+   * processed files on stdout and the errors on stderr.
+   *
+   * @param input	the input file/dir
+   * @param output	the output file/dir
+   * @param namespace	the parsed arguments
+   * @param options	the tool and the options that influence the output, for the manifest
+   * @param processor	the processor to apply to the files
+   * @return		the number of files that failed
+   * @throws IOException	if traversing the directory fails
+   */
+  public static int run(File input, File output, Namespace namespace, String options, Processor processor) throws IOException {
+    OutputManifest	manifest;
+    AtomicInteger	total;
+    List<String>	errors;
+    File		dir;
+    String		msg;
+
+    manifest = null;
+    if (namespace.getBoolean(INCREMENTAL)) {
+      dir = output;
+      if (input.isFile() && !dir.isDirectory())
+	dir = dir.getAbsoluteFile().getParentFile();
+      manifest = new OutputManifest(dir, options);
+      msg      = manifest.load();
+      if (msg != null)
+	System.err.println(msg);
+    }
+
+    total = new AtomicInteger();
+    try (Stream<File[]> files = discoverFiles(
+      input,
+      output,
+      namespace.getBoolean(RECURSIVE),
+      newMatchers(namespace.getList(INCLUDE)),
+      newMatchers(namespace.getList(EXCLUDE)))) {
+      errors = process(
+	files.iterator(),
+	namespace.getInt(JOBS),
+	manifest,
+	processor,
+	(File in, File out, int processed, String error) -> {
+	  total.incrementAndGet();
+	  synchronized (System.out) {
+	    System.out.println(in + "\n--> " + out);
+	  }
+	});
+    }
+    finally {
+      if (manifest != null) {
+	msg = manifest.save();
+	if (msg != null)
+	  System.err.println(msg);
+      }
+    }
+
+    if (manifest != null)
+      System.out.println("Skipped " + manifest.getNumSkipped() + " up-to-date file(s).");
+
+    if (!errors.isEmpty()) {
+      System.err.println("Failed to process " + errors.size() + " of " + total.get() + " file(s):");
+      for (String error: errors)
+	System.err.println(error);
+    }
+
+    return errors.size();
+  }
+}
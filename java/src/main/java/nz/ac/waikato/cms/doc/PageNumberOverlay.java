@@ -0,0 +1,634 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * PageNumberOverlay.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Adds page numbers to PDFs, stamping all the pages in a single pass.
+ * The format supports the following placeholders:
+ * <ul>
+ *   <li>{page} -- the page number (1-based)</li>
+ *   <li>{total} -- the total number of pages</li>
+ *   <li>{filename} -- the name of the PDF file (no path)</li>
+ * </ul>
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PageNumberOverlay {
+
+  public static final String INPUT = "input";
+
+  public static final String OUTPUT = "output";
+
+  public static final String FORMAT = "format";
+
+  public static final String START = "start";
+
+  public static final String END = "end";
+
+  public static final String FONT = "font";
+
+  public static final String FONTSIZE = "fontsize";
+
+  public static final String COLOR = "color";
+
+  public static final String XPOS = "xpos";
+
+  public static final String YPOS = "ypos";
+
+  public static final String ALIGN = "align";
+
+  public static final String FONTDIR = "fontdir";
+
+  public static final String PLACEHOLDER_PAGE = "{page}";
+
+  public static final String PLACEHOLDER_TOTAL = "{total}";
+
+  public static final String PLACEHOLDER_FILENAME = "{filename}";
+
+  public static final String DEFAULT_FORMAT = "- " + PLACEHOLDER_PAGE + " -";
+
+  public static final String DEFAULT_FONT = "Helvetica";
+
+  public static final float DEFAULT_FONTSIZE = 12;
+
+  public static final String DEFAULT_COLOR = "#000000";
+
+  public static final float DEFAULT_XPOS = 280;
+
+  public static final float DEFAULT_YPOS = 800;
+
+  public static final String VALUES_ALIGN = "LEFT|CENTER|RIGHT";
+
+  /** the format of the page numbers. */
+  protected String m_Format;
+
+  /** the first page to number (1-based). */
+  protected int m_Start;
+
+  /** the last page to number (1-based), less than 1 for the last page. */
+  protected int m_End;
+
+  /** the name of the font. */
+  protected String m_FontName;
+
+  /** the size of the font. */
+  protected float m_FontSize;
+
+  /** the color (#RRGGBB). */
+  protected String m_Color;
+
+  /** the horizontal position. */
+  protected float m_X;
+
+  /** the vertical position. */
+  protected float m_Y;
+
+  /** the alignment (see {@link Element}). */
+  protected int m_Alignment;
+
+  /** the manifest for incremental processing, null if not incremental. */
+  protected OutputManifest m_Manifest;
+
+  /**
+   * Initializes the overlay with the defaults.
+   */
+  public PageNumberOverlay() {
+    m_Format    = DEFAULT_FORMAT;
+    m_Start     = 1;
+    m_End       = -1;
+    m_FontName  = DEFAULT_FONT;
+    m_FontSize  = DEFAULT_FONTSIZE;
+    m_Color     = DEFAULT_COLOR;
+    m_X         = DEFAULT_XPOS;
+    m_Y         = DEFAULT_YPOS;
+    m_Alignment = Element.ALIGN_LEFT;
+    m_Manifest  = null;
+  }
+
+  /**
+   * Sets the format of the page numbers.
+   *
+   * @param value	the format
+   */
+  public void setFormat(String value) {
+    m_Format = value;
+  }
+
+  /**
+   * Returns the format of the page numbers.
+   *
+   * @return		the format
+   */
+  public String getFormat() {
+    return m_Format;
+  }
+
+  /**
+   * Sets the first page to number.
+   *
+   * @param value	the page (1-based)
+   */
+  public void setStart(int value) {
+    m_Start = value;
+  }
+
+  /**
+   * Returns the first page to number.
+   *
+   * @return		the page (1-based)
+   */
+  public int getStart() {
+    return m_Start;
+  }
+
+  /**
+   * Sets the last page to number.
+   *
+   * @param value	the page (1-based), less than 1 for the last page
+   */
+  public void setEnd(int value) {
+    m_End = value;
+  }
+
+  /**
+   * Returns the last page to number.
+   *
+   * @return		the page (1-based), less than 1 for the last page
+   */
+  public int getEnd() {
+    return m_End;
+  }
+
+  /**
+   * Sets the name of the font.
+   *
+   * @param value	the name
+   */
+  public void setFontName(String value) {
+    m_FontName = value;
+  }
+
+  /**
+   * Returns the name of the font.
+   *
+   * @return		the name
+   */
+  public String getFontName() {
+    return m_FontName;
+  }
+
+  /**
+   * Sets the size of the font.
+   *
+   * @param value	the size
+   */
+  public void setFontSize(float value) {
+    m_FontSize = value;
+  }
+
+  /**
+   * Returns the size of the font.
+   *
+   * @return		the size
+   */
+  public float getFontSize() {
+    return m_FontSize;
+  }
+
+  /**
+   * Sets the color.
+   *
+   * @param value	the color (#RRGGBB)
+   */
+  public void setColor(String value) {
+    m_Color = value;
+  }
+
+  /**
+   * Returns the color.
+   *
+   * @return		the color (#RRGGBB)
+   */
+  public String getColor() {
+    return m_Color;
+  }
+
+  /**
+   * Sets the horizontal position.
+   *
+   * @param value	the position
+   */
+  public void setX(float value) {
+    m_X = value;
+  }
+
+  /**
+   * Returns the horizontal position.
+   *
+   * @return		the position
+   */
+  public float getX() {
+    return m_X;
+  }
+
+  /**
+   * Sets the vertical position.
+   *
+   * @param value	the position
+   */
+  public void setY(float value) {
+    m_Y = value;
+  }
+
+  /**
+   * Returns the vertical position.
+   *
+   * @return		the position
+   */
+  public float getY() {
+    return m_Y;
+  }
+
+  /**
+   * Sets the alignment.
+   *
+   * @param value	the alignment (see {@link Element})
+   */
+  public void setAlignment(int value) {
+    m_Alignment = value;
+  }
+
+  /**
+   * Returns the alignment.
+   *
+   * @return		the alignment (see {@link Element})
+   */
+  public int getAlignment() {
+    return m_Alignment;
+  }
+
+  /**
+   * Sets the manifest to use for skipping outputs that are up to date.
+   *
+   * @param value	the manifest, null to process all files
+   */
+  public void setManifest(OutputManifest value) {
+    m_Manifest = value;
+  }
+
+  /**
+   * Returns the manifest to use for skipping outputs that are up to date.
+   *
+   * @return		the manifest, null if processing all files
+   */
+  public OutputManifest getManifest() {
+    return m_Manifest;
+  }
+
+  /**
+   * Parses the alignment.
+   *
+   * @param value	the alignment to parse, see {@link #VALUES_ALIGN}
+   * @return		the alignment (see {@link Element})
+   * @throws IllegalArgumentException	if unknown alignment
+   */
+  public static int parseAlignment(String value) {
+    switch (value.toUpperCase()) {
+      case "LEFT":
+	return Element.ALIGN_LEFT;
+      case "CENTER":
+	return Element.ALIGN_CENTER;
+      case "RIGHT":
+	return Element.ALIGN_RIGHT;
+      default:
+	throw new IllegalArgumentException("Unknown alignment (" + VALUES_ALIGN + "): " + value);
+    }
+  }
+
+  /**
+   * Returns the options that influence the output, for the manifest.
+   *
+   * @return		the options
+   */
+  public String getOptions() {
+    return PageNumberOverlay.class.getName()
+      + " format=" + m_Format + " start=" + m_Start + " end=" + m_End
+      + " font=" + m_FontName + " fontsize=" + m_FontSize + " color=" + m_Color
+      + " x=" + m_X + " y=" + m_Y + " align=" + m_Alignment;
+  }
+
+  /**
+   * Generates the text for the page, replacing the placeholders in the format.
+   *
+   * @param format	the format
+   * @param page	the page number (1-based)
+   * @param total	the total number of pages
+   * @param filename	the name of the file
+   * @return		the text
+   */
+  public static String format(String format, int page, int total, String filename) {
+    String	result;
+
+    result = format;
+    if (result.contains(PLACEHOLDER_PAGE))
+      result = result.replace(PLACEHOLDER_PAGE, "" + page);
+    if (result.contains(PLACEHOLDER_TOTAL))
+      result = result.replace(PLACEHOLDER_TOTAL, "" + total);
+    if (result.contains(PLACEHOLDER_FILENAME))
+      result = result.replace(PLACEHOLDER_FILENAME, filename);
+
+    return result;
+  }
+
+  /**
+   * Adds the page numbers.
+   *
+   * @param input	the input file
+   * @param output	the output file
+   * @return		true if successful
+   */
+  public boolean overlay(File input, File output) {
+    String	error;
+
+    error = overlay(null, input, output);
+    if (error != null)
+      System.err.println(error);
+
+    return (error == null);
+  }
+
+  /**
+   * Adds the page numbers.
+   *
+   * @param data	the content of the input file, null to read it from disk
+   * @param input	the input file
+   * @param output	the output file
+   * @return		null if successful, otherwise error message
+   */
+  public String overlay(byte[] data, File input, File output) {
+    PdfReader 		reader;
+    PdfStamper 		stamper;
+    FileOutputStream 	fos;
+    Font		font;
+    int			numPages;
+    int			start;
+    int			end;
+    int 		i;
+
+    reader   = null;
+    stamper  = null;
+    fos      = null;
+    try {
+      if (data != null)
+	reader = new PdfReader(data);
+      else
+	reader = new PdfReader(input.getAbsolutePath());
+      if ((output.getParentFile() != null) && !output.getParentFile().exists())
+	output.getParentFile().mkdirs();
+      fos      = new FileOutputStream(output.getAbsolutePath());
+      stamper  = new PdfStamper(reader, fos);
+      font     = ResourceCache.getFont(m_FontName, m_FontSize, ResourceCache.getColor(m_Color));
+      numPages = reader.getNumberOfPages();
+      start    = Math.max(1, m_Start);
+      end      = (m_End < 1) ? numPages : Math.min(m_End, numPages);
+
+      for (i = start; i <= end; i++) {
+	ColumnText.showTextAligned(
+	  stamper.getOverContent(i),
+	  m_Alignment,
+	  new Phrase(format(m_Format, i, numPages, input.getName()), font),
+	  m_X,
+	  m_Y,
+	  0.0f);
+      }
+
+      // close explicitly, so that failing to write the output gets reported
+      stamper.close();
+      stamper = null;
+      fos.close();
+      fos = null;
+    }
+    catch (Exception e) {
+      // reported by the caller
+      return "Failed to process " + input + ": " + e;
+    }
+    finally {
+      try {
+	if (stamper != null)
+	  stamper.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      try {
+	if (reader != null)
+	  reader.close();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      try {
+	if (fos != null) {
+	  fos.flush();
+	  fos.close();
+	}
+      }
+      catch (Exception e) {
+	// ignored
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Adds the page numbers to all the files, using multiple jobs.
+   *
+   * @param files	the input and output files (0=input, 1=output)
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link PDFBatch#determineJobs(int, File[])}
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
+   */
+  public List<String> overlay(File[][] files, int numJobs, PDFBatch.ProgressListener listener) {
+    return PDFBatch.process(files, numJobs, m_Manifest, this::overlay, listener);
+  }
+
+  /**
+   * Adds the page numbers to the files as they get supplied by the iterator
+   * (eg from {@link PDFBatch#discoverFiles(File, File, boolean, List, List)}),
+   * using multiple jobs.
+   *
+   * @param files	the input and output file pairs (0=input, 1=output)
+   * @param numJobs	the number of jobs, less than 1 to determine it automatically,
+   * 			see {@link PDFBatch#determineJobs(int, File[])}
+   * @param listener	the listener to notify about the progress, can be null
+   * @return		the error messages, in the order of the input files, empty if all successful
+   */
+  public List<String> overlay(Iterator<File[]> files, int numJobs, PDFBatch.ProgressListener listener) {
+    return PDFBatch.process(files, numJobs, m_Manifest, this::overlay, listener);
+  }
+
+  /**
+   * Expects the following arguments:
+   * <ul>
+   *   <li>input -- the input PDF file or dir with PDFs<li/>
+   *   <li>output -- the output PDF file or dir if input is dir<li/>
+   *   <li>[optional] --format {format} -- the format of the page numbers<li/>
+   *   <li>[optional] --start {page} -- the first page to number<li/>
+   *   <li>[optional] --end {page} -- the last page to number<li/>
+   *   <li>[optional] --font {name} -- the name of the font<li/>
+   *   <li>[optional] --fontsize {size} -- the size of the font<li/>
+   *   <li>[optional] --xpos {pos} -- the horizontal position of the page numbers<li/>
+   *   <li>[optional] --ypos {pos} -- the vertical position of the page numbers<li/>
+   * </ul>
+   * Use -h/--help to see full help.
+   *
+   * @param args	the commandline arguments
+   * @throws Exception	if processing fails
+   */
+  public static void main(String[] args) throws Exception {
+    ArgumentParser parser;
+
+    parser = ArgumentParsers.newArgumentParser("PageNumberOverlay");
+    parser.description(
+      "Adds page numbers to the PDF, stamping all pages in a single pass.\n"
+	+ "The format supports the following placeholders:\n"
+	+ "- " + PLACEHOLDER_PAGE + ": the page number\n"
+	+ "- " + PLACEHOLDER_TOTAL + ": the total number of pages\n"
+	+ "- " + PLACEHOLDER_FILENAME + ": the name of the PDF file (no path)\n");
+    parser.addArgument(INPUT)
+      .metavar(INPUT)
+      .type(String.class)
+      .help("The PDF file (or directory with PDFs) to add the page numbers to.");
+    parser.addArgument(OUTPUT)
+      .metavar(OUTPUT)
+      .type(String.class)
+      .help("The file to save the modified PDF to, or an existing directory to save it in (must be a directory if input is a directory).");
+    parser.addArgument("--" + FORMAT)
+      .metavar(FORMAT)
+      .type(String.class)
+      .dest(FORMAT)
+      .setDefault(DEFAULT_FORMAT)
+      .help("The format of the page numbers.");
+    parser.addArgument("--" + START)
+      .metavar(START)
+      .type(Integer.class)
+      .dest(START)
+      .setDefault(1)
+      .help("The first page to number (1-based).");
+    parser.addArgument("--" + END)
+      .metavar(END)
+      .type(Integer.class)
+      .dest(END)
+      .setDefault(-1)
+      .help("The last page to number (1-based), less than 1 for the last page.");
+    parser.addArgument("--" + FONT)
+      .metavar(FONT)
+      .type(String.class)
+      .dest(FONT)
+      .setDefault(DEFAULT_FONT)
+      .help("The name of the font.");
+    parser.addArgument("--" + FONTSIZE)
+      .metavar(FONTSIZE)
+      .type(Float.class)
+      .dest(FONTSIZE)
+      .setDefault(DEFAULT_FONTSIZE)
+      .help("The size of the font.");
+    parser.addArgument("--" + COLOR)
+      .metavar(COLOR)
+      .type(String.class)
+      .dest(COLOR)
+      .setDefault(DEFAULT_COLOR)
+      .help("The color of the page numbers (#RRGGBB).");
+    parser.addArgument("--" + XPOS)
+      .metavar(XPOS)
+      .type(Float.class)
+      .dest(XPOS)
+      .setDefault(DEFAULT_XPOS)
+      .help("The horizontal position of the page numbers.");
+    parser.addArgument("--" + YPOS)
+      .metavar(YPOS)
+      .type(Float.class)
+      .dest(YPOS)
+      .setDefault(DEFAULT_YPOS)
+      .help("The vertical position of the page numbers.");
+    parser.addArgument("--" + ALIGN)
+      .metavar(ALIGN)
+      .type(String.class)
+      .dest(ALIGN)
+      .setDefault("LEFT")
+      .help("The alignment of the page numbers relative to the position: " + VALUES_ALIGN);
+    parser.addArgument("--" + FONTDIR)
+      .metavar(FONTDIR)
+      .type(String.class)
+      .dest(FONTDIR)
+      .help("The directory with additional fonts to register (incl sub-directories); directories can also be supplied via the '" + ResourceCache.PROPERTY_FONTDIR + "' system property.");
+    PDFBatch.addArguments(parser);
+
+    Namespace namespace;
+    try {
+      namespace = parser.parseArgs(args);
+    }
+    catch (Exception e) {
+      parser.printHelp();
+      return;
+    }
+
+    ResourceCache.registerFontDirectories();
+    if (namespace.getString(FONTDIR) != null)
+      ResourceCache.registerFontDirectory(new File(namespace.getString(FONTDIR)));
+
+    PageNumberOverlay overlay = new PageNumberOverlay();
+    overlay.setFormat(namespace.getString(FORMAT));
+    overlay.setStart(namespace.getInt(START));
+    overlay.setEnd(namespace.getInt(END));
+    overlay.setFontName(namespace.getString(FONT));
+    overlay.setFontSize(namespace.getFloat(FONTSIZE));
+    overlay.setColor(namespace.getString(COLOR));
+    overlay.setX(namespace.getFloat(XPOS));
+    overlay.setY(namespace.getFloat(YPOS));
+    overlay.setAlignment(parseAlignment(namespace.getString(ALIGN)));
+    int failed = PDFBatch.run(
+      new File(namespace.getString(INPUT)),
+      new File(namespace.getString(OUTPUT)),
+      namespace,
+      overlay.getOptions(),
+      overlay::overlay);
+    if (failed > 0)
+      System.exit(1);
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * PageTextCache.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import nz.ac.waikato.cms.core.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * On-disk cache for the text extracted from the pages of PDF files. The
+ * entries are keyed by the SHA-256 digest of the file content and the
+ * extraction version and store the text of all pages in page order, GZIP
+ * compressed. Once the cache exceeds
+ * its maximum size, the least recently used entries get removed.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PageTextCache {
+
+  /** the extension of the cache files. */
+  public static final String EXTENSION = ".txt.gz";
+
+  /** the default cache directory. */
+  public static final String DEFAULT_DIR = System.getProperty("user.home") + File.separator + ".fcms-doc-modifier" + File.separator + "textcache";
+
+  /** the default maximum size of the cache in MB. */
+  public static final int DEFAULT_MAX_SIZE = 256;
+
+  /**
+   * the version of the text extraction, needs to be increased whenever the
+   * output of LineTextExtractor or PageScanner changes.
+   * 2: word gaps get turned into spaces
+   */
+  public static final int EXTRACTION_VERSION = 2;
+
+  /** the cache directory. */
+  protected File m_Directory;
+
+  /** the maximum size in bytes. */
+  protected long m_MaxSize;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param dir		the directory to store the cache files in
+   * @param maxSize	the maximum size of the cache in MB
+   */
+  public PageTextCache(File dir, int maxSize) {
+    m_Directory = dir;
+    m_MaxSize   = (long) maxSize * 1024 * 1024;
+  }
+
+  /**
+   * Returns the cache directory.
+   *
+   * @return		the directory
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Computes the SHA-256 digest of the file content, combined with the
+   * {@link #EXTRACTION_VERSION}.
+   *
+   * @param file	the file to compute the digest for
+   * @return		the digest as hex string
+   * @throws Exception	if reading the file fails
+   */
+  public String digest(File file) throws Exception {
+    MessageDigest	md;
+    InputStream		in;
+    byte[]		buffer;
+    int			read;
+    StringBuilder	result;
+
+    md     = MessageDigest.getInstance("SHA-256");
+    buffer = new byte[65536];
+    in     = null;
+    md.update(("v" + EXTRACTION_VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+    try {
+      in = new FileInputStream(file);
+      while ((read = in.read(buffer)) != -1)
+	md.update(buffer, 0, read);
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+
+    result = new StringBuilder();
+    for (byte b: md.digest())
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the cache file for the digest.
+   *
+   * @param digest	the digest of the PDF
+   * @return		the cache file
+   */
+  protected File getFile(String digest) {
+    return new File(m_Directory, digest + EXTENSION);
+  }
+
+  /**
+   * Returns the cached text of the pages.
+   *
+   * @param digest	the digest of the PDF
+   * @return		the text of the pages, null if not cached
+   */
+  public synchronized String[] get(String digest) {
+    String[]		result;
+    File		file;
+    DataInputStream	in;
+    byte[]		bytes;
+    int			i;
+
+    file = getFile(digest);
+    if (!file.exists())
+      return null;
+
+    in = null;
+    try {
+      in     = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+      result = new String[in.readInt()];
+      for (i = 0; i < result.length; i++) {
+	bytes = new byte[in.readInt()];
+	in.readFully(bytes);
+	result[i] = new String(bytes, StandardCharsets.UTF_8);
+      }
+      file.setLastModified(System.currentTimeMillis());
+    }
+    catch (Exception e) {
+      System.err.println("Failed to read text cache file '" + file + "':");
+      e.printStackTrace();
+      result = null;
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+
+    return result;
+  }
+
+  /**
+   * Stores the text of the pages in the cache and removes the least recently
+   * used entries if the cache grows too large.
+   *
+   * @param digest	the digest of the PDF
+   * @param pages	the text of the pages
+   * @return		true if successfully stored
+   */
+  public synchronized boolean put(String digest, String[] pages) {
+    File		file;
+    File		tmpFile;
+    DataOutputStream	out;
+    byte[]		bytes;
+
+    if (!m_Directory.exists() && !m_Directory.mkdirs()) {
+      System.err.println("Failed to create text cache directory: " + m_Directory);
+      return false;
+    }
+
+    file    = getFile(digest);
+    tmpFile = new File(file.getAbsolutePath() + ".tmp");
+    out     = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+      out.writeInt(pages.length);
+      for (String page: pages) {
+	bytes = page.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(bytes.length);
+	out.write(bytes);
+      }
+      out.close();
+      out = null;
+      if (file.exists())
+	file.delete();
+      if (!tmpFile.renameTo(file)) {
+	System.err.println("Failed to rename '" + tmpFile + "' to '" + file + "'!");
+	return false;
+      }
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write text cache file '" + file + "':");
+      e.printStackTrace();
+      return false;
+    }
+    finally {
+      FileUtils.closeQuietly(out);
+      if (tmpFile.exists())
+	tmpFile.delete();
+    }
+
+    evict();
+
+    return true;
+  }
+
+  /**
+   * Removes the least recently used entries until the cache fits its
+   * maximum size again.
+   */
+  protected void evict() {
+    File[]	files;
+    long	total;
+    int		i;
+
+    files = m_Directory.listFiles((File dir, String name) -> name.endsWith(EXTENSION));
+    if (files == null)
+      return;
+
+    total = 0;
+    for (File file: files)
+      total += file.length();
+    if (total <= m_MaxSize)
+      return;
+
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (i = 0; (i < files.length) && (total > m_MaxSize); i++) {
+      total -= files[i].length();
+      files[i].delete();
+    }
+  }
+}
@@ -0,0 +1,311 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ResourceCache.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.BaseColor;
+import com.itextpdf.text.Font;
+import com.itextpdf.text.FontFactory;
+
+import java.awt.Color;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide, thread-safe cache for fonts and colors, so that long-running
+ * sessions only load fonts once. Font directories can be registered in the
+ * background; font lookups wait for pending registrations to finish, but not
+ * for the fonts of a directory to be loaded ahead of use. The number of
+ * cached fonts and colors is limited, dropping the least recently used ones.
+ * <br>
+ * Fonts and colors obtained from the cache are shared and must not be
+ * modified.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ResourceCache {
+
+  /** the system property with the font directories to register at startup (separated by the path separator). */
+  public static final String PROPERTY_FONTDIR = "fcms.fontdir";
+
+  /** for logging. */
+  protected static final Logger LOGGER = Logger.getLogger(ResourceCache.class.getName());
+
+  /** the maximum number of cached fonts. */
+  public static final int MAX_FONTS = 256;
+
+  /** the maximum number of cached colors. */
+  public static final int MAX_COLORS = 1024;
+
+  /** the fonts (name, encoding, size, color), least recently used first. */
+  protected static final Map<String,Font> FONTS = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** the colors, least recently used first. */
+  protected static final Map<String,BaseColor> COLORS = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** the pending font registrations. */
+  protected static final List<Future<?>> PENDING = new ArrayList<>();
+
+  /** for synchronizing access to the FontFactory, which is not thread-safe. */
+  protected static final Object FACTORY = new Object();
+
+  /** for registering fonts in the background. */
+  protected static final ExecutorService EXECUTOR = newExecutor("register");
+
+  /** for loading the registered fonts ahead of use in the background. */
+  protected static final ExecutorService WARMUP = newExecutor("warmup");
+
+  /**
+   * Creates a single-threaded executor using a daemon thread.
+   *
+   * @param name	the suffix for the thread name
+   * @return		the executor
+   */
+  protected static ExecutorService newExecutor(final String name) {
+    return Executors.newSingleThreadExecutor((Runnable r) -> {
+      Thread t = new Thread(r, ResourceCache.class.getSimpleName() + "-" + name);
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Removes the least recently used entries until the map fits the maximum
+   * size again. Must be called while synchronized on the map.
+   *
+   * @param map		the map to trim
+   * @param max		the maximum number of entries
+   */
+  protected static void trim(Map<String,?> map, int max) {
+    Iterator<String>	iter;
+
+    iter = map.keySet().iterator();
+    while ((map.size() > max) && iter.hasNext()) {
+      iter.next();
+      iter.remove();
+    }
+  }
+
+  /**
+   * Registers the fonts in the directory (and its sub-directories) in the
+   * background. Once registered, the fonts of the directory get loaded in
+   * the background as well, so that they are ready when needed. Font lookups
+   * only wait for the registration.
+   *
+   * @param dir		the directory with the fonts
+   */
+  public static synchronized void registerFontDirectory(final File dir) {
+    if (!dir.isDirectory()) {
+      LOGGER.warning("Font directory does not exist: " + dir);
+      return;
+    }
+
+    PENDING.add(EXECUTOR.submit(() -> {
+      final Set<String> added;
+      Set<String> before;
+      int count;
+      synchronized (FACTORY) {
+	before = new HashSet<>(FontFactory.getRegisteredFonts());
+	count  = FontFactory.registerDirectory(dir.getAbsolutePath(), true);
+	added  = new HashSet<>(FontFactory.getRegisteredFonts());
+      }
+      // only the fonts of this directory
+      added.removeAll(before);
+      LOGGER.info("Registered " + count + " font(s) from: " + dir);
+      WARMUP.submit(() -> warmUp(added));
+    }));
+  }
+
+  /**
+   * Loads the fonts, one at a time, so that registrations and lookups only
+   * have to wait for a single font.
+   *
+   * @param names	the names of the fonts to load
+   */
+  protected static void warmUp(Set<String> names) {
+    for (String name: names) {
+      try {
+	synchronized (FACTORY) {
+	  FontFactory.getFont(name, FontFactory.defaultEncoding, FontFactory.defaultEmbedding, 10);
+	}
+      }
+      catch (Exception e) {
+	LOGGER.warning("Failed to load font '" + name + "': " + e);
+      }
+    }
+  }
+
+  /**
+   * Registers the font directories listed in the {@link #PROPERTY_FONTDIR}
+   * system property in the background.
+   */
+  public static void registerFontDirectories() {
+    String	dirs;
+
+    dirs = System.getProperty(PROPERTY_FONTDIR);
+    if ((dirs == null) || dirs.trim().isEmpty())
+      return;
+    for (String dir: dirs.split(File.pathSeparator)) {
+      if (!dir.trim().isEmpty())
+	registerFontDirectory(new File(dir.trim()));
+    }
+  }
+
+  /**
+   * Waits for the pending font registrations to finish. The registrations
+   * remain pending until they have completed, so that concurrent callers
+   * wait for them as well.
+   */
+  public static void awaitFonts() {
+    List<Future<?>>	pending;
+    Exception		error;
+    boolean		removed;
+
+    synchronized (ResourceCache.class) {
+      pending = new ArrayList<>(PENDING);
+    }
+
+    for (Future<?> future: pending) {
+      error = null;
+      try {
+	future.get();
+      }
+      catch (Exception e) {
+	error = e;
+      }
+      synchronized (ResourceCache.class) {
+	removed = future.isDone() && PENDING.remove(future);
+      }
+      if (removed && (error != null))
+	LOGGER.warning("Failed to register fonts: " + error);
+    }
+  }
+
+  /**
+   * Returns the font, using the default encoding.
+   *
+   * @param name	the name of the font
+   * @param size	the size
+   * @param color	the color
+   * @return		the font
+   */
+  public static Font getFont(String name, float size, BaseColor color) {
+    return getFont(name, FontFactory.defaultEncoding, size, color);
+  }
+
+  /**
+   * Returns the font.
+   *
+   * @param name	the name of the font
+   * @param encoding	the encoding
+   * @param size	the size
+   * @param color	the color
+   * @return		the font
+   */
+  public static Font getFont(String name, String encoding, float size, BaseColor color) {
+    Font	result;
+    String	key;
+
+    awaitFonts();
+    key = name + "\t" + encoding + "\t" + size + "\t" + color.getRGB();
+    synchronized (FONTS) {
+      result = FONTS.get(key);
+    }
+    if (result != null)
+      return result;
+
+    synchronized (FACTORY) {
+      result = FontFactory.getFont(name, encoding, FontFactory.defaultEmbedding, size, Font.UNDEFINED, color);
+    }
+    synchronized (FONTS) {
+      FONTS.put(key, result);
+      trim(FONTS, MAX_FONTS);
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the color for the color string (#RRGGBB).
+   *
+   * @param str		the color string
+   * @return		the color, BLACK if failed to parse
+   */
+  public static BaseColor getColor(String str) {
+    BaseColor	result;
+
+    synchronized (COLORS) {
+      result = COLORS.get(str);
+      if (result == null) {
+	result = new BaseColor(parseColor(str).getRGB());
+	COLORS.put(str, result);
+	trim(COLORS, MAX_COLORS);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Parses the color string (#RRGGBB).
+   *
+   * @param str		the color string
+   * @return		the color, BLACK if failed to parse
+   */
+  public static Color parseColor(String str) {
+    Color	result;
+
+    str = str.replaceAll("#", "");
+    if (str.length() == 6) {
+      result = new Color(
+	Integer.parseInt(str.substring(0, 2), 16),
+	Integer.parseInt(str.substring(2, 4), 16),
+	Integer.parseInt(str.substring(4, 6), 16));
+    }
+    else {
+      LOGGER.warning("Failed to parse color, falling back to black: " + str);
+      result = Color.BLACK;
+    }
+
+    return result;
+  }
+
+  /**
+   * Removes all cached fonts and colors.
+   */
+  public static void clear() {
+    synchronized (FONTS) {
+      FONTS.clear();
+    }
+    synchronized (COLORS) {
+      COLORS.clear();
+    }
+  }
+}
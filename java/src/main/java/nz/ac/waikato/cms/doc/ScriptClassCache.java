@@ -0,0 +1,550 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ScriptClassCache.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
+import nz.ac.waikato.cms.core.FileUtils;
+import org.codehaus.groovy.control.CompilationUnit;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.control.Phases;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.codehaus.groovy.tools.GroovyClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache for compiled Groovy scripts. The classes are kept in memory for the
+ * lifetime of the process and, optionally, the bytecode gets stored on disk
+ * so that later runs do not have to compile the script again. The entries
+ * are keyed by the SHA-256 digest of the script content and the Groovy
+ * version. Once the disk cache exceeds its maximum size, the least recently
+ * used entries get removed.
+ * <br>
+ * At most {@link #MAX_LOADED} scripts are kept loaded in memory; the least
+ * recently used script and a script whose file content changed get released,
+ * so that their classes can get unloaded. {@link #getNumLiveClasses()} and
+ * {@link #getNumLoadedClasses()} allow monitoring the script classes.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ScriptClassCache {
+
+  /** the extension of the cache files. */
+  public static final String EXTENSION = ".classes.gz";
+
+  /** the default cache directory. */
+  public static final String DEFAULT_DIR = System.getProperty("user.home") + File.separator + ".fcms-doc-modifier" + File.separator + "scriptcache";
+
+  /** the default maximum size of the disk cache in MB. */
+  public static final int DEFAULT_MAX_SIZE = 64;
+
+  /** the maximum number of scripts to keep loaded. */
+  public static final int MAX_LOADED = 8;
+
+  /**
+   * Keeps track of the classes defined by a class loader, until the loader
+   * gets garbage collected.
+   */
+  protected static class LoaderReference
+    extends WeakReference<ScriptLoader> {
+
+    /** the number of classes defined by the loader. */
+    public final AtomicInteger numClasses = new AtomicInteger();
+
+    /**
+     * Initializes the reference.
+     *
+     * @param loader	the loader to track
+     */
+    public LoaderReference(ScriptLoader loader) {
+      super(loader, COLLECTED);
+    }
+  }
+
+  /**
+   * Class loader for the bytecode of a compiled script.
+   */
+  protected static class ScriptLoader
+    extends ClassLoader {
+
+    /** the bytecode (class name - bytes). */
+    protected Map<String,byte[]> m_Classes;
+
+    /** the classes defined so far. */
+    protected List<Class> m_Defined;
+
+    /** for tracking the defined classes. */
+    protected LoaderReference m_Reference;
+
+    /**
+     * Initializes the class loader.
+     *
+     * @param parent	the parent class loader
+     * @param classes	the bytecode of the classes (class name - bytes)
+     */
+    public ScriptLoader(ClassLoader parent, Map<String,byte[]> classes) {
+      super(parent);
+      m_Classes   = classes;
+      m_Defined   = new ArrayList<>();
+      m_Reference = new LoaderReference(this);
+      REFERENCES.add(m_Reference);
+    }
+
+    /**
+     * Defines the class from the bytecode.
+     *
+     * @param name	the name of the class
+     * @return		the class
+     * @throws ClassNotFoundException	if not a class of the script
+     */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      Class<?>	result;
+      byte[]	bytes;
+
+      bytes = m_Classes.get(name);
+      if (bytes == null)
+	throw new ClassNotFoundException(name);
+
+      result = defineClass(name, bytes, 0, bytes.length);
+      synchronized (m_Defined) {
+	m_Defined.add(result);
+      }
+      m_Reference.numClasses.incrementAndGet();
+      NUM_LIVE.incrementAndGet();
+      NUM_LOADED.incrementAndGet();
+
+      return result;
+    }
+
+    /**
+     * Removes the defined classes from the Groovy runtime, so that the loader
+     * and its classes can get garbage collected once no longer referenced.
+     * The bytecode is kept, as scripts that are still running may need to
+     * define further classes.
+     */
+    public void release() {
+      synchronized (m_Defined) {
+	for (Class cls: m_Defined)
+	  InvokerHelper.removeClass(cls);
+	m_Defined.clear();
+      }
+    }
+  }
+
+  /**
+   * The bytecode of a compiled script.
+   */
+  protected static class Compiled {
+
+    /** the name of the main class. */
+    public String main;
+
+    /** the bytecode (class name - bytes). */
+    public Map<String,byte[]> classes = new LinkedHashMap<>();
+  }
+
+  /** the loaded scripts, least recently used first (digest - main class). */
+  protected static final Map<String,Class> CLASSES = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** the digests of the loaded scripts (absolute path - digest). */
+  protected static final Map<String,String> DIGESTS = new HashMap<>();
+
+  /** the loaders that got garbage collected. */
+  protected static final ReferenceQueue<ScriptLoader> COLLECTED = new ReferenceQueue<>();
+
+  /** the loaders that have not been garbage collected yet. */
+  protected static final Set<LoaderReference> REFERENCES = ConcurrentHashMap.newKeySet();
+
+  /** the number of script classes whose loaders have not been garbage collected. */
+  protected static final AtomicInteger NUM_LIVE = new AtomicInteger();
+
+  /** the number of script classes loaded in total. */
+  protected static final AtomicInteger NUM_LOADED = new AtomicInteger();
+
+  /** the cache directory, null if not caching on disk. */
+  protected File m_Directory;
+
+  /** the maximum size in bytes. */
+  protected long m_MaxSize;
+
+  /** the class loader to use as parent for the scripts. */
+  protected ClassLoader m_Parent;
+
+  /**
+   * Initializes the cache.
+   *
+   * @param dir		the directory to store the cache files in, null for in-memory only
+   * @param maxSize	the maximum size of the disk cache in MB
+   * @param parent	the class loader to use as parent for the scripts
+   */
+  public ScriptClassCache(File dir, int maxSize, ClassLoader parent) {
+    m_Directory = dir;
+    m_MaxSize   = (long) maxSize * 1024 * 1024;
+    m_Parent    = parent;
+  }
+
+  /**
+   * Returns the cache directory.
+   *
+   * @return		the directory, null if not caching on disk
+   */
+  public File getDirectory() {
+    return m_Directory;
+  }
+
+  /**
+   * Computes the SHA-256 digest of the script content and the Groovy version.
+   *
+   * @param content	the content of the script
+   * @return		the digest as hex string
+   * @throws Exception	if computing the digest fails
+   */
+  public String digest(byte[] content) throws Exception {
+    MessageDigest	md;
+    StringBuilder	result;
+
+    md = MessageDigest.getInstance("SHA-256");
+    md.update(content);
+    md.update((byte) 0);
+    md.update(GroovySystem.getVersion().getBytes(StandardCharsets.UTF_8));
+
+    result = new StringBuilder();
+    for (byte b: md.digest())
+      result.append(String.format("%02x", b));
+
+    return result.toString();
+  }
+
+  /**
+   * Returns the main class of the script, compiling it only if neither
+   * in memory nor on disk.
+   *
+   * @param script	the Groovy script
+   * @return		the main class
+   * @throws Exception	if compiling or loading fails
+   */
+  public Class getClass(File script) throws Exception {
+    Class	result;
+    Compiled	compiled;
+    byte[]	content;
+    String	digest;
+    String	path;
+    String	old;
+
+    content = Files.readAllBytes(script.toPath());
+    digest  = digest(content);
+    path    = script.getAbsolutePath();
+    synchronized (CLASSES) {
+      // release the previous version of the script
+      old = DIGESTS.put(path, digest);
+      if ((old != null) && !old.equals(digest))
+	release(old);
+      result = CLASSES.get(digest);
+    }
+    if (result != null)
+      return result;
+
+    compiled = null;
+    if (m_Directory != null)
+      compiled = read(digest);
+    if (compiled == null) {
+      compiled = compile(script, content);
+      if (m_Directory != null)
+	write(digest, compiled);
+    }
+
+    result = new ScriptLoader(m_Parent, compiled.classes).loadClass(compiled.main);
+    synchronized (CLASSES) {
+      CLASSES.put(digest, result);
+      DIGESTS.put(path, digest);
+      while (CLASSES.size() > MAX_LOADED)
+	release(CLASSES.keySet().iterator().next());
+    }
+
+    return result;
+  }
+
+  /**
+   * Compiles the script.
+   *
+   * @param script	the script file
+   * @param content	the content of the script
+   * @return		the bytecode
+   * @throws Exception	if compilation fails
+   */
+  protected Compiled compile(File script, byte[] content) throws Exception {
+    Compiled			result;
+    CompilerConfiguration	config;
+    GroovyClassLoader		loader;
+    CompilationUnit		unit;
+
+    result = new Compiled();
+    config = new CompilerConfiguration();
+    loader = new GroovyClassLoader(m_Parent, config);
+    try {
+      unit = new CompilationUnit(config, null, loader);
+      unit.addSource(script.getName(), new String(content, StandardCharsets.UTF_8));
+      unit.compile(Phases.CLASS_GENERATION);
+      // like GroovyClassLoader.parseClass, the first class of the script is the main class
+      result.main = unit.getAST().getModules().get(0).getClasses().get(0).getName();
+      for (Object cls: unit.getClasses())
+	result.classes.put(((GroovyClass) cls).getName(), ((GroovyClass) cls).getBytes());
+    }
+    finally {
+      loader.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the cache file for the digest.
+   *
+   * @param digest	the digest of the script
+   * @return		the cache file
+   */
+  protected File getFile(String digest) {
+    return new File(m_Directory, digest + EXTENSION);
+  }
+
+  /**
+   * Reads the bytecode from disk.
+   *
+   * @param digest	the digest of the script
+   * @return		the bytecode, null if not cached
+   */
+  protected synchronized Compiled read(String digest) {
+    Compiled		result;
+    File		file;
+    DataInputStream	in;
+    String		name;
+    byte[]		bytes;
+    int			num;
+    int			i;
+
+    file = getFile(digest);
+    if (!file.exists())
+      return null;
+
+    in = null;
+    try {
+      in          = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+      result      = new Compiled();
+      result.main = in.readUTF();
+      num         = in.readInt();
+      for (i = 0; i < num; i++) {
+	name  = in.readUTF();
+	bytes = new byte[in.readInt()];
+	in.readFully(bytes);
+	result.classes.put(name, bytes);
+      }
+      file.setLastModified(System.currentTimeMillis());
+    }
+    catch (Exception e) {
+      System.err.println("Failed to read script cache file '" + file + "':");
+      e.printStackTrace();
+      result = null;
+    }
+    finally {
+      FileUtils.closeQuietly(in);
+    }
+
+    return result;
+  }
+
+  /**
+   * Stores the bytecode on disk and removes the least recently used entries
+   * if the cache grows too large.
+   *
+   * @param digest	the digest of the script
+   * @param compiled	the bytecode
+   * @return		true if successfully stored
+   */
+  protected synchronized boolean write(String digest, Compiled compiled) {
+    File		file;
+    File		tmpFile;
+    DataOutputStream	out;
+
+    if (!m_Directory.exists() && !m_Directory.mkdirs()) {
+      System.err.println("Failed to create script cache directory: " + m_Directory);
+      return false;
+    }
+
+    file    = getFile(digest);
+    tmpFile = new File(file.getAbsolutePath() + ".tmp");
+    out     = null;
+    try {
+      out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))));
+      out.writeUTF(compiled.main);
+      out.writeInt(compiled.classes.size());
+      for (String name: compiled.classes.keySet()) {
+	out.writeUTF(name);
+	out.writeInt(compiled.classes.get(name).length);
+	out.write(compiled.classes.get(name));
+      }
+      out.close();
+      out = null;
+      if (file.exists())
+	file.delete();
+      if (!tmpFile.renameTo(file)) {
+	System.err.println("Failed to rename '" + tmpFile + "' to '" + file + "'!");
+	return false;
+      }
+    }
+    catch (Exception e) {
+      System.err.println("Failed to write script cache file '" + file + "':");
+      e.printStackTrace();
+      return false;
+    }
+    finally {
+      FileUtils.closeQuietly(out);
+      if (tmpFile.exists())
+	tmpFile.delete();
+    }
+
+    evict();
+
+    return true;
+  }
+
+  /**
+   * Removes the least recently used entries until the cache fits its
+   * maximum size again.
+   */
+  protected void evict() {
+    File[]	files;
+    long	total;
+    int		i;
+
+    files = m_Directory.listFiles((File dir, String name) -> name.endsWith(EXTENSION));
+    if (files == null)
+      return;
+
+    total = 0;
+    for (File file: files)
+      total += file.length();
+    if (total <= m_MaxSize)
+      return;
+
+    Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+    for (i = 0; (i < files.length) && (total > m_MaxSize); i++) {
+      total -= files[i].length();
+      files[i].delete();
+    }
+  }
+
+  /**
+   * Releases the loaded script. Must be called while synchronized on
+   * {@link #CLASSES}.
+   *
+   * @param digest	the digest of the script
+   */
+  protected static void release(String digest) {
+    Class		cls;
+    Iterator<String>	iter;
+
+    cls = CLASSES.remove(digest);
+    if (cls == null)
+      return;
+
+    iter = DIGESTS.values().iterator();
+    while (iter.hasNext()) {
+      if (iter.next().equals(digest))
+	iter.remove();
+    }
+    if (cls.getClassLoader() instanceof ScriptLoader)
+      ((ScriptLoader) cls.getClassLoader()).release();
+  }
+
+  /**
+   * Releases all loaded scripts.
+   */
+  public static void clear() {
+    synchronized (CLASSES) {
+      while (!CLASSES.isEmpty())
+	release(CLASSES.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Returns the number of scripts currently kept loaded.
+   *
+   * @return		the number of scripts
+   */
+  public static int getNumScripts() {
+    synchronized (CLASSES) {
+      return CLASSES.size();
+    }
+  }
+
+  /**
+   * Returns the number of script classes whose class loaders have not been
+   * garbage collected yet, i.e., the classes still occupying metaspace.
+   *
+   * @return		the number of classes
+   */
+  public static int getNumLiveClasses() {
+    Reference<? extends ScriptLoader>	ref;
+
+    while ((ref = COLLECTED.poll()) != null) {
+      NUM_LIVE.addAndGet(-((LoaderReference) ref).numClasses.get());
+      REFERENCES.remove(ref);
+    }
+
+    return NUM_LIVE.get();
+  }
+
+  /**
+   * Returns the number of script classes loaded since startup.
+   *
+   * @return		the number of classes
+   */
+  public static int getNumLoadedClasses() {
+    return NUM_LOADED.get();
+  }
+}
@@ -20,6 +20,9 @@
 
 package nz.ac.waikato.cms.doc;
 
+import com.itextpdf.text.Document;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfSmartCopy;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
@@ -27,11 +30,25 @@ import nz.ac.waikato.cms.core.Utils;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -52,6 +69,269 @@ public class ScriptedPDFOverlay {
 
   public static final String OUTPUT_DIR = "output_dir";
 
+  public static final String THREADS = "threads";
+
+  public static final String MERGE = "merge";
+
+  public static final String ROWS_PER_FILE = "rows_per_file";
+
+  public static final String SCRIPT_CACHE = "script_cache";
+
+  public static final String SCRIPT_CACHEDIR = "script_cachedir";
+
+  /** the number of rows to queue per thread. */
+  public static final int QUEUE_PER_THREAD = 4;
+
+  /**
+   * Interface for classes that get notified about the progress.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Gets called after a row has been processed.
+     *
+     * @param row	the row that was processed (excluding the header)
+     * @param processed	the number of rows processed so far
+     * @param error	null if successful, otherwise error message
+     */
+    public void rowProcessed(int row, int processed, String error);
+  }
+
+  /**
+   * A row from the spreadsheet.
+   */
+  protected static class Row {
+
+    /** the row (excluding the header), less than 1 for the end of the rows. */
+    public final int row;
+
+    /** the parameters. */
+    public final Map<String,String> params;
+
+    /**
+     * Initializes the row.
+     *
+     * @param row	the row
+     * @param params	the parameters
+     */
+    public Row(int row, Map<String,String> params) {
+      this.row    = row;
+      this.params = params;
+    }
+  }
+
+  /** marks the end of the rows. */
+  protected static final Row END = new Row(0, null);
+
+  /**
+   * Appends the PDFs generated for the rows in row order to one or more
+   * merged PDFs. Resources that are identical across the rows (e.g., the
+   * fonts and images of the template) get stored only once per merged PDF.
+   */
+  protected static class MergedOutput {
+
+    /** the output directory. */
+    protected File m_OutputDir;
+
+    /** the name of the merged PDF. */
+    protected String m_Name;
+
+    /** the number of rows per merged PDF, less than 1 for all rows. */
+    protected int m_RowsPerFile;
+
+    /** the maximum number of rows waiting for earlier rows. */
+    protected int m_MaxPending;
+
+    /** the rows waiting for earlier rows. */
+    protected TreeMap<Integer,byte[]> m_Pending;
+
+    /** the next row to append. */
+    protected int m_Next;
+
+    /** the number of rows in the current merged PDF. */
+    protected int m_Rows;
+
+    /** the merged PDFs written so far. */
+    protected List<File> m_Files;
+
+    /** the current document. */
+    protected Document m_Document;
+
+    /** the copy writing the current merged PDF. */
+    protected PdfSmartCopy m_Copy;
+
+    /** the stream of the current merged PDF. */
+    protected OutputStream m_Output;
+
+    /** whether processing got aborted. */
+    protected boolean m_Aborted;
+
+    /**
+     * Initializes the merged output.
+     *
+     * @param outputDir		the output directory
+     * @param name		the name of the merged PDF
+     * @param rowsPerFile	the rows per merged PDF, less than 1 for all rows
+     * @param maxPending	the maximum number of rows waiting for earlier rows
+     */
+    public MergedOutput(File outputDir, String name, int rowsPerFile, int maxPending) {
+      m_OutputDir   = outputDir;
+      m_Name        = name;
+      m_RowsPerFile = rowsPerFile;
+      m_MaxPending  = Math.max(1, maxPending);
+      m_Pending     = new TreeMap<>();
+      m_Next        = 1;
+      m_Files       = new ArrayList<>();
+    }
+
+    /**
+     * Returns the merged PDF with the specified index. Uses the name as is
+     * if all rows go into a single file, otherwise appends the 1-based index.
+     *
+     * @param index	the index of the merged PDF (1-based)
+     * @return		the file
+     */
+    public File getFile(int index) {
+      String	base;
+      String	ext;
+
+      if (m_RowsPerFile < 1)
+	return new File(m_OutputDir, m_Name);
+
+      if (m_Name.toLowerCase().endsWith(".pdf")) {
+	base = m_Name.substring(0, m_Name.length() - 4);
+	ext  = m_Name.substring(m_Name.length() - 4);
+      }
+      else {
+	base = m_Name;
+	ext  = ".pdf";
+      }
+
+      return new File(m_OutputDir, String.format("%s-%05d%s", base, index, ext));
+    }
+
+    /**
+     * Adds the PDF of the row. Blocks if too many later rows are waiting
+     * for an earlier row.
+     *
+     * @param row	the row (1-based)
+     * @param pdf	the PDF generated for the row
+     * @throws Exception	if appending fails
+     */
+    public synchronized void add(int row, byte[] pdf) throws Exception {
+      while (!m_Aborted && (row != m_Next) && (m_Pending.size() >= m_MaxPending))
+	wait();
+      if (m_Aborted)
+	return;
+
+      m_Pending.put(row, pdf);
+      try {
+	while (m_Pending.containsKey(m_Next)) {
+	  append(m_Pending.remove(m_Next));
+	  m_Next++;
+	}
+      }
+      finally {
+	notifyAll();
+      }
+    }
+
+    /**
+     * Appends the PDF to the current merged PDF, starting a new one if
+     * necessary.
+     *
+     * @param pdf	the PDF to append
+     * @throws Exception	if appending fails
+     */
+    protected void append(byte[] pdf) throws Exception {
+      PdfReader		reader;
+      File		file;
+
+      if (m_Document == null) {
+	file       = getFile(m_Files.size() + 1);
+	m_Files.add(file);
+	m_Output   = new BufferedOutputStream(new FileOutputStream(file));
+	m_Document = new Document();
+	m_Copy     = new PdfSmartCopy(m_Document, m_Output);
+	m_Document.open();
+	m_Rows     = 0;
+      }
+
+      reader = new PdfReader(pdf);
+      m_Copy.addDocument(reader);
+      m_Copy.freeReader(reader);
+      reader.close();
+      m_Rows++;
+
+      if (m_Rows == m_RowsPerFile)
+	closeFile();
+    }
+
+    /**
+     * Closes the current merged PDF, if any.
+     *
+     * @throws IOException	if closing fails
+     */
+    protected void closeFile() throws IOException {
+      if (m_Document == null)
+	return;
+
+      try {
+	m_Document.close();
+      }
+      finally {
+	m_Output.close();
+	m_Document = null;
+	m_Copy     = null;
+	m_Output   = null;
+      }
+    }
+
+    /**
+     * Stops accepting rows, releases any waiting threads and removes the
+     * merged PDFs of this run, including the incomplete current one.
+     */
+    public synchronized void abort() {
+      m_Aborted = true;
+      m_Pending.clear();
+      try {
+	closeFile();
+      }
+      catch (Exception e) {
+	// ignored
+      }
+      finally {
+	m_Document = null;
+	m_Copy     = null;
+	m_Output   = null;
+      }
+      for (File file: m_Files) {
+	if (file.exists() && !file.delete())
+	  Logger.getLogger(MergedOutput.class.getName()).warning("Failed to remove incomplete output: " + file);
+      }
+      m_Files.clear();
+      notifyAll();
+    }
+
+    /**
+     * Closes the current merged PDF, if any.
+     *
+     * @throws IOException	if closing fails
+     */
+    public synchronized void close() throws IOException {
+      closeFile();
+    }
+
+    /**
+     * Returns the merged PDFs written so far.
+     *
+     * @return		the files
+     */
+    public synchronized List<File> getFiles() {
+      return new ArrayList<>(m_Files);
+    }
+  }
+
   /** the classname of the Groovy classloader. */
   public final static String CLASS_GROOVYCLASSLOADER = "groovy.lang.GroovyClassLoader";
 
@@ -70,6 +350,21 @@ public class ScriptedPDFOverlay {
   /** the pdf template. */
   protected File m_OutputDir;
 
+  /** the number of threads to use. */
+  protected int m_NumThreads;
+
+  /** the progress listener. */
+  protected ProgressListener m_ProgressListener;
+
+  /** the name of the merged PDF, null for a separate PDF per row. */
+  protected String m_MergedName;
+
+  /** the number of rows per merged PDF, less than 1 for all rows. */
+  protected int m_RowsPerFile;
+
+  /** the cache for the compiled scripts. */
+  protected ScriptClassCache m_ScriptCache;
+
   /**
    * Initializes the overlay.
    *
@@ -103,52 +398,159 @@ public class ScriptedPDFOverlay {
     m_Params      = params;
     m_Groovy      = groovy;
     m_OutputDir   = outputDir;
+    m_NumThreads  = 1;
+    m_ScriptCache = new ScriptClassCache(new File(ScriptClassCache.DEFAULT_DIR), ScriptClassCache.DEFAULT_MAX_SIZE, getClass().getClassLoader());
     m_Logger      = Logger.getLogger(this.getClass().getName());
   }
 
   /**
-   * initializes and returns a Groovy Interpreter.
+   * Sets the number of threads to process the rows with. Each thread uses its
+   * own instance of the Groovy script.
    *
-   * @return			the interpreter or null if Groovy classes not present
+   * @param value	the number of threads, less than 1 uses all available cores
    */
-  protected Object newClassLoader() {
-    Object	result;
-    Class<?>	cls;
-    Constructor constr;
+  public void setNumThreads(int value) {
+    m_NumThreads = value;
+  }
+
+  /**
+   * Returns the number of threads to process the rows with.
+   *
+   * @return		the number of threads, less than 1 uses all available cores
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Sets the name of the merged PDF to write the PDFs of all rows to
+   * (requires a {@link ScriptedPDFOverlayTemplateProcessor} script).
+   *
+   * @param value	the name (no path), null for a separate PDF per row
+   */
+  public void setMergedName(String value) {
+    m_MergedName = value;
+  }
+
+  /**
+   * Returns the name of the merged PDF to write the PDFs of all rows to.
+   *
+   * @return		the name (no path), null for a separate PDF per row
+   */
+  public String getMergedName() {
+    return m_MergedName;
+  }
+
+  /**
+   * Sets the number of rows per merged PDF. If not all rows go into a single
+   * PDF, the index of the PDF gets appended to the name.
+   *
+   * @param value	the number of rows, less than 1 for all rows
+   */
+  public void setRowsPerFile(int value) {
+    m_RowsPerFile = value;
+  }
+
+  /**
+   * Returns the number of rows per merged PDF.
+   *
+   * @return		the number of rows, less than 1 for all rows
+   */
+  public int getRowsPerFile() {
+    return m_RowsPerFile;
+  }
+
+  /**
+   * Sets the cache for the compiled scripts.
+   *
+   * @param value	the cache
+   */
+  public void setScriptCache(ScriptClassCache value) {
+    m_ScriptCache = value;
+  }
+
+  /**
+   * Returns the cache for the compiled scripts.
+   *
+   * @return		the cache
+   */
+  public ScriptClassCache getScriptCache() {
+    return m_ScriptCache;
+  }
+
+  /**
+   * Sets the listener to notify about the progress.
+   *
+   * @param value	the listener, null to remove
+   */
+  public void setProgressListener(ProgressListener value) {
+    m_ProgressListener = value;
+  }
+
+  /**
+   * Returns the listener that gets notified about the progress.
+   *
+   * @return		the listener, null if none
+   */
+  public ProgressListener getProgressListener() {
+    return m_ProgressListener;
+  }
+
+  /**
+   * loads the module (compiled or from the script cache) and returns the class.
+   *
+   * @param file		the Groovy module file
+   * @return			the class, null if failed to load
+   */
+  protected Class newClass(File file) {
+    Class	result;
 
     try {
-      cls    = Class.forName(CLASS_GROOVYCLASSLOADER);
-      constr = cls.getConstructor(new Class[]{ClassLoader.class});
-      result = constr.newInstance(getClass().getClassLoader());
+      Class.forName(CLASS_GROOVYCLASSLOADER);
     }
     catch (Exception e) {
-      m_Logger.log(Level.SEVERE, "Failed to instantiate new classloader!", e);
-      result = null;
+      m_Logger.log(Level.SEVERE, "Groovy is not available!", e);
+      return null;
+    }
+
+    try {
+      result = m_ScriptCache.getClass(file.getAbsoluteFile());
+    }
+    catch (Throwable t) {
+      m_Logger.log(Level.SEVERE, "Failed to load script from '" + file + "'!", t);
+      return null;
     }
 
+    m_Logger.info("Script classes: " + ScriptClassCache.getNumScripts() + " script(s) kept loaded, "
+      + ScriptClassCache.getNumLiveClasses() + " live class(es), "
+      + ScriptClassCache.getNumLoadedClasses() + " class(es) loaded since startup");
+
     return result;
   }
 
   /**
-   * executes the specified method and returns the result, if any.
+   * returns a new instance of the class as instance of the provided Java
+   * class template.
    *
-   * @param o			the object the method should be called from,
-   * 				e.g., a Groovy Interpreter
-   * @param methodName		the name of the method
-   * @param paramClasses	the classes of the parameters
-   * @param paramValues		the values of the parameters
-   * @return			the return value of the method, if any (in that case null)
+   * @param cls			the class to instantiate
+   * @param template		the template for the returned Java object
+   * @return			the Groovy object, null if failed to instantiate
    */
-  protected Object invoke(Object o, String methodName, Class[] paramClasses, Object[] paramValues) {
-    Method m;
-    Object      result;
+  protected Object newInstance(Class cls, Class template) {
+    Object 	result;
+
+    if (cls == null)
+      return null;
 
     try {
-      m      = o.getClass().getMethod(methodName, paramClasses);
-      result = m.invoke(o, paramValues);
+      result = cls.newInstance();
+      if (!template.isInstance(result)) {
+	m_Logger.severe("Script class '" + cls.getName() + "' does not implement '" + template.getName() + "'!");
+	result = null;
+      }
     }
     catch (Exception e) {
-      m_Logger.log(Level.SEVERE, "Failed to invoke method '" + methodName + "' (" + Utils.arrayToString(paramClasses) + " with " + Utils.arrayToString(paramValues) + ")!", e);
+      m_Logger.log(Level.SEVERE, "Failed to instantiate script class '" + cls.getName() + "' as '" + template.getName() + "'!", e);
       result = null;
     }
 
@@ -164,26 +566,126 @@ public class ScriptedPDFOverlay {
    * @return			the Groovy object
    */
   protected Object newInstance(File file, Class template) {
-    Object 	result;
-    Object	interpreter;
-    Class	cls;
+    return newInstance(newClass(file), template);
+  }
+
+  /**
+   * Returns a new instance of the script class, which must implement either
+   * {@link ScriptedPDFOverlayProcessor} or {@link ScriptedPDFOverlayTemplateProcessor}.
+   *
+   * @param cls		the class of the script
+   * @return		the processor, null if failed to instantiate
+   */
+  protected Object newProcessor(Class cls) {
+    Object	result;
+
+    result = newInstance(cls, Object.class);
+    if ((result != null)
+      && !(result instanceof ScriptedPDFOverlayProcessor)
+      && !(result instanceof ScriptedPDFOverlayTemplateProcessor)) {
+      m_Logger.severe("Script class '" + cls.getName() + "' implements neither '"
+	+ ScriptedPDFOverlayProcessor.class.getName() + "' nor '" + ScriptedPDFOverlayTemplateProcessor.class.getName() + "'!");
+      result = null;
+    }
+
+    return result;
+  }
 
-    interpreter = newClassLoader();
-    if (interpreter == null)
+  /**
+   * Initializes the processor, if it implements {@link ScriptedPDFOverlayLifecycle}.
+   *
+   * @param processor	the processor to initialize
+   * @param context	the context of the worker
+   * @return		null if successful, otherwise error message
+   */
+  protected String init(Object processor, ScriptedPDFOverlayContext context) {
+    if (!(processor instanceof ScriptedPDFOverlayLifecycle))
       return null;
 
     try {
-      cls    = (Class) invoke(interpreter, "parseClass", new Class[]{File.class}, new Object[]{file.getAbsoluteFile()});
-      result = cls.newInstance();
+      return ((ScriptedPDFOverlayLifecycle) processor).init(context);
     }
     catch (Exception e) {
-      m_Logger.log(Level.SEVERE, "Failed to instantiate script from '" + file + "' as '" + template.getName() + "'!", e);
-      result = null;
+      return Utils.throwableToString(e);
+    }
+  }
+
+  /**
+   * Finishes up the processor, if it implements {@link ScriptedPDFOverlayLifecycle}.
+   *
+   * @param processor	the processor to finish up
+   * @param context	the context of the worker
+   * @return		null if successful, otherwise error message
+   */
+  protected String finish(Object processor, ScriptedPDFOverlayContext context) {
+    if (!(processor instanceof ScriptedPDFOverlayLifecycle))
+      return null;
+
+    try {
+      return ((ScriptedPDFOverlayLifecycle) processor).finish(context);
+    }
+    catch (Exception e) {
+      return Utils.throwableToString(e);
+    }
+  }
+
+  /**
+   * Applies the processor to a single row.
+   *
+   * @param processor	the processor to use
+   * @param template	the parsed template, null if not a {@link ScriptedPDFOverlayTemplateProcessor}
+   * @param merged	the merged output to add the PDF to, null for a separate PDF
+   * @param row		the row (excluding the header)
+   * @param params	the parameters of the row
+   * @return		null if successful, otherwise error message
+   * @throws Exception	if processing fails
+   */
+  protected String overlay(Object processor, ScriptedPDFOverlayTemplate template, MergedOutput merged, int row, Map<String,String> params) throws Exception {
+    String				result;
+    ScriptedPDFOverlayTemplateProcessor	proc;
+    ByteArrayOutputStream		bytes;
+    File				file;
+    boolean				success;
+
+    if (!(processor instanceof ScriptedPDFOverlayTemplateProcessor))
+      return ((ScriptedPDFOverlayProcessor) processor).overlay(m_PdfTemplate, row, params, m_OutputDir);
+
+    proc = (ScriptedPDFOverlayTemplateProcessor) processor;
+    if (merged != null) {
+      bytes  = new ByteArrayOutputStream();
+      result = proc.overlay(template, row, params, bytes);
+      if (result == null)
+	merged.add(row, bytes.toByteArray());
+      return result;
+    }
+
+    file    = new File(m_OutputDir, proc.getOutputName(row, params));
+    result  = null;
+    success = false;
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      result  = proc.overlay(template, row, params, out);
+      success = (result == null);
+    }
+    finally {
+      if (!success && file.exists() && !file.delete())
+	m_Logger.warning("Failed to remove incomplete output: " + file);
     }
 
     return result;
   }
 
+  /**
+   * Notifies the progress listener, if any.
+   *
+   * @param row		the row that was processed
+   * @param processed	the number of rows processed so far
+   * @param error	null if successful, otherwise error message
+   */
+  protected void notifyProgress(int row, int processed, String error) {
+    if (m_ProgressListener != null)
+      m_ProgressListener.rowProcessed(row, processed, error);
+  }
+
   /**
    * Applies the groovy script to the PDF template, one time per row.
    *
@@ -191,39 +693,223 @@ public class ScriptedPDFOverlay {
    */
   public String execute() {
     String			result;
-    ScriptedPDFOverlayProcessor	processor;
+    Object			processor;
+    ScriptedPDFOverlayTemplate	template;
+    ScriptedPDFOverlayContext	context;
+    MergedOutput		merged;
+    String			error;
+    Class			cls;
     Reader 			in;
     Iterable<CSVRecord> 	records;
     int 			row;
+    int				numThreads;
 
     result = null;
 
     // initialize groovy script
-    processor = (ScriptedPDFOverlayProcessor) newInstance(m_Groovy, ScriptedPDFOverlayProcessor.class);
+    cls       = newClass(m_Groovy);
+    processor = newProcessor(cls);
     if (processor == null)
       return "Failed to instantiate Groovy script: " + m_Groovy;
+    if ((m_MergedName != null) && !(processor instanceof ScriptedPDFOverlayTemplateProcessor))
+      return "Merged output requires the Groovy script to implement " + ScriptedPDFOverlayTemplateProcessor.class.getName() + ": " + m_Groovy;
+
+    numThreads = m_NumThreads;
+    if (numThreads < 1)
+      numThreads = Runtime.getRuntime().availableProcessors();
 
     // process spreadsheet
+    in     = null;
+    merged = null;
+    if (m_MergedName != null)
+      merged = new MergedOutput(m_OutputDir, m_MergedName, m_RowsPerFile, numThreads * QUEUE_PER_THREAD);
     try {
+      template = null;
+      if (processor instanceof ScriptedPDFOverlayTemplateProcessor)
+	template = new ScriptedPDFOverlayTemplate(m_PdfTemplate);
       in      = new FileReader(m_Params);
       records = CSVFormat.EXCEL.withHeader().parse(in);
-      row     = 0;
-      for (CSVRecord record : records) {
-	row++;
-	result     = processor.overlay(m_PdfTemplate, row, record.toMap(), m_OutputDir);
-	if (result != null) {
-	  result = "Failed to process row #" + row + ":\n" + result;
-	  break;
+      if (numThreads > 1) {
+	result = execute(cls, processor, template, merged, records, numThreads);
+      }
+      else {
+	context = new ScriptedPDFOverlayContext(m_PdfTemplate, template, m_OutputDir, 0, 1);
+	result  = init(processor, context);
+	if (result != null)
+	  return "Failed to initialize Groovy script:\n" + result;
+	try {
+	  row = 0;
+	  for (CSVRecord record : records) {
+	    row++;
+	    result = overlay(processor, template, merged, row, record.toMap());
+	    notifyProgress(row, row, result);
+	    if (result != null) {
+	      result = "Failed to process row #" + row + ":\n" + result;
+	      break;
+	    }
+	  }
+	}
+	finally {
+	  error = finish(processor, context);
+	  if ((error != null) && (result == null))
+	    result = "Failed to finish Groovy script:\n" + error;
 	}
       }
     }
     catch (Exception e) {
       result = "Failed to process!\n" + Utils.throwableToString(e);
     }
+    finally {
+      if (merged != null) {
+	// don't leave incomplete merged PDFs behind
+	if (result != null) {
+	  merged.abort();
+	}
+	else {
+	  try {
+	    merged.close();
+	  }
+	  catch (Exception e) {
+	    result = "Failed to finish merged output!\n" + Utils.throwableToString(e);
+	    merged.abort();
+	  }
+	}
+      }
+      if (in != null) {
+	try {
+	  in.close();
+	}
+	catch (Exception e) {
+	  // ignored
+	}
+      }
+    }
 
     return result;
   }
 
+  /**
+   * Applies the groovy script to the PDF template, one time per row, using
+   * multiple threads. The rows are read while being processed, with only a
+   * limited number of rows waiting to be processed. Each thread uses its own
+   * instance of the script and context. No more rows get processed after a
+   * row failed.
+   *
+   * @param cls		the class of the script
+   * @param processor	the already instantiated script, used by the first thread
+   * @param template	the parsed template, null if not required by the script
+   * @param merged	the merged output, null for a separate PDF per row
+   * @param records	the rows to process
+   * @param numThreads	the number of threads to use
+   * @return		null if successful, otherwise error message(s)
+   * @throws Exception	if reading of the rows fails
+   */
+  protected String execute(Class cls, Object processor, ScriptedPDFOverlayTemplate template, MergedOutput merged, Iterable<CSVRecord> records, int numThreads) throws Exception {
+    StringBuilder		result;
+    final BlockingQueue<Row>	queue;
+    final Map<Integer,String>	errors;
+    final AtomicInteger		processed;
+    ExecutorService		executor;
+    List<Future<?>>		jobs;
+    int				row;
+    int				i;
+
+    queue     = new ArrayBlockingQueue<>(numThreads * QUEUE_PER_THREAD);
+    errors    = new ConcurrentSkipListMap<>();
+    processed = new AtomicInteger();
+    executor  = Executors.newFixedThreadPool(numThreads);
+    jobs      = new ArrayList<>();
+    for (i = 0; i < numThreads; i++) {
+      final Object initial = (i == 0) ? processor : null;
+      final int worker = i;
+      jobs.add(executor.submit(() -> {
+	// errors of the workers are stored before the ones of the rows
+	ScriptedPDFOverlayContext context = new ScriptedPDFOverlayContext(m_PdfTemplate, template, m_OutputDir, worker, numThreads);
+	Object proc = initial;
+	if (proc == null)
+	  proc = newProcessor(cls);
+	if (proc == null) {
+	  errors.put(Integer.MIN_VALUE + worker, "Failed to instantiate Groovy script: " + m_Groovy);
+	}
+	else {
+	  String error = init(proc, context);
+	  if (error != null) {
+	    errors.put(Integer.MIN_VALUE + worker, "Failed to initialize Groovy script (worker #" + (worker + 1) + "):\n" + error);
+	    proc = null;
+	  }
+	}
+	if ((proc == null) && (merged != null))
+	  merged.abort();
+	// always take rows until the end, to not block the reading of the rows
+	while (true) {
+	  Row r = queue.take();
+	  if (r == END)
+	    break;
+	  if ((proc == null) || !errors.isEmpty())
+	    continue;
+	  String error;
+	  try {
+	    error = overlay(proc, template, merged, r.row, r.params);
+	  }
+	  catch (Exception e) {
+	    error = Utils.throwableToString(e);
+	  }
+	  if (error != null) {
+	    errors.put(r.row, error);
+	    // earlier rows may be waiting for this one
+	    if (merged != null)
+	      merged.abort();
+	  }
+	  notifyProgress(r.row, processed.incrementAndGet(), error);
+	}
+	if (proc != null) {
+	  String error = finish(proc, context);
+	  if (error != null)
+	    errors.put(Integer.MIN_VALUE + worker, "Failed to finish Groovy script (worker #" + (worker + 1) + "):\n" + error);
+	}
+	return null;
+      }));
+    }
+
+    try {
+      row = 0;
+      for (CSVRecord record : records) {
+	if (!errors.isEmpty())
+	  break;
+	row++;
+	queue.put(new Row(row, record.toMap()));
+      }
+    }
+    finally {
+      for (i = 0; i < numThreads; i++)
+	queue.put(END);
+      executor.shutdown();
+      for (Future<?> job: jobs) {
+	try {
+	  job.get();
+	}
+	catch (Exception e) {
+	  errors.put(0, "Failed to process!\n" + Utils.throwableToString(e));
+	}
+      }
+    }
+
+    if (errors.isEmpty())
+      return null;
+
+    result = new StringBuilder();
+    for (Integer r: errors.keySet()) {
+      if (result.length() > 0)
+	result.append("\n");
+      if (r <= 0)
+	result.append(errors.get(r));
+      else
+	result.append("Failed to process row #").append(r).append(":\n").append(errors.get(r));
+    }
+
+    return result.toString();
+  }
+
   /**
    * Runs the PDF overlay from command-line.
    *
@@ -249,11 +935,42 @@ public class ScriptedPDFOverlay {
     parser.addArgument(GROOVY)
       .metavar(GROOVY)
       .type(String.class)
-      .help("The Groovy file script to execute, must implement the " + ScriptedPDFOverlayProcessor.class.getName() + " interface.");
+      .help("The Groovy file script to execute, must implement either the " + ScriptedPDFOverlayProcessor.class.getName()
+	+ " or the " + ScriptedPDFOverlayTemplateProcessor.class.getName() + " interface.");
     parser.addArgument(OUTPUT_DIR)
       .metavar(OUTPUT_DIR)
       .type(String.class)
       .help("The output directory to store the generate PDFs in.");
+    parser.addArgument("--" + THREADS)
+      .metavar(THREADS)
+      .type(Integer.class)
+      .dest(THREADS)
+      .setDefault(1)
+      .help("The number of threads to process the rows with, each using its own instance of the Groovy script (less than 1 uses all available cores).");
+    parser.addArgument("--" + MERGE)
+      .metavar(MERGE)
+      .type(String.class)
+      .dest(MERGE)
+      .help("The name of the PDF (in the output directory) to merge the PDFs of all rows into, storing shared resources only once; "
+	+ "requires the Groovy script to implement the " + ScriptedPDFOverlayTemplateProcessor.class.getName() + " interface.");
+    parser.addArgument("--" + ROWS_PER_FILE)
+      .metavar(ROWS_PER_FILE)
+      .type(Integer.class)
+      .dest(ROWS_PER_FILE)
+      .setDefault(0)
+      .help("The number of rows per merged PDF, with the 1-based index of the PDF appended to the name (less than 1 merges all rows into one PDF).");
+    parser.addArgument("--" + SCRIPT_CACHE)
+      .metavar(SCRIPT_CACHE)
+      .type(Boolean.class)
+      .dest(SCRIPT_CACHE)
+      .setDefault(true)
+      .help("Whether to store the compiled Groovy script on disk, avoiding compilation in later runs with the same script.");
+    parser.addArgument("--" + SCRIPT_CACHEDIR)
+      .metavar(SCRIPT_CACHEDIR)
+      .type(String.class)
+      .dest(SCRIPT_CACHEDIR)
+      .setDefault(ScriptClassCache.DEFAULT_DIR)
+      .help("The directory to store the compiled Groovy scripts in.");
 
     Namespace namespace;
     try {
@@ -270,6 +987,13 @@ public class ScriptedPDFOverlay {
       new File(namespace.getString(GROOVY)),
       new File(namespace.getString(OUTPUT_DIR))
     );
+    overlay.setNumThreads(namespace.getInt(THREADS));
+    overlay.setMergedName(namespace.getString(MERGE));
+    overlay.setRowsPerFile(namespace.getInt(ROWS_PER_FILE));
+    overlay.setScriptCache(new ScriptClassCache(
+      namespace.getBoolean(SCRIPT_CACHE) ? new File(namespace.getString(SCRIPT_CACHEDIR)) : null,
+      ScriptClassCache.DEFAULT_MAX_SIZE,
+      ScriptedPDFOverlay.class.getClassLoader()));
     String result = overlay.execute();
     if (result != null)
       throw new Exception("Failed to process:\n" + result);
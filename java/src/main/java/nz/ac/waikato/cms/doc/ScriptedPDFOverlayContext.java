@@ -0,0 +1,126 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ScriptedPDFOverlayContext.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The context of a worker of {@link ScriptedPDFOverlay}, handed to scripts
+ * implementing {@link ScriptedPDFOverlayLifecycle}. Each worker uses its
+ * own instance of the script and its own context.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ScriptedPDFOverlayContext {
+
+  /** the template file. */
+  protected File m_PdfTemplate;
+
+  /** the parsed template, null if not available. */
+  protected ScriptedPDFOverlayTemplate m_Template;
+
+  /** the output directory. */
+  protected File m_OutputDir;
+
+  /** the index of the worker (0-based). */
+  protected int m_Worker;
+
+  /** the number of workers. */
+  protected int m_NumWorkers;
+
+  /** for storing objects across rows. */
+  protected Map<String,Object> m_Scratch;
+
+  /**
+   * Initializes the context.
+   *
+   * @param pdfTemplate	the template file
+   * @param template	the parsed template, null if not available
+   * @param outputDir	the output directory
+   * @param worker	the index of the worker (0-based)
+   * @param numWorkers	the number of workers
+   */
+  public ScriptedPDFOverlayContext(File pdfTemplate, ScriptedPDFOverlayTemplate template, File outputDir, int worker, int numWorkers) {
+    m_PdfTemplate = pdfTemplate;
+    m_Template    = template;
+    m_OutputDir   = outputDir;
+    m_Worker      = worker;
+    m_NumWorkers  = numWorkers;
+    m_Scratch     = new HashMap<>();
+  }
+
+  /**
+   * Returns the template file.
+   *
+   * @return		the file
+   */
+  public File getPdfTemplate() {
+    return m_PdfTemplate;
+  }
+
+  /**
+   * Returns the parsed template.
+   *
+   * @return		the template, null if the script does not implement {@link ScriptedPDFOverlayTemplateProcessor}
+   */
+  public ScriptedPDFOverlayTemplate getTemplate() {
+    return m_Template;
+  }
+
+  /**
+   * Returns the output directory.
+   *
+   * @return		the directory
+   */
+  public File getOutputDir() {
+    return m_OutputDir;
+  }
+
+  /**
+   * Returns the index of the worker.
+   *
+   * @return		the index (0-based)
+   */
+  public int getWorker() {
+    return m_Worker;
+  }
+
+  /**
+   * Returns the number of workers.
+   *
+   * @return		the number of workers
+   */
+  public int getNumWorkers() {
+    return m_NumWorkers;
+  }
+
+  /**
+   * Returns the map for storing objects across the rows processed by this
+   * worker, e.g., fonts or images. Not shared with other workers.
+   *
+   * @return		the map
+   */
+  public Map<String,Object> getScratch() {
+    return m_Scratch;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ScriptedPDFOverlayLifecycle.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+/**
+ * Optional interface for scripts that want to prepare expensive objects
+ * (fonts, images, etc) once instead of for every row. Gets called once per
+ * worker, which uses its own instance of the script.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ * @see ScriptedPDFOverlayProcessor
+ * @see ScriptedPDFOverlayTemplateProcessor
+ */
+public interface ScriptedPDFOverlayLifecycle {
+
+  /**
+   * Gets called before the worker processes its first row.
+   *
+   * @param context	the context of the worker
+   * @return		null if successful, otherwise error message
+   */
+  public String init(ScriptedPDFOverlayContext context);
+
+  /**
+   * Gets called after the worker processed its last row, also if processing
+   * failed.
+   *
+   * @param context	the context of the worker
+   * @return		null if successful, otherwise error message
+   */
+  public String finish(ScriptedPDFOverlayContext context);
+}
@@ -0,0 +1,95 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ScriptedPDFOverlayTemplate.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import com.itextpdf.text.pdf.PdfReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * The PDF template, read and parsed only once. Processors obtain their own
+ * copy of the parsed template for each row via {@link #newReader()}.
+ * Thread-safe.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class ScriptedPDFOverlayTemplate {
+
+  /** the template file. */
+  protected File m_File;
+
+  /** the content of the template. */
+  protected byte[] m_Data;
+
+  /** the parsed template. */
+  protected PdfReader m_Reader;
+
+  /**
+   * Reads and parses the template.
+   *
+   * @param file	the template file
+   * @throws IOException	if reading or parsing fails
+   */
+  public ScriptedPDFOverlayTemplate(File file) throws IOException {
+    m_File   = file;
+    m_Data   = Files.readAllBytes(file.toPath());
+    m_Reader = new PdfReader(m_Data);
+  }
+
+  /**
+   * Returns the template file.
+   *
+   * @return		the file
+   */
+  public File getFile() {
+    return m_File;
+  }
+
+  /**
+   * Returns the content of the template. Must not be modified.
+   *
+   * @return		the content
+   */
+  public byte[] getData() {
+    return m_Data;
+  }
+
+  /**
+   * Returns a copy of the parsed template, which can be modified (e.g., by a
+   * PdfStamper) without affecting the template.
+   *
+   * @return		the copy
+   */
+  public synchronized PdfReader newReader() {
+    return new PdfReader(m_Reader);
+  }
+
+  /**
+   * Returns the number of pages of the template.
+   *
+   * @return		the number of pages
+   */
+  public int getNumberOfPages() {
+    return m_Reader.getNumberOfPages();
+  }
+}
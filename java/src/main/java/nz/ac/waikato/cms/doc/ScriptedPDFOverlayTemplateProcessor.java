@@ -0,0 +1,57 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ScriptedPDFOverlayTemplateProcessor.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.doc;
+
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * Interface for classes that process PDF templates and generate modified
+ * PDF files from it. Unlike {@link ScriptedPDFOverlayProcessor}, the template
+ * gets read and parsed only once and the output gets managed by
+ * {@link ScriptedPDFOverlay}.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public interface ScriptedPDFOverlayTemplateProcessor {
+
+  /**
+   * Returns the name of the output file for the row.
+   *
+   * @param row		the row in the spreadsheet (excluding the header)
+   * @param params	the parameters to use in the script
+   * @return		the file name (no path)
+   */
+  public default String getOutputName(int row, Map<String,String> params) {
+    return row + ".pdf";
+  }
+
+  /**
+   * Generates the overlay on a copy of the template.
+   *
+   * @param template	the template to use, see {@link ScriptedPDFOverlayTemplate#newReader()}
+   * @param row		the row in the spreadsheet (excluding the header)
+   * @param params	the parameters to use in the script
+   * @param output	the stream to write the PDF to, gets closed by the caller
+   * @return		null if successful, otherwise error message
+   */
+  public String overlay(ScriptedPDFOverlayTemplate template, int row, Map<String,String> params, OutputStream output);
+}
@@ -20,28 +20,27 @@
 
 package nz.ac.waikato.cms.doc;
 
-import com.itextpdf.text.BaseColor;
-import com.itextpdf.text.Element;
-import com.itextpdf.text.Font;
-import com.itextpdf.text.FontFactory;
-import com.itextpdf.text.Phrase;
-import com.itextpdf.text.Utilities;
-import com.itextpdf.text.pdf.ColumnText;
-import com.itextpdf.text.pdf.PdfContentByte;
-import com.itextpdf.text.pdf.PdfReader;
-import com.itextpdf.text.pdf.PdfStamper;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 import nz.ac.waikato.cms.core.FileUtils;
 import nz.ac.waikato.cms.core.Utils;
 
-import java.awt.Color;
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 /**
@@ -59,6 +58,14 @@ public class SimplePDFOverlay {
 
   public static final String OUTPUT = "output";
 
+  public static final String JOBS = "jobs";
+
+  public static final String FONTDIR = "fontdir";
+
+  public static final String INCREMENTAL = "incremental";
+
+  public static final String STD_STREAM = "-";
+
   public static final String PREFIX_COMMENT = "#";
 
   public static final String PREFIX_UNITS = "units:";
@@ -75,6 +82,8 @@ public class SimplePDFOverlay {
 
   public static final String PREFIX_OVAL = "oval:";
 
+  public static final String FORMAT_PAGE = "<int>|<from>-<to>|all|odd|even";
+
   public static final String FORMAT_FONT = "<name> <size> <color>";
 
   public static final String FORMAT_TEXT = "<llx> <lly> <urx> <ury> <leading> <alignment> <text>";
@@ -103,8 +112,8 @@ public class SimplePDFOverlay {
    * Initializes the overlay.
    *
    * @param pdf             the template to use
-   * @param instructions 	the text file with the instructions
-   * @param output	        the output directory for the generated files
+   * @param instructions 	the text file with the instructions, "-" for stdin
+   * @param output	        the output file for the generated PDF, "-" for stdout
    */
   public SimplePDFOverlay(File pdf, File instructions, File output) {
     if (!pdf.exists())
@@ -112,12 +121,14 @@ public class SimplePDFOverlay {
     if (pdf.isDirectory())
       throw new IllegalArgumentException("PDF points to a directory: " + pdf);
 
-    if (!instructions.exists())
-      throw new IllegalArgumentException("Instructions file does not exist: " + instructions);
-    if (instructions.isDirectory())
-      throw new IllegalArgumentException("Instructions file points to a directory: " + instructions);
+    if (!isStdStream(instructions)) {
+      if (!instructions.exists())
+	throw new IllegalArgumentException("Instructions file does not exist: " + instructions);
+      if (instructions.isDirectory())
+	throw new IllegalArgumentException("Instructions file points to a directory: " + instructions);
+    }
 
-    if (output.isDirectory())
+    if (!isStdStream(output) && output.isDirectory())
       throw new IllegalArgumentException("Output file points to a directory: " + output);
 
     m_Pdf          = pdf;
@@ -127,255 +138,116 @@ public class SimplePDFOverlay {
   }
 
   /**
-   * Parses the color string (#RRGGBB).
+   * Checks whether the file represents stdin/stdout ("-").
    *
-   * @param str		the color string
-   * @return		the color, BLACK if failed to parse
+   * @param file	the file to check
+   * @return		true if stdin/stdout
    */
-  protected Color parseColor(String str) {
-    Color	result;
-
-    str = str.replaceAll("#", "");
-    if (str.length() == 6) {
-      result = new Color(
-	Integer.parseInt(str.substring(0, 2), 16),
-	Integer.parseInt(str.substring(2, 4), 16),
-	Integer.parseInt(str.substring(4, 6), 16));
-    }
-    else {
-      m_Logger.warning("Failed to parse color, falling back to black: " + str);
-      result = Color.BLACK;
-    }
-
-    return result;
+  public static boolean isStdStream(File file) {
+    return file.getPath().equals(STD_STREAM);
   }
 
   /**
-   * Parses the alignment string.
+   * Applies the instructions to the input PDF. Instructions read from stdin
+   * get applied while they are being read.
    *
-   * @param str		the alignment string
-   * @return		the alignment, see {@link Element}
+   * @return		null if successful, otherwise error message
    */
-  protected int parseAlignment(String str) {
-    switch (str) {
-      case "UNDEFINED":
-	return Element.ALIGN_UNDEFINED;
-      case "LEFT":
-	return Element.ALIGN_LEFT;
-      case "CENTER":
-	return Element.ALIGN_CENTER;
-      case "RIGHT":
-	return Element.ALIGN_RIGHT;
-      case "JUSTIFIED":
-	return Element.ALIGN_JUSTIFIED;
-      default:
-	m_Logger.warning("Unhandled alignment, falling back to LEFT: " + str);
-	return Element.ALIGN_LEFT;
+  public String execute() {
+    OverlayProgram	program;
+    OutputStream	out;
+    Reader		reader;
+
+    out    = null;
+    reader = null;
+    try {
+      if (isStdStream(m_Output))
+	out = new BufferedOutputStream(System.out);
+      else
+	out = new BufferedOutputStream(new FileOutputStream(m_Output.getAbsolutePath()));
+      if (isStdStream(m_Instructions)) {
+	reader = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+	return OverlayProgram.execute(reader, m_Pdf, out);
+      }
+      else {
+	program = OverlayProgram.compile(m_Instructions);
+	return program.apply(m_Pdf, out);
+      }
+    }
+    catch (Exception e) {
+      return "Failed to process!\n" + Utils.throwableToString(e);
+    }
+    finally {
+      FileUtils.closeQuietly(reader);
+      FileUtils.closeQuietly(out);
     }
   }
 
   /**
-   * Parses the location string.
+   * Applies the compiled instructions to the PDFs in parallel, storing the
+   * generated PDFs under the same name in the output directory.
    *
-   * @param str		the string to parse
-   * @param max		the maximum to use if position string is -1
-   * @param units	the units the location is in (in|mm|pt)
-   * @return		the position in points
+   * @param program	the compiled instructions
+   * @param inputs	the PDFs to overlay
+   * @param outputDir	the directory to store the generated PDFs in
+   * @param numJobs	the number of PDFs to process in parallel, less than 1 for number of available cores
+   * @return		the error messages, in the order of the inputs (null if successful)
    */
-  protected float parseLocation(String str, float max, String units) {
-    float	result;
-
-    result = Float.parseFloat(str);
-
-    if (result >= 0) {
-      switch (units) {
-	case "mm":
-	  result = Utilities.millimetersToPoints(result);
-	  break;
-	case "in":
-	  result = Utilities.inchesToPoints(result);
-	  break;
-	case "pt":
-	  // nothing to do
-	  break;
-	default:
-	  m_Logger.warning("Unknown units: " + units);
-      }
-    }
-    else {
-      result = max;
-    }
-
-    return result;
+  public static List<String> batch(OverlayProgram program, List<File> inputs, File outputDir, int numJobs) {
+    return batch(program, inputs, outputDir, numJobs, null);
   }
 
   /**
-   * Applies the instructions to the input PDF.
+   * Applies the compiled instructions to the PDFs in parallel, storing the
+   * generated PDFs under the same name in the output directory. Outputs
+   * that the manifest lists as up to date get skipped.
    *
-   * @return		null if successful, otherwise error message
+   * @param program	the compiled instructions
+   * @param inputs	the PDFs to overlay
+   * @param outputDir	the directory to store the generated PDFs in
+   * @param numJobs	the number of PDFs to process in parallel, less than 1 for number of available cores
+   * @param manifest	the manifest for skipping outputs that are up to date, null to process all
+   * @return		the error messages, in the order of the inputs (null if successful or skipped)
    */
-  public String execute() {
-    String		result;
-    String		line;
-    BufferedReader	breader;
-    FileReader		freader;
-    int			i;
-    int 		lineNo;
-    String		units;
-    int			pageNo;
-    PdfReader 		reader;
-    PdfStamper 		stamper;
-    PdfContentByte 	cb;
-    ColumnText 		ct;
-    Font 		font;
-    String[]		parts;
-    StringBuilder	text;
-
-    result = null;
-
-    freader = null;
-    breader = null;
-    try {
-      reader  = new PdfReader(new FileInputStream(m_Pdf.getAbsolutePath()));
-      stamper = new PdfStamper(reader, new FileOutputStream(m_Output.getAbsolutePath()));
-      freader = new FileReader(m_Instructions);
-      breader = new BufferedReader(freader);
-      lineNo  = 0;
-      units   = "pt";
-      pageNo  = 1;
-      cb      = stamper.getOverContent(pageNo);
-      font    = null;
-      while ((line = breader.readLine()) != null) {
-	lineNo++;
-	if (line.trim().startsWith(PREFIX_COMMENT))
-	  continue;
-	if (line.trim().length() == 0)
-	  continue;
-	if (line.startsWith(PREFIX_UNITS)) {
-	  units = line.substring(PREFIX_UNITS.length()).trim().toLowerCase();
-	}
-	else if (line.startsWith(PREFIX_PAGE)) {
-	  pageNo = Integer.parseInt(line.substring(PREFIX_PAGE.length()).trim());
-	  cb     = stamper.getOverContent(pageNo);
-	}
-	else if (line.startsWith(PREFIX_FONT)) {
-	  parts = line.substring(PREFIX_FONT.length()).trim().split(" ");
-	  if (parts.length == 3)
-	    font = FontFactory.getFont(
-	      parts[0],
-	      Float.parseFloat(parts[1]),
-	      new BaseColor(parseColor(parts[2]).getRGB()));
-	  else
-	    m_Logger.warning("Font instruction not in expected format (" + FORMAT_FONT + "):\n" + line);
-	}
-	else if (line.startsWith(PREFIX_TEXT)) {
-	  parts = line.substring(PREFIX_TEXT.length()).trim().split(" ");
-	  if (parts.length >= 7) {
-	    ct = new ColumnText(cb);
-	    ct.setSimpleColumn(
-	      parseLocation(parts[0], reader.getPageSize(pageNo).getWidth(), units),  // llx
-	      parseLocation(parts[1], reader.getPageSize(pageNo).getHeight(), units),  // lly
-	      parseLocation(parts[2], reader.getPageSize(pageNo).getWidth(), units),  // urx
-	      parseLocation(parts[3], reader.getPageSize(pageNo).getHeight(), units),  // ury
-	      Float.parseFloat(parts[4]),                                              // leading
-	      parseAlignment(parts[5]));                                               // alignment
-	    text = new StringBuilder();
-	    for (i = 6; i < parts.length; i++) {
-	      if (text.length() > 0)
-		text.append(" ");
-	      text.append(parts[i]);
-	    }
-	    if (font == null)
-	      ct.setText(new Phrase(text.toString()));
-	    else
-	      ct.setText(new Phrase(text.toString(), font));
-	    ct.go();
-	  }
-	  else {
-	    m_Logger.warning("Text instruction not in expected format (" + FORMAT_TEXT + "):\n" + line);
-	  }
-	}
-	else if (line.startsWith(PREFIX_LINE)) {
-	  parts = line.substring(PREFIX_LINE.length()).trim().split(" ");
-	  if (parts.length >= 6) {
-	    cb.saveState();
-	    cb.setLineWidth(Float.parseFloat(parts[4]));  // line width
-	    cb.setColorStroke(new BaseColor(parseColor(parts[5]).getRGB()));  // color
-	    cb.moveTo(
-	      parseLocation(parts[0], reader.getPageSize(pageNo).getWidth(), units),  // x
-	      parseLocation(parts[1], reader.getPageSize(pageNo).getWidth(), units)); // y
-	    cb.lineTo(
-	      parseLocation(parts[2], reader.getPageSize(pageNo).getWidth(), units),  // w
-	      parseLocation(parts[3], reader.getPageSize(pageNo).getWidth(), units)); // h
-	    cb.stroke();
-	    cb.restoreState();
-	  }
-	  else {
-	    m_Logger.warning("Line instruction not in expected format (" + FORMAT_LINE + "):\n" + line);
-	  }
-	}
-	else if (line.startsWith(PREFIX_RECT)) {
-	  parts = line.substring(PREFIX_RECT.length()).trim().split(" ");
-	  if (parts.length >= 6) {
-	    cb.saveState();
-	    cb.rectangle(
-	      parseLocation(parts[0], reader.getPageSize(pageNo).getWidth(), units),  // x
-	      parseLocation(parts[1], reader.getPageSize(pageNo).getWidth(), units),  // y
-	      parseLocation(parts[2], reader.getPageSize(pageNo).getWidth(), units),  // w
-	      parseLocation(parts[3], reader.getPageSize(pageNo).getWidth(), units)   // h
-	    );
-	    cb.setLineWidth(Float.parseFloat(parts[4]));  // line width
-	    cb.setColorStroke(new BaseColor(parseColor(parts[5]).getRGB()));  // stroke
-	    if (parts.length >= 7) {
-	      cb.setColorFill(new BaseColor(parseColor(parts[6]).getRGB()));  // fill
-	      cb.fillStroke();
-	    }
-	    else {
-	      cb.stroke();
-	    }
-	    cb.restoreState();
-	  }
-	  else {
-	    m_Logger.warning("Rectangle instruction not in expected format (" + FORMAT_RECT + "):\n" + line);
-	  }
-	}
-	else if (line.startsWith(PREFIX_OVAL)) {
-	  parts = line.substring(PREFIX_OVAL.length()).trim().split(" ");
-	  if (parts.length >= 6) {
-	    cb.saveState();
-	    cb.ellipse(
-	      parseLocation(parts[0], reader.getPageSize(pageNo).getWidth(), units),  // x1
-	      parseLocation(parts[1], reader.getPageSize(pageNo).getWidth(), units),  // y1
-	      parseLocation(parts[2], reader.getPageSize(pageNo).getWidth(), units),  // x2
-	      parseLocation(parts[3], reader.getPageSize(pageNo).getWidth(), units)   // y2
-	    );
-	    cb.setLineWidth(Float.parseFloat(parts[4]));  // line width
-	    cb.setColorStroke(new BaseColor(parseColor(parts[5]).getRGB()));  // stroke
-	    if (parts.length >= 7) {
-	      cb.setColorFill(new BaseColor(parseColor(parts[6]).getRGB()));  // fill
-	      cb.fillStroke();
-	    }
-	    else {
-	      cb.stroke();
-	    }
-	    cb.restoreState();
-	  }
-	  else {
-	    m_Logger.warning("Oval instruction not in expected format (" + FORMAT_OVAL + "):\n" + line);
-	  }
-	}
-	else {
-	  m_Logger.warning("Unknown command on line #" + lineNo + ":\n" + line);
-	}
-      }
-      stamper.close();
+  public static List<String> batch(OverlayProgram program, List<File> inputs, File outputDir, int numJobs, OutputManifest manifest) {
+    List<String>		result;
+    ExecutorService		executor;
+    List<Future<String>>	jobs;
+    int				i;
+
+    result = new ArrayList<>();
+    if (inputs.isEmpty())
+      return result;
+
+    if (numJobs < 1)
+      numJobs = Runtime.getRuntime().availableProcessors();
+    numJobs  = Math.min(numJobs, inputs.size());
+    executor = Executors.newFixedThreadPool(numJobs);
+    jobs     = new ArrayList<>();
+    for (File input: inputs) {
+      jobs.add(executor.submit(() -> {
+	File output = new File(outputDir, input.getName());
+	if (manifest == null)
+	  return program.apply(input, output);
+	if (manifest.isUpToDate(input, output))
+	  return null;
+	String error = program.apply(input, output);
+	if (error == null)
+	  error = manifest.update(input, null, output);
+	else
+	  manifest.remove(output);
+	return error;
+      }));
     }
-    catch (Exception e) {
-      result = "Failed to process!\n" + Utils.throwableToString(e);
-    }
-    finally {
-      FileUtils.closeQuietly(breader);
-      FileUtils.closeQuietly(freader);
+    executor.shutdown();
+
+    for (i = 0; i < jobs.size(); i++) {
+      try {
+	result.add(jobs.get(i).get());
+      }
+      catch (Exception e) {
+	result.add("Failed to process!\n" + Utils.throwableToString(e));
+      }
     }
 
     return result;
@@ -397,8 +269,9 @@ public class SimplePDFOverlay {
 	+ "- empty lines and lines starting with # are ignored\n"
 	+ "- The units used for the locations (can be supplied multiple times):\n"
 	+ "  units: pt|mm|in\n"
-	+ "- Selecting a page (page numbers are 1-based):\n"
-	+ "  page: <int>\n"
+	+ "- Selecting a page or a range of pages (page numbers are 1-based);\n"
+	+ "  the instructions following a range are rendered only once and shared by its pages:\n"
+	+ "  page: " + FORMAT_PAGE + "\n"
 	+ "- Setting a font:\n"
 	+ "  font: " + FORMAT_FONT + "\n"
 	+ "- Placing text in a rectangle (ll=lower left, ur=upper right):\n"
@@ -414,15 +287,32 @@ public class SimplePDFOverlay {
     parser.addArgument(PDF)
       .metavar(PDF)
       .type(String.class)
-      .help("The PDF file to overlay.");
+      .help("The PDF file to overlay; a directory or a glob pattern (eg '/some/where/*.pdf', quoted) to overlay multiple PDFs.");
     parser.addArgument(INSTRUCTIONS)
       .metavar(INSTRUCTIONS)
       .type(String.class)
-      .help("The text file with the overlay instructions.");
+      .help("The text file with the overlay instructions, '" + STD_STREAM + "' to read them from stdin (applied while being read).");
     parser.addArgument(OUTPUT)
       .metavar(OUTPUT)
       .type(String.class)
-      .help("The output to store the generate PDF in.");
+      .help("The output to store the generate PDF in, '" + STD_STREAM + "' to write it to stdout; the output directory when overlaying multiple PDFs.");
+    parser.addArgument("--" + JOBS)
+      .metavar(JOBS)
+      .type(Integer.class)
+      .dest(JOBS)
+      .setDefault(1)
+      .help("The number of PDFs to overlay in parallel when processing multiple PDFs (less than 1 uses all available cores).");
+    parser.addArgument("--" + FONTDIR)
+      .metavar(FONTDIR)
+      .type(String.class)
+      .dest(FONTDIR)
+      .help("The directory with additional fonts to register (incl sub-directories); directories can also be supplied via the '" + ResourceCache.PROPERTY_FONTDIR + "' system property.");
+    parser.addArgument("--" + INCREMENTAL)
+      .metavar(INCREMENTAL)
+      .type(Boolean.class)
+      .dest(INCREMENTAL)
+      .setDefault(false)
+      .help("Whether to skip outputs that are up to date when processing multiple PDFs, i.e., generated from the same PDF with the same instructions and tool version (recorded in '" + OutputManifest.FILENAME + "' in the output directory).");
 
     Namespace namespace;
     try {
@@ -433,6 +323,82 @@ public class SimplePDFOverlay {
       return;
     }
 
+    // fonts get registered while the instructions are being read
+    ResourceCache.registerFontDirectories();
+    if (namespace.getString(FONTDIR) != null)
+      ResourceCache.registerFontDirectory(new File(namespace.getString(FONTDIR)));
+
+    // multiple PDFs: compile once, apply to all
+    if (PDFBatch.isBatch(namespace.getString(PDF))) {
+      File outputDir = new File(namespace.getString(OUTPUT));
+      List<File> inputs = PDFBatch.determineInputs(namespace.getString(PDF));
+      if (inputs.isEmpty()) {
+	System.err.println("No PDF files found: " + namespace.getString(PDF));
+	return;
+      }
+      if (!outputDir.isDirectory()) {
+	System.err.println("Output directory does not exist: " + outputDir);
+	return;
+      }
+      File canonical = outputDir.getCanonicalFile();
+      for (File input: inputs) {
+	if (canonical.equals(input.getCanonicalFile().getParentFile())) {
+	  System.err.println("Output directory cannot be the same as the input directory!");
+	  return;
+	}
+      }
+      OverlayProgram program;
+      OutputManifest manifest = null;
+      if (namespace.getBoolean(INCREMENTAL)) {
+	// the manifest requires the instructions themselves
+	String instructions;
+	if (isStdStream(new File(namespace.getString(INSTRUCTIONS)))) {
+	  ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	  byte[] buffer = new byte[8192];
+	  int read;
+	  while ((read = System.in.read(buffer)) != -1)
+	    bytes.write(buffer, 0, read);
+	  instructions = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+	else {
+	  instructions = new String(Files.readAllBytes(new File(namespace.getString(INSTRUCTIONS)).toPath()), StandardCharsets.UTF_8);
+	}
+	program  = OverlayProgram.compile(new StringReader(instructions));
+	manifest = new OutputManifest(
+	  outputDir,
+	  SimplePDFOverlay.class.getName()
+	    + " fontdir=" + namespace.getString(FONTDIR)
+	    + " instructions=" + instructions);
+	String msg = manifest.load();
+	if (msg != null)
+	  System.err.println(msg);
+      }
+      else if (isStdStream(new File(namespace.getString(INSTRUCTIONS)))) {
+	program = OverlayProgram.compile(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+      }
+      else {
+	program = OverlayProgram.compile(new File(namespace.getString(INSTRUCTIONS)));
+      }
+      List<String> errors = batch(program, inputs, outputDir, namespace.getInt(JOBS), manifest);
+      if (manifest != null) {
+	String msg = manifest.save();
+	if (msg != null)
+	  System.err.println(msg);
+	System.out.println("Skipped " + manifest.getNumSkipped() + " up-to-date file(s).");
+      }
+      int failed = 0;
+      for (int i = 0; i < inputs.size(); i++) {
+	if (errors.get(i) != null) {
+	  System.err.println(inputs.get(i) + ": " + errors.get(i));
+	  failed++;
+	}
+      }
+      System.out.println("Processed " + inputs.size() + " file(s), " + failed + " failure(s).");
+      if (failed > 0)
+	throw new Exception("Failed to process " + failed + " file(s)!");
+      return;
+    }
+
     SimplePDFOverlay overlay = new SimplePDFOverlay(
       new File(namespace.getString(PDF)),
       new File(namespace.getString(INSTRUCTIONS)),
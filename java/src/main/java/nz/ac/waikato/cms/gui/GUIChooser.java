@@ -22,6 +22,7 @@ package nz.ac.waikato.cms.gui;
 
 import nz.ac.waikato.cms.core.BrowserHelper;
 import nz.ac.waikato.cms.core.Project;
+import nz.ac.waikato.cms.doc.ResourceCache;
 import nz.ac.waikato.cms.gui.core.BaseFrame;
 import nz.ac.waikato.cms.gui.core.BasePanel;
 import nz.ac.waikato.cms.gui.core.GUIHelper;
@@ -49,6 +50,9 @@ public class GUIChooser
   /** the button for overlaying filenames. */
   protected JButton m_ButtonOverlayFilename;
 
+  /** the button for adding page numbers. */
+  protected JButton m_ButtonPageNumberOverlay;
+
   /** the button for scripted PDF overlays. */
   protected JButton m_ButtonScripredPDFOverlay;
 
@@ -99,6 +103,15 @@ public class GUIChooser
     });
     panel.add(m_ButtonOverlayFilename);
 
+    m_ButtonPageNumberOverlay = new JButton("Add page numbers");
+    m_ButtonPageNumberOverlay.addActionListener((ActionEvent e) -> {
+	BaseFrame frame = PageNumberOverlayGUI.createFrame();
+	frame.setDefaultCloseOperation(BaseFrame.DISPOSE_ON_CLOSE);
+	frame.setLocationRelativeTo(null);
+	frame.setVisible(true);
+    });
+    panel.add(m_ButtonPageNumberOverlay);
+
     m_ButtonScripredPDFOverlay = new JButton("Scripted PDF Overlay");
     m_ButtonScripredPDFOverlay.addActionListener((ActionEvent e) -> {
 	BaseFrame frame = ScriptedPDFOverlayGUI.createFrame();
@@ -126,6 +139,7 @@ public class GUIChooser
    */
   public static void main(String[] args) {
     Project.initialize();
+    ResourceCache.registerFontDirectories();
     BaseFrame frame = new BaseFrame("FCMS Tools");
     frame.setDefaultCloseOperation(BaseFrame.EXIT_ON_CLOSE);
     GUIChooser panel = new GUIChooser();
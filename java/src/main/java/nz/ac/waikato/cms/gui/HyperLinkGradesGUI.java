@@ -23,7 +23,9 @@ package nz.ac.waikato.cms.gui;
 import nz.ac.waikato.cms.core.FileUtils;
 import nz.ac.waikato.cms.core.Project;
 import nz.ac.waikato.cms.doc.HyperLinkGrades;
-import nz.ac.waikato.cms.doc.HyperLinkGrades.Location;
+import nz.ac.waikato.cms.doc.HyperLinkGrades.PatternSet;
+import nz.ac.waikato.cms.doc.HyperLinkGrades.ProcessResult;
+import nz.ac.waikato.cms.doc.PageTextCache;
 import nz.ac.waikato.cms.gui.core.BaseDirectoryChooser;
 import nz.ac.waikato.cms.gui.core.BaseFileChooser;
 import nz.ac.waikato.cms.gui.core.BaseFrame;
@@ -81,6 +83,14 @@ public class HyperLinkGradesGUI
 
   public static final String EXCLUDE_COMPLETIONS = "ExcludeCompletions";
 
+  public static final String NUM_THREADS = "NumThreads";
+
+  public static final String PIPELINE = "Pipeline";
+
+  public static final String INCREMENTAL = "Incremental";
+
+  public static final String CACHE_TEXT = "CacheText";
+
   /** the file chooser to use for PDFs. */
   protected BaseFileChooser m_FileChooserPDF;
 
@@ -129,6 +139,21 @@ public class HyperLinkGradesGUI
   /** the checkbox for excluding completions. */
   protected JCheckBox m_CheckBoxExcludeCompletions;
 
+  /** the number of threads. */
+  protected JTextField m_TextNumThreads;
+
+  /** the checkbox for writing the output while extracting. */
+  protected JCheckBox m_CheckBoxPipeline;
+
+  /** the checkbox for only appending the index. */
+  protected JCheckBox m_CheckBoxIncremental;
+
+  /** the checkbox for caching the extracted text. */
+  protected JCheckBox m_CheckBoxCacheText;
+
+  /** the text cache. */
+  protected PageTextCache m_Cache;
+
   /** the button for indexing the files. */
   protected JButton m_ButtonIndex;
 
@@ -157,6 +182,8 @@ public class HyperLinkGradesGUI
 
     m_DirChooser = new BaseDirectoryChooser();
 
+    m_Cache = new PageTextCache(new File(PageTextCache.DEFAULT_DIR), PageTextCache.DEFAULT_MAX_SIZE);
+
     m_Processing = false;
   }
 
@@ -236,7 +263,7 @@ public class HyperLinkGradesGUI
 
     // the parameters
     labels      = new ArrayList<>();
-    panelParams = new JPanel(new GridLayout(6, 1));
+    panelParams = new JPanel(new GridLayout(10, 1));
     panelFiles.add(panelParams, BorderLayout.SOUTH);
     // expression
     {
@@ -405,6 +432,76 @@ public class HyperLinkGradesGUI
       panel.add(m_CheckBoxExcludeCompletions);
       labels.add(label);
     }
+    // number of threads
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_TextNumThreads = new JTextField("1", 5);
+      m_TextNumThreads.getDocument().addDocumentListener(new DocumentListener() {
+	@Override
+	public void insertUpdate(DocumentEvent e) {
+	  checkThreads();
+	}
+	@Override
+	public void removeUpdate(DocumentEvent e) {
+	  checkThreads();
+	}
+	@Override
+	public void changedUpdate(DocumentEvent e) {
+	  checkThreads();
+	}
+	protected void checkThreads() {
+	  if (m_TextNumThreads.getText().trim().isEmpty() || isValidNumThreads())
+	    m_TextNumThreads.setForeground(Color.BLACK);
+	  else
+	    m_TextNumThreads.setForeground(Color.RED);
+	  updateButtons();
+	}
+      });
+      JLabel label = new JLabel("Threads (<1 = all cores)");
+      label.setDisplayedMnemonic('T');
+      label.setLabelFor(m_TextNumThreads);
+      panel.add(label);
+      panel.add(m_TextNumThreads);
+      labels.add(label);
+    }
+    // pipeline
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_CheckBoxPipeline = new JCheckBox("");
+      JLabel label = new JLabel("Write while extracting");
+      label.setDisplayedMnemonic('W');
+      label.setLabelFor(m_CheckBoxPipeline);
+      panel.add(label);
+      panel.add(m_CheckBoxPipeline);
+      labels.add(label);
+    }
+    // incremental
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_CheckBoxIncremental = new JCheckBox("");
+      JLabel label = new JLabel("Only append index");
+      label.setDisplayedMnemonic('A');
+      label.setLabelFor(m_CheckBoxIncremental);
+      panel.add(label);
+      panel.add(m_CheckBoxIncremental);
+      labels.add(label);
+    }
+    // cache text
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_CheckBoxCacheText = new JCheckBox("");
+      m_CheckBoxCacheText.setSelected(true);
+      JLabel label = new JLabel("Cache extracted text");
+      label.setDisplayedMnemonic('h');
+      label.setLabelFor(m_CheckBoxCacheText);
+      panel.add(label);
+      panel.add(m_CheckBoxCacheText);
+      labels.add(label);
+    }
 
     // the buttons at the bottom
     {
@@ -474,35 +571,30 @@ public class HyperLinkGradesGUI
       protected Object doInBackground() throws Exception {
 	saveSetup();
 	m_Errors = new StringBuilder();
+	PatternSet patterns = new PatternSet(m_TextExpression.getText());
 	for (int i = 0; i < m_ModelInputFiles.getSize(); i++) {
 	  File fileIn = m_ModelInputFiles.get(i);
 	  File fileOut = FileUtils.replaceExtension(new File(m_TextOutputDir.getText() + File.separator + fileIn.getName()), m_TextSuffix.getText() + ".pdf");
 	  m_LabelProgress.setText("Processing " + (i+1) + "/" + m_ModelInputFiles.getSize() + "...");
-	  try {
-	    List<Location> locations = HyperLinkGrades.locate(
-	      fileIn,
-	      m_TextExpression.getText(),
-	      m_CheckBoxCaseSensitive.isSelected(),
-	      m_CheckBoxExcludeCompletions.isSelected());
-	    if (!HyperLinkGrades.addIndex(
-              locations,
-              fileIn,
-              fileOut)) {
-              throw new Exception("Failed to add index!");
-            }
-            if (!m_TextCSVOutput.getText().trim().isEmpty()) {
-              File csv = new File(m_TextCSVOutput.getText());
-              if (!csv.isDirectory()) {
-                if (!HyperLinkGrades.generateCSV(locations, csv))
-                  throw new Exception("Failed to generate CSV: " + csv);
-              }
-            }
-	  }
-	  catch (Exception e) {
-	    m_Errors.append("Failed to process: " + fileIn + "\n");
-	    System.err.println("Failed to process: " + fileIn);
-	    e.printStackTrace();
+	  File csv = null;
+	  if (!m_TextCSVOutput.getText().trim().isEmpty()) {
+	    csv = new File(m_TextCSVOutput.getText());
+	    if (csv.isDirectory())
+	      csv = null;
 	  }
+	  ProcessResult result = HyperLinkGrades.process(
+	    fileIn,
+	    fileOut,
+	    csv,
+	    patterns,
+	    m_CheckBoxCaseSensitive.isSelected(),
+	    m_CheckBoxExcludeCompletions.isSelected(),
+	    Integer.parseInt(m_TextNumThreads.getText().trim()),
+	    m_CheckBoxPipeline.isSelected(),
+	    m_CheckBoxIncremental.isSelected(),
+	    m_CheckBoxCacheText.isSelected() ? m_Cache : null);
+	  if (!result.isSuccess())
+	    m_Errors.append("Failed to process: " + fileIn + " (" + result.getError() + ")\n");
 	}
 	return null;
       }
@@ -543,6 +635,24 @@ public class HyperLinkGradesGUI
     }
   }
 
+  /**
+   * Returns whether the number of threads is valid.
+   *
+   * @return		true if valid
+   */
+  protected boolean isValidNumThreads() {
+    if (m_TextNumThreads.getText().trim().isEmpty())
+      return false;
+
+    try {
+      Integer.parseInt(m_TextNumThreads.getText().trim());
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
   /**
    * Returns whether the output dir is valid.
    *
@@ -574,6 +684,7 @@ public class HyperLinkGradesGUI
     result = !m_Processing
       && (m_ModelInputFiles.getSize() > 0)
       && isValidExpression()
+      && isValidNumThreads()
       && isValidOutputDir();
 
     return result;
@@ -603,6 +714,10 @@ public class HyperLinkGradesGUI
     m_TextSuffix.setText(props.getProperty(SUFFIX, ""));
     m_CheckBoxCaseSensitive.setSelected(props.getProperty(CASE_SENSITIVE, "false").equals("true"));
     m_CheckBoxExcludeCompletions.setSelected(props.getProperty(EXCLUDE_COMPLETIONS, "false").equals("true"));
+    m_TextNumThreads.setText(props.getProperty(NUM_THREADS, "1"));
+    m_CheckBoxPipeline.setSelected(props.getProperty(PIPELINE, "false").equals("true"));
+    m_CheckBoxIncremental.setSelected(props.getProperty(INCREMENTAL, "false").equals("true"));
+    m_CheckBoxCacheText.setSelected(props.getProperty(CACHE_TEXT, "true").equals("true"));
   }
 
   /**
@@ -620,6 +735,10 @@ public class HyperLinkGradesGUI
     result.setProperty(SUFFIX, m_TextSuffix.getText());
     result.setProperty(CASE_SENSITIVE, "" + m_CheckBoxCaseSensitive.isSelected());
     result.setProperty(EXCLUDE_COMPLETIONS, "" + m_CheckBoxExcludeCompletions.isSelected());
+    result.setProperty(NUM_THREADS, m_TextNumThreads.getText());
+    result.setProperty(PIPELINE, "" + m_CheckBoxPipeline.isSelected());
+    result.setProperty(INCREMENTAL, "" + m_CheckBoxIncremental.isSelected());
+    result.setProperty(CACHE_TEXT, "" + m_CheckBoxCacheText.isSelected());
 
     return result;
   }
@@ -636,7 +755,7 @@ public class HyperLinkGradesGUI
     HyperLinkGradesGUI panel = new HyperLinkGradesGUI();
     result.getRootPane().setLayout(new BorderLayout());
     result.getRootPane().add(panel);
-    result.setSize(600, 400);
+    result.setSize(600, 540);
 
     return result;
   }
@@ -22,6 +22,7 @@ package nz.ac.waikato.cms.gui;
 
 import nz.ac.waikato.cms.core.Project;
 import nz.ac.waikato.cms.doc.OverlayFilename;
+import nz.ac.waikato.cms.doc.PDFBatch;
 import nz.ac.waikato.cms.gui.core.BaseDirectoryChooser;
 import nz.ac.waikato.cms.gui.core.BaseFileChooser;
 import nz.ac.waikato.cms.gui.core.BaseFrame;
@@ -75,6 +76,8 @@ public class OverlayFilenameGUI
 
   public static final String ENFORCE_EVEN_PAGES = "EnforceEvenPages";
 
+  public static final String NUM_JOBS = "NumJobs";
+
   /** the file chooser to use. */
   protected BaseFileChooser m_FileChooser;
 
@@ -117,6 +120,9 @@ public class OverlayFilenameGUI
   /** the checkbox for enforce even pages. */
   protected JCheckBox m_CheckBoxEnforceEvenPages;
 
+  /** the number of jobs. */
+  protected JTextField m_TextNumJobs;
+
   /** the button for overlaying the files. */
   protected JButton m_ButtonOverlay;
 
@@ -205,7 +211,7 @@ public class OverlayFilenameGUI
 
     // the parameters
     labels      = new ArrayList<>();
-    panelParams = new JPanel(new GridLayout(6, 1));
+    panelParams = new JPanel(new GridLayout(7, 1));
     panelFiles.add(panelParams, BorderLayout.SOUTH);
     // output dir
     {
@@ -355,6 +361,39 @@ public class OverlayFilenameGUI
       panel.add(m_CheckBoxEnforceEvenPages);
       labels.add(label);
     }
+    // jobs
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_TextNumJobs = new JTextField("1", 5);
+      m_TextNumJobs.getDocument().addDocumentListener(new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+          checkJobs();
+        }
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+          checkJobs();
+        }
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+          checkJobs();
+        }
+        protected void checkJobs() {
+          if (m_TextNumJobs.getText().trim().isEmpty() || isValidNumJobs())
+            m_TextNumJobs.setForeground(Color.BLACK);
+          else
+            m_TextNumJobs.setForeground(Color.RED);
+          updateButtons();
+        }
+      });
+      JLabel label = new JLabel("Jobs (<1 = automatic)");
+      label.setDisplayedMnemonic('J');
+      label.setLabelFor(m_TextNumJobs);
+      panel.add(label);
+      panel.add(m_TextNumJobs);
+      labels.add(label);
+    }
 
     // the buttons at the bottom
     {
@@ -408,7 +447,7 @@ public class OverlayFilenameGUI
     m_Processing = true;
     updateButtons();
 
-    worker = new SwingWorker() {
+    worker = new SwingWorker<Object,String>() {
       protected StringBuilder m_Errors;
       @Override
       protected Object doInBackground() throws Exception {
@@ -417,27 +456,37 @@ public class OverlayFilenameGUI
         OverlayFilename of = new OverlayFilename();
         int vpos = Integer.parseInt(m_TextVPos.getText());
         int hpos = Integer.parseInt(m_TextHPos.getText());
+        int jobs = Integer.parseInt(m_TextNumJobs.getText().trim());
+        File fileOut = new File(m_TextOutputDir.getText());
+        List<File> inputs = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
         for (int i = 0; i < m_ModelInputFiles.getSize(); i++) {
-          File fileIn = m_ModelInputFiles.get(i);
-          File fileOut = new File(m_TextOutputDir.getText());
-          m_LabelProgress.setText("Processing " + (i + 1) + "/" + m_ModelInputFiles.getSize() + "...");
-          File files[][] = of.determineFiles(fileIn, fileOut);
+          File[][] files = PDFBatch.determineFiles(m_ModelInputFiles.get(i), fileOut);
           for (int n = 0; n < files[0].length; n++) {
-            try {
-              of.overlay(files[0][n], files[1][n], vpos, hpos,
-                m_CheckBoxStripPath.isSelected(), m_CheckBoxStripExt.isSelected(),
-                null, m_CheckBoxEnforceEvenPages.isSelected());
-            }
-            catch (Exception e) {
-              m_Errors.append("Failed to process: " + files[0][n] + " -> " + files[1][n] + "\n");
-              System.err.println("Failed to process: " + files[0][n] + " -> " + files[1][n]);
-              e.printStackTrace();
-            }
+            inputs.add(files[0][n]);
+            outputs.add(files[1][n]);
           }
         }
+        File[][] files = new File[][]{
+          inputs.toArray(new File[inputs.size()]),
+          outputs.toArray(new File[outputs.size()]),
+        };
+        publish("Processing 0/" + inputs.size() + "...");
+        List<String> errors = of.overlay(files, vpos, hpos,
+          m_CheckBoxStripPath.isSelected(), m_CheckBoxStripExt.isSelected(),
+          null, m_CheckBoxEnforceEvenPages.isSelected(), jobs,
+          (File input, File output, int processed, String error) ->
+            publish("Processing " + processed + "/" + inputs.size() + "..."));
+        for (String error: errors)
+          m_Errors.append(error).append("\n");
         return null;
       }
       @Override
+      protected void process(List<String> chunks) {
+        if (!chunks.isEmpty())
+          m_LabelProgress.setText(chunks.get(chunks.size() - 1));
+      }
+      @Override
       protected void done() {
         m_LabelProgress.setText("");
         m_Processing = false;
@@ -492,6 +541,24 @@ public class OverlayFilenameGUI
     }
   }
 
+  /**
+   * Returns whether the number of jobs is valid.
+   *
+   * @return		true if valid
+   */
+  protected boolean isValidNumJobs() {
+    if (m_TextNumJobs.getText().trim().isEmpty())
+      return false;
+
+    try {
+      Integer.parseInt(m_TextNumJobs.getText().trim());
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
   /**
    * Returns whether the output dir is valid.
    *
@@ -524,6 +591,7 @@ public class OverlayFilenameGUI
       && (m_ModelInputFiles.getSize() > 0)
       && isValidVPos()
       && isValidHPos()
+      && isValidNumJobs()
       && isValidOutputDir();
 
     return result;
@@ -553,6 +621,7 @@ public class OverlayFilenameGUI
     m_CheckBoxStripPath.setSelected(props.getProperty(STRIP_PATH, "false").equals("true"));
     m_CheckBoxStripExt.setSelected(props.getProperty(STRIP_EXT, "false").equals("true"));
     m_CheckBoxEnforceEvenPages.setSelected(props.getProperty(ENFORCE_EVEN_PAGES, "false").equals("true"));
+    m_TextNumJobs.setText(props.getProperty(NUM_JOBS, "1"));
   }
 
   /**
@@ -570,6 +639,7 @@ public class OverlayFilenameGUI
     result.setProperty(STRIP_PATH, "" + m_CheckBoxStripPath.isSelected());
     result.setProperty(STRIP_EXT, "" + m_CheckBoxStripExt.isSelected());
     result.setProperty(ENFORCE_EVEN_PAGES, "" + m_CheckBoxEnforceEvenPages.isSelected());
+    result.setProperty(NUM_JOBS, m_TextNumJobs.getText());
 
     return result;
   }
@@ -586,7 +656,7 @@ public class OverlayFilenameGUI
     OverlayFilenameGUI panel = new OverlayFilenameGUI();
     frame.getRootPane().setLayout(new BorderLayout());
     frame.getRootPane().add(panel);
-    frame.setSize(600, 400);
+    frame.setSize(600, 430);
 
     return frame;
   }
@@ -0,0 +1,636 @@
+/*
+ *   This program is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   This program is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * PageNumberOverlayGUI.java
+ * Copyright (C) 2026 University of Waikato, Hamilton, NZ
+ */
+
+package nz.ac.waikato.cms.gui;
+
+import nz.ac.waikato.cms.core.Project;
+import nz.ac.waikato.cms.doc.PDFBatch;
+import nz.ac.waikato.cms.doc.PageNumberOverlay;
+import nz.ac.waikato.cms.doc.ResourceCache;
+import nz.ac.waikato.cms.gui.core.BaseDirectoryChooser;
+import nz.ac.waikato.cms.gui.core.BaseFileChooser;
+import nz.ac.waikato.cms.gui.core.BaseFrame;
+import nz.ac.waikato.cms.gui.core.BaseScrollPane;
+import nz.ac.waikato.cms.gui.core.ExtensionFileFilter;
+import nz.ac.waikato.cms.gui.core.GUIHelper;
+import nz.ac.waikato.cms.gui.core.SetupPanel;
+
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.ListSelectionEvent;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Supplier;
+
+/**
+ * For adding page numbers to PDF files.
+ *
+ * @author FracPete (fracpete at waikato dot ac dot nz)
+ */
+public class PageNumberOverlayGUI
+  extends SetupPanel {
+
+  public static final String OUTPUT_DIR = "OutputDir";
+
+  public static final String FORMAT = "Format";
+
+  public static final String START = "Start";
+
+  public static final String END = "End";
+
+  public static final String FONT_NAME = "FontName";
+
+  public static final String FONT_SIZE = "FontSize";
+
+  public static final String COLOR = "Color";
+
+  public static final String X_POS = "XPos";
+
+  public static final String Y_POS = "YPos";
+
+  public static final String ALIGNMENT = "Alignment";
+
+  public static final String NUM_JOBS = "NumJobs";
+
+  /** the file chooser to use. */
+  protected BaseFileChooser m_FileChooser;
+
+  /** the directory chooser to use. */
+  protected BaseDirectoryChooser m_DirChooser;
+
+  /** the input files. */
+  protected JList m_ListInputFiles;
+
+  /** the model for the input files. */
+  protected DefaultListModel<File> m_ModelInputFiles;
+
+  /** the button for adding files. */
+  protected JButton m_ButtonAddFiles;
+
+  /** the button for removing selected files. */
+  protected JButton m_ButtonRemoveFiles;
+
+  /** the button for removing all files. */
+  protected JButton m_ButtonRemoveAllFiles;
+
+  /** the output directory. */
+  protected JTextField m_TextOutputDir;
+
+  /** the button for selecting the output directory. */
+  protected JButton m_ButtonOutputDir;
+
+  /** the format of the page numbers. */
+  protected JTextField m_TextFormat;
+
+  /** the first page. */
+  protected JTextField m_TextStart;
+
+  /** the last page. */
+  protected JTextField m_TextEnd;
+
+  /** the font name. */
+  protected JTextField m_TextFontName;
+
+  /** the font size. */
+  protected JTextField m_TextFontSize;
+
+  /** the color. */
+  protected JTextField m_TextColor;
+
+  /** the horizontal position. */
+  protected JTextField m_TextXPos;
+
+  /** the vertical position. */
+  protected JTextField m_TextYPos;
+
+  /** the alignment. */
+  protected JComboBox<String> m_ComboBoxAlignment;
+
+  /** the number of jobs. */
+  protected JTextField m_TextNumJobs;
+
+  /** the button for adding the page numbers. */
+  protected JButton m_ButtonOverlay;
+
+  /** the button for closing the frame. */
+  protected JButton m_ButtonClose;
+
+  /** the label for the progress. */
+  protected JLabel m_LabelProgress;
+
+  /** whether files are being processed. */
+  protected boolean m_Processing;
+
+  /**
+   * Initializes the members.
+   */
+  protected void initialize() {
+    m_FileChooser = new BaseFileChooser();
+    m_FileChooser.addChoosableFileFilter(ExtensionFileFilter.getPdfFileFilter());
+    m_FileChooser.setAcceptAllFileFilterUsed(false);
+    m_FileChooser.setMultiSelectionEnabled(true);
+
+    m_DirChooser = new BaseDirectoryChooser();
+
+    m_Processing = false;
+  }
+
+  /**
+   * Creates a text field that turns red if its content is invalid.
+   *
+   * @param text	the initial text
+   * @param columns	the number of columns
+   * @param valid	checks whether the content is valid
+   * @return		the text field
+   */
+  protected JTextField createTextField(String text, int columns, Supplier<Boolean> valid) {
+    final JTextField	result;
+
+    result = new JTextField(text, columns);
+    result.getDocument().addDocumentListener(new DocumentListener() {
+      @Override
+      public void insertUpdate(DocumentEvent e) {
+        check();
+      }
+      @Override
+      public void removeUpdate(DocumentEvent e) {
+        check();
+      }
+      @Override
+      public void changedUpdate(DocumentEvent e) {
+        check();
+      }
+      protected void check() {
+        if (result.getText().trim().isEmpty() || valid.get())
+          result.setForeground(Color.BLACK);
+        else
+          result.setForeground(Color.RED);
+        updateButtons();
+      }
+    });
+
+    return result;
+  }
+
+  /**
+   * Adds the labelled component to the parameters.
+   *
+   * @param panelParams	the panel with the parameters
+   * @param labels	the labels to align
+   * @param caption	the caption of the label
+   * @param mnemonic	the mnemonic of the label
+   * @param comp	the component to add
+   */
+  protected void addParameter(JPanel panelParams, List<JLabel> labels, String caption, char mnemonic, JComponent comp) {
+    JPanel	panel;
+    JLabel	label;
+
+    panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+    panelParams.add(panel);
+    label = new JLabel(caption);
+    label.setDisplayedMnemonic(mnemonic);
+    label.setLabelFor(comp);
+    panel.add(label);
+    panel.add(comp);
+    labels.add(label);
+  }
+
+  /**
+   * Initializes the widgets.
+   */
+  protected void initGUI() {
+    JPanel		panelFiles;
+    JPanel		panelParams;
+    List<JLabel>	labels;
+
+    setLayout(new BorderLayout());
+
+    panelFiles = new JPanel(new BorderLayout());
+    panelFiles.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+    add(panelFiles, BorderLayout.CENTER);
+
+    // input files
+    {
+      JLabel label = new JLabel("Input files");
+      panelFiles.add(label, BorderLayout.NORTH);
+      JPanel panel = new JPanel(new BorderLayout());
+      panelFiles.add(panel, BorderLayout.CENTER);
+      m_ModelInputFiles = new DefaultListModel<>();
+      m_ListInputFiles  = new JList(m_ModelInputFiles);
+      m_ListInputFiles.addListSelectionListener((ListSelectionEvent e) -> updateButtons());
+      panel.add(new BaseScrollPane(m_ListInputFiles), BorderLayout.CENTER);
+
+      JPanel panelRight = new JPanel(new BorderLayout());
+      panel.add(panelRight, BorderLayout.EAST);
+      JPanel panelButtons = new JPanel(new GridLayout(3, 1));
+      panelButtons.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 0));
+      panelRight.add(panelButtons, BorderLayout.NORTH);
+
+      m_ButtonAddFiles = new JButton("Add...");
+      m_ButtonAddFiles.addActionListener((ActionEvent e) -> {
+        int retVal = m_FileChooser.showOpenDialog(PageNumberOverlayGUI.this);
+        if (retVal != BaseFileChooser.APPROVE_OPTION)
+          return;
+        File[] files = m_FileChooser.getSelectedFiles();
+        for (File file: files)
+          m_ModelInputFiles.addElement(file);
+        updateButtons();
+      });
+      panelButtons.add(m_ButtonAddFiles);
+
+      m_ButtonRemoveFiles = new JButton("Remove");
+      m_ButtonRemoveFiles.addActionListener((ActionEvent e) -> {
+        int[] indices = m_ListInputFiles.getSelectedIndices();
+        for (int i = indices.length - 1; i >= 0; i--)
+          m_ModelInputFiles.remove(indices[i]);
+        updateButtons();
+      });
+      panelButtons.add(m_ButtonRemoveFiles);
+
+      m_ButtonRemoveAllFiles = new JButton("Remove all");
+      m_ButtonRemoveAllFiles.addActionListener((ActionEvent e) -> {
+        m_ModelInputFiles.removeAllElements();
+        updateButtons();
+      });
+      panelButtons.add(m_ButtonRemoveAllFiles);
+    }
+
+    // the parameters
+    labels      = new ArrayList<>();
+    panelParams = new JPanel(new GridLayout(11, 1));
+    panelFiles.add(panelParams, BorderLayout.SOUTH);
+    // output dir
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_TextOutputDir = createTextField("", 30, this::isValidOutputDir);
+      JLabel label = new JLabel("Output directory");
+      label.setDisplayedMnemonic('O');
+      label.setLabelFor(m_TextOutputDir);
+
+      m_ButtonOutputDir = new JButton("...");
+      m_ButtonOutputDir.setPreferredSize(new Dimension((int) m_ButtonOutputDir.getPreferredSize().getWidth(), (int) m_TextOutputDir.getPreferredSize().getHeight()));
+      m_ButtonOutputDir.addActionListener((ActionEvent e) -> {
+        if (!m_TextOutputDir.getText().isEmpty())
+          m_DirChooser.setCurrentDirectory(new File(m_TextOutputDir.getText()));
+        int retVal = m_DirChooser.showOpenDialog(PageNumberOverlayGUI.this);
+        if (retVal != BaseDirectoryChooser.APPROVE_OPTION)
+          return;
+        m_TextOutputDir.setText(m_DirChooser.getSelectedFile().getAbsolutePath());
+      });
+
+      panel.add(label);
+      panel.add(m_TextOutputDir);
+      panel.add(m_ButtonOutputDir);
+      labels.add(label);
+    }
+    m_TextFormat = createTextField(PageNumberOverlay.DEFAULT_FORMAT, 20, () -> !m_TextFormat.getText().isEmpty());
+    m_TextFormat.setToolTipText("Placeholders: " + PageNumberOverlay.PLACEHOLDER_PAGE + ", " + PageNumberOverlay.PLACEHOLDER_TOTAL + ", " + PageNumberOverlay.PLACEHOLDER_FILENAME);
+    addParameter(panelParams, labels, "Format", 'F', m_TextFormat);
+    m_TextStart = createTextField("1", 5, () -> isValidInteger(m_TextStart));
+    addParameter(panelParams, labels, "First page", 'p', m_TextStart);
+    m_TextEnd = createTextField("-1", 5, () -> isValidInteger(m_TextEnd));
+    addParameter(panelParams, labels, "Last page (<1 = last)", 'L', m_TextEnd);
+    m_TextFontName = createTextField(PageNumberOverlay.DEFAULT_FONT, 20, () -> !m_TextFontName.getText().trim().isEmpty());
+    addParameter(panelParams, labels, "Font", 'n', m_TextFontName);
+    m_TextFontSize = createTextField("" + PageNumberOverlay.DEFAULT_FONTSIZE, 5, () -> isValidFloat(m_TextFontSize));
+    addParameter(panelParams, labels, "Font size", 'S', m_TextFontSize);
+    m_TextColor = createTextField(PageNumberOverlay.DEFAULT_COLOR, 7, this::isValidColor);
+    addParameter(panelParams, labels, "Color (#RRGGBB)", 'C', m_TextColor);
+    m_TextXPos = createTextField("" + PageNumberOverlay.DEFAULT_XPOS, 5, () -> isValidFloat(m_TextXPos));
+    addParameter(panelParams, labels, "Horizontal position", 'H', m_TextXPos);
+    m_TextYPos = createTextField("" + PageNumberOverlay.DEFAULT_YPOS, 5, () -> isValidFloat(m_TextYPos));
+    addParameter(panelParams, labels, "Vertical position", 'V', m_TextYPos);
+    m_ComboBoxAlignment = new JComboBox<>(PageNumberOverlay.VALUES_ALIGN.split("\\|"));
+    addParameter(panelParams, labels, "Alignment", 'A', m_ComboBoxAlignment);
+    m_TextNumJobs = createTextField("1", 5, () -> isValidInteger(m_TextNumJobs));
+    addParameter(panelParams, labels, "Jobs (<1 = automatic)", 'J', m_TextNumJobs);
+
+    // the buttons at the bottom
+    {
+      JPanel panelBottom = new JPanel(new BorderLayout());
+      add(panelBottom, BorderLayout.SOUTH);
+
+      JPanel panelLeft = new JPanel(new FlowLayout(FlowLayout.LEFT));
+      panelBottom.add(panelLeft, BorderLayout.WEST);
+      m_LabelProgress = new JLabel("");
+      panelLeft.add(m_LabelProgress);
+
+      JPanel panelRight = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+      panelBottom.add(panelRight, BorderLayout.EAST);
+
+      m_ButtonOverlay = new JButton("Add page numbers", GUIHelper.getIcon("run.gif"));
+      m_ButtonOverlay.addActionListener((ActionEvent e) -> process());
+      panelRight.add(m_ButtonOverlay);
+
+      m_ButtonClose = new JButton("Close", GUIHelper.getIcon("stop.gif"));
+      m_ButtonClose.addActionListener((ActionEvent e) -> GUIHelper.closeParent(PageNumberOverlayGUI.this));
+      panelRight.add(m_ButtonClose);
+    }
+
+    // adjust labels
+    validate();
+    int max = 0;
+    for (JLabel label: labels) {
+      if (label.getPreferredSize().getWidth() > max)
+        max = (int) label.getPreferredSize().getWidth();
+    }
+    max += 5;
+    for (JLabel label: labels)
+      label.setPreferredSize(new Dimension(max, (int) label.getPreferredSize().getHeight()));
+  }
+
+  /**
+   * Finishes up the initialization.
+   */
+  @Override
+  protected void finishInit() {
+    super.finishInit();
+    updateButtons();
+  }
+
+  /**
+   * Adds the page numbers to the files.
+   */
+  protected void process() {
+    SwingWorker		worker;
+
+    m_Processing = true;
+    updateButtons();
+
+    worker = new SwingWorker<Object,String>() {
+      protected StringBuilder m_Errors;
+      @Override
+      protected Object doInBackground() throws Exception {
+        saveSetup();
+        m_Errors = new StringBuilder();
+        PageNumberOverlay overlay = new PageNumberOverlay();
+        overlay.setFormat(m_TextFormat.getText());
+        overlay.setStart(Integer.parseInt(m_TextStart.getText().trim()));
+        overlay.setEnd(Integer.parseInt(m_TextEnd.getText().trim()));
+        overlay.setFontName(m_TextFontName.getText().trim());
+        overlay.setFontSize(Float.parseFloat(m_TextFontSize.getText().trim()));
+        overlay.setColor(m_TextColor.getText().trim());
+        overlay.setX(Float.parseFloat(m_TextXPos.getText().trim()));
+        overlay.setY(Float.parseFloat(m_TextYPos.getText().trim()));
+        overlay.setAlignment(PageNumberOverlay.parseAlignment("" + m_ComboBoxAlignment.getSelectedItem()));
+        int jobs = Integer.parseInt(m_TextNumJobs.getText().trim());
+        File fileOut = new File(m_TextOutputDir.getText());
+        List<File> inputs = new ArrayList<>();
+        List<File> outputs = new ArrayList<>();
+        for (int i = 0; i < m_ModelInputFiles.getSize(); i++) {
+          File[][] files = PDFBatch.determineFiles(m_ModelInputFiles.get(i), fileOut);
+          for (int n = 0; n < files[0].length; n++) {
+            inputs.add(files[0][n]);
+            outputs.add(files[1][n]);
+          }
+        }
+        File[][] files = new File[][]{
+          inputs.toArray(new File[inputs.size()]),
+          outputs.toArray(new File[outputs.size()]),
+        };
+        publish("Processing 0/" + inputs.size() + "...");
+        List<String> errors = overlay.overlay(files, jobs,
+          (File input, File output, int processed, String error) ->
+            publish("Processing " + processed + "/" + inputs.size() + "..."));
+        for (String error: errors)
+          m_Errors.append(error).append("\n");
+        return null;
+      }
+      @Override
+      protected void process(List<String> chunks) {
+        if (!chunks.isEmpty())
+          m_LabelProgress.setText(chunks.get(chunks.size() - 1));
+      }
+      @Override
+      protected void done() {
+        m_LabelProgress.setText("");
+        m_Processing = false;
+        updateButtons();
+        if (m_Errors.length() > 0) {
+          JOptionPane.showMessageDialog(
+            PageNumberOverlayGUI.this,
+            m_Errors.toString(),
+            "Error",
+            JOptionPane.ERROR_MESSAGE);
+        }
+        super.done();
+      }
+    };
+
+    worker.execute();
+  }
+
+  /**
+   * Returns whether the text field contains a valid integer.
+   *
+   * @param field	the field to check
+   * @return		true if valid
+   */
+  protected boolean isValidInteger(JTextField field) {
+    if (field.getText().trim().isEmpty())
+      return false;
+
+    try {
+      Integer.parseInt(field.getText().trim());
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the text field contains a valid float.
+   *
+   * @param field	the field to check
+   * @return		true if valid
+   */
+  protected boolean isValidFloat(JTextField field) {
+    if (field.getText().trim().isEmpty())
+      return false;
+
+    try {
+      Float.parseFloat(field.getText().trim());
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether the color is valid.
+   *
+   * @return		true if valid
+   */
+  protected boolean isValidColor() {
+    return m_TextColor.getText().trim().matches("#?[0-9a-fA-F]{6}");
+  }
+
+  /**
+   * Returns whether the output dir is valid.
+   *
+   * @return		true if valid
+   */
+  protected boolean isValidOutputDir() {
+    File	file;
+
+    if (m_TextOutputDir.getText().trim().isEmpty())
+      return false;
+
+    try {
+      file = new File(m_TextOutputDir.getText());
+      return file.exists() && file.isDirectory();
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns whether files can be processed.
+   *
+   * @return		true if possible
+   */
+  protected boolean canOverlayFiles() {
+    boolean	result;
+
+    result = !m_Processing
+      && (m_ModelInputFiles.getSize() > 0)
+      && !m_TextFormat.getText().isEmpty()
+      && isValidInteger(m_TextStart)
+      && isValidInteger(m_TextEnd)
+      && !m_TextFontName.getText().trim().isEmpty()
+      && isValidFloat(m_TextFontSize)
+      && isValidColor()
+      && isValidFloat(m_TextXPos)
+      && isValidFloat(m_TextYPos)
+      && isValidInteger(m_TextNumJobs)
+      && isValidOutputDir();
+
+    return result;
+  }
+
+  /**
+   * Updates the state of the buttons.
+   */
+  protected void updateButtons() {
+    m_ButtonAddFiles.setEnabled(!m_Processing);
+    m_ButtonRemoveFiles.setEnabled(!m_Processing && (m_ListInputFiles.getSelectedIndices().length > 0));
+    m_ButtonRemoveAllFiles.setEnabled(!m_Processing && (m_ModelInputFiles.getSize() > 0));
+
+    m_ButtonClose.setEnabled(!m_Processing);
+    m_ButtonOverlay.setEnabled(canOverlayFiles());
+  }
+
+  /**
+   * Maps the properties back to the GUI.
+   *
+   * @param props       the properties to use
+   */
+  protected void propsToGUI(Properties props) {
+    m_TextOutputDir.setText(props.getProperty(OUTPUT_DIR, ""));
+    m_TextFormat.setText(props.getProperty(FORMAT, PageNumberOverlay.DEFAULT_FORMAT));
+    m_TextStart.setText(props.getProperty(START, "1"));
+    m_TextEnd.setText(props.getProperty(END, "-1"));
+    m_TextFontName.setText(props.getProperty(FONT_NAME, PageNumberOverlay.DEFAULT_FONT));
+    m_TextFontSize.setText(props.getProperty(FONT_SIZE, "" + PageNumberOverlay.DEFAULT_FONTSIZE));
+    m_TextColor.setText(props.getProperty(COLOR, PageNumberOverlay.DEFAULT_COLOR));
+    m_TextXPos.setText(props.getProperty(X_POS, "" + PageNumberOverlay.DEFAULT_XPOS));
+    m_TextYPos.setText(props.getProperty(Y_POS, "" + PageNumberOverlay.DEFAULT_YPOS));
+    m_ComboBoxAlignment.setSelectedItem(props.getProperty(ALIGNMENT, "LEFT"));
+    m_TextNumJobs.setText(props.getProperty(NUM_JOBS, "1"));
+  }
+
+  /**
+   * Maps the GUI to a properties object.
+   *
+   * @return            the properties
+   */
+  protected Properties guiToProps() {
+    Properties result;
+
+    result = new Properties();
+    result.setProperty(OUTPUT_DIR, m_TextOutputDir.getText());
+    result.setProperty(FORMAT, m_TextFormat.getText());
+    result.setProperty(START, m_TextStart.getText());
+    result.setProperty(END, m_TextEnd.getText());
+    result.setProperty(FONT_NAME, m_TextFontName.getText());
+    result.setProperty(FONT_SIZE, m_TextFontSize.getText());
+    result.setProperty(COLOR, m_TextColor.getText());
+    result.setProperty(X_POS, m_TextXPos.getText());
+    result.setProperty(Y_POS, m_TextYPos.getText());
+    result.setProperty(ALIGNMENT, "" + m_ComboBoxAlignment.getSelectedItem());
+    result.setProperty(NUM_JOBS, m_TextNumJobs.getText());
+
+    return result;
+  }
+
+  /**
+   * Creates a new frame with the GUI.
+   *
+   * @return		the frame
+   */
+  public static BaseFrame createFrame() {
+    BaseFrame 	frame;
+
+    frame = new BaseFrame("Add page numbers");
+    PageNumberOverlayGUI panel = new PageNumberOverlayGUI();
+    frame.getRootPane().setLayout(new BorderLayout());
+    frame.getRootPane().add(panel);
+    frame.setSize(600, 600);
+
+    return frame;
+  }
+
+  /**
+   * Starts the GUI.
+   *
+   * @param args	ignored
+   */
+  public static void main(String[] args) {
+    Project.initialize();
+    ResourceCache.registerFontDirectories();
+    BaseFrame frame = createFrame();
+    frame.setDefaultCloseOperation(BaseFrame.EXIT_ON_CLOSE);
+    frame.setLocationRelativeTo(null);
+    frame.setVisible(true);
+  }
+}
@@ -67,6 +67,8 @@ public class ScriptedPDFOverlayGUI
 
   public static final String OUTPUT_DIR = "OutputDir";
 
+  public static final String NUM_THREADS = "NumThreads";
+
   /** the file chooser to use for the pdf template. */
   protected BaseFileChooser m_FileChooserPdfTemplate;
 
@@ -103,6 +105,12 @@ public class ScriptedPDFOverlayGUI
   /** the button for selecting the output directory. */
   protected JButton m_ButtonOutputDir;
 
+  /** the number of threads. */
+  protected JTextField m_TextNumThreads;
+
+  /** the progress. */
+  protected JLabel m_LabelProgress;
+
   /** the button for overlaying the files. */
   protected JButton m_ButtonGenerate;
 
@@ -153,7 +161,7 @@ public class ScriptedPDFOverlayGUI
     setLayout(new BorderLayout());
 
     // the parameters
-    panelParams = new JPanel(new GridLayout(4, 1));
+    panelParams = new JPanel(new GridLayout(5, 1));
     panelParams.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
     labels      = new ArrayList<>();
     add(panelParams, BorderLayout.CENTER);
@@ -341,12 +349,50 @@ public class ScriptedPDFOverlayGUI
       panel.add(m_ButtonOutputDir);
       labels.add(label);
     }
+    // number of threads
+    {
+      JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 5));
+      panelParams.add(panel);
+      m_TextNumThreads = new JTextField("1", 5);
+      m_TextNumThreads.getDocument().addDocumentListener(new DocumentListener() {
+        @Override
+        public void insertUpdate(DocumentEvent e) {
+          checkThreads();
+        }
+        @Override
+        public void removeUpdate(DocumentEvent e) {
+          checkThreads();
+        }
+        @Override
+        public void changedUpdate(DocumentEvent e) {
+          checkThreads();
+        }
+        protected void checkThreads() {
+          if (m_TextNumThreads.getText().trim().isEmpty() || isValidNumThreads())
+            m_TextNumThreads.setForeground(Color.BLACK);
+          else
+            m_TextNumThreads.setForeground(Color.RED);
+          updateButtons();
+        }
+      });
+      JLabel label = new JLabel("Threads (<1 = all cores)");
+      label.setDisplayedMnemonic('T');
+      label.setLabelFor(m_TextNumThreads);
+      panel.add(label);
+      panel.add(m_TextNumThreads);
+      labels.add(label);
+    }
 
     // the buttons at the bottom
     {
       JPanel panelBottom = new JPanel(new BorderLayout());
       add(panelBottom, BorderLayout.SOUTH);
 
+      JPanel panelLeft = new JPanel(new FlowLayout(FlowLayout.LEFT));
+      panelBottom.add(panelLeft, BorderLayout.WEST);
+      m_LabelProgress = new JLabel("");
+      panelLeft.add(m_LabelProgress);
+
       JPanel panelRight = new JPanel(new FlowLayout(FlowLayout.RIGHT));
       panelBottom.add(panelRight, BorderLayout.EAST);
 
@@ -389,7 +435,7 @@ public class ScriptedPDFOverlayGUI
     m_Processing = true;
     updateButtons();
 
-    worker = new SwingWorker() {
+    worker = new SwingWorker<Object,String>() {
       protected StringBuilder m_Errors;
       @Override
       protected Object doInBackground() throws Exception {
@@ -401,13 +447,20 @@ public class ScriptedPDFOverlayGUI
 	  new File(m_TextGroovy.getText()),
 	  new File(m_TextOutputDir.getText())
 	);
+	overlay.setNumThreads(Integer.parseInt(m_TextNumThreads.getText().trim()));
+	overlay.setProgressListener((int row, int processed, String error) -> publish("Processed " + processed + " rows..."));
 	String errors = overlay.execute();
 	if (errors != null)
 	  m_Errors.append(errors);
         return null;
       }
       @Override
+      protected void process(List<String> chunks) {
+        m_LabelProgress.setText(chunks.get(chunks.size() - 1));
+      }
+      @Override
       protected void done() {
+        m_LabelProgress.setText("");
         m_Processing = false;
         updateButtons();
         if (m_Errors.length() > 0) {
@@ -464,6 +517,24 @@ public class ScriptedPDFOverlayGUI
     }
   }
 
+  /**
+   * Returns whether the number of threads is valid.
+   *
+   * @return		true if valid
+   */
+  protected boolean isValidNumThreads() {
+    if (m_TextNumThreads.getText().trim().isEmpty())
+      return false;
+
+    try {
+      Integer.parseInt(m_TextNumThreads.getText().trim());
+      return true;
+    }
+    catch (Exception e) {
+      return false;
+    }
+  }
+
   /**
    * Returns whether files can be overlayed.
    *
@@ -476,7 +547,8 @@ public class ScriptedPDFOverlayGUI
       && isValidFile(m_TextPdfTemplate.getText())
       && isValidFile(m_TextParams.getText())
       && isValidFile(m_TextGroovy.getText())
-      && isValidOutputDir();
+      && isValidOutputDir()
+      && isValidNumThreads();
 
     return result;
   }
@@ -499,6 +571,7 @@ public class ScriptedPDFOverlayGUI
     m_TextParams.setText(props.getProperty(PARAMS, ""));
     m_TextGroovy.setText(props.getProperty(GROOVY, ""));
     m_TextOutputDir.setText(props.getProperty(OUTPUT_DIR, ""));
+    m_TextNumThreads.setText(props.getProperty(NUM_THREADS, "1"));
   }
 
   /**
@@ -514,6 +587,7 @@ public class ScriptedPDFOverlayGUI
     result.setProperty(PARAMS, m_TextParams.getText());
     result.setProperty(GROOVY, m_TextGroovy.getText());
     result.setProperty(OUTPUT_DIR, m_TextOutputDir.getText());
+    result.setProperty(NUM_THREADS, m_TextNumThreads.getText());
 
     return result;
   }
@@ -530,7 +604,7 @@ public class ScriptedPDFOverlayGUI
     ScriptedPDFOverlayGUI panel = new ScriptedPDFOverlayGUI();
     frame.getRootPane().setLayout(new BorderLayout());
     frame.getRootPane().add(panel);
-    frame.setSize(550, 200);
+    frame.setSize(550, 240);
 
     return frame;
   }
@@ -0,0 +1,70 @@
+package nz.ac.waikato.cms.examples
+
+import com.itextpdf.text.*
+import com.itextpdf.text.pdf.ColumnText
+import com.itextpdf.text.pdf.PdfContentByte
+import com.itextpdf.text.pdf.PdfReader
+import com.itextpdf.text.pdf.PdfStamper
+import nz.ac.waikato.cms.doc.ScriptedPDFOverlayContext
+import nz.ac.waikato.cms.doc.ScriptedPDFOverlayLifecycle
+import nz.ac.waikato.cms.doc.ScriptedPDFOverlayTemplate
+import nz.ac.waikato.cms.doc.ScriptedPDFOverlayTemplateProcessor
+
+import java.awt.Color
+
+class PdfOverlayTemplateExample implements ScriptedPDFOverlayTemplateProcessor, ScriptedPDFOverlayLifecycle {
+
+    Font            fontName
+
+    Font            fontTitle
+
+    @Override
+    String init(ScriptedPDFOverlayContext context) {
+        // set up the fonts only once per worker
+        fontTitle = FontFactory.getFont("Helvetica", 12F, new BaseColor(Color.WHITE.getRGB()))
+        fontName  = FontFactory.getFont("Helvetica", 18F, new BaseColor(Color.WHITE.getRGB()))
+        return null
+    }
+
+    @Override
+    String finish(ScriptedPDFOverlayContext context) {
+        return null
+    }
+
+    @Override
+    String overlay(ScriptedPDFOverlayTemplate template, int row, Map<String, String> params, OutputStream output) {
+        String          result
+        String          name
+        String          title
+        PdfReader       reader
+        PdfStamper      stamper
+        PdfContentByte  cb
+        ColumnText	    ct
+
+        result  = null
+        name    = params.get("name")
+        title   = params.get("title")
+
+        // copy of the already parsed template
+        reader  = template.newReader()
+        stamper = new PdfStamper(reader, output)
+        cb      = stamper.getOverContent(1)
+
+        // title
+        ct = new ColumnText(cb)
+        ct.setSimpleColumn(0, 50, (float) (reader.getPageSize(1).getWidth()), 200, 0, Element.ALIGN_CENTER)
+        ct.setText(new Phrase(title, fontTitle))
+        ct.go()
+
+        // name
+        ct = new ColumnText(cb)
+        ct.setSimpleColumn(0, 50, (float) (reader.getPageSize(1).getWidth()), 180, 0, Element.ALIGN_CENTER)
+        ct.setText(new Phrase(name, fontName))
+        ct.go()
+
+        // close document (the output stream gets closed by ScriptedPDFOverlay)
+        stamper.close()
+
+        return result
+    }
+}